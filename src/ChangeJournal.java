@@ -0,0 +1,323 @@
+// ChangeJournal.java
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Append-only log of every write to one store, for incremental backups and
+// point-in-time restore. Each committed upsert or delete of a sitting is a
+// line "<seq>,<epoch ms>,U|D,<row as in seatingData.txt>" in
+// journal-<first seq>.log. After SEATING_JOURNAL_SEGMENT_RECORDS records or
+// SEATING_JOURNAL_CHECKPOINT_MINUTES, the segment is closed and the roster
+// is copied from memory to checkpoint-<seq>-<epoch ms>.csv in the
+// background; one is also written at every start. Closed segments and
+// checkpoints never change again, so copying only new files is a complete
+// backup. The oldest checkpoints and the segments before them are pruned
+// past SEATING_JOURNAL_KEEP_CHECKPOINTS.
+public class ChangeJournal {
+    private static final ExecutorService CHECKPOINTS = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "journal-checkpoint");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final long checkpointMillis;
+    private final int keepCheckpoints;
+    private BufferedWriter segment;
+    private long nextSeq = 1;
+    private int segmentCount;
+    private long lastCheckpointMillis;
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder checkpoints = new LongAdder();
+
+    public ChangeJournal(Path directory, int segmentRecords, long checkpointMillis, int keepCheckpoints) {
+        this.directory = directory;
+        this.segmentRecords = Math.max(1, segmentRecords);
+        this.checkpointMillis = checkpointMillis;
+        this.keepCheckpoints = Math.max(1, keepCheckpoints);
+    }
+
+    // Continues the sequence found on disk and checkpoints the roster as
+    // loaded, which also covers edits made to the data files while stopped.
+    public synchronized void open(Collection<Student> roster) throws IOException {
+        Files.createDirectories(directory);
+        long last = 0;
+        for (long[] checkpoint : listCheckpoints()) {
+            last = Math.max(last, checkpoint[0]);
+        }
+        List<Long> segments = listSegments();
+        if (!segments.isEmpty()) {
+            Path newest = segmentPath(segments.get(segments.size() - 1));
+            try (BufferedReader reader = Files.newBufferedReader(newest, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = SeatingDatabase.parseCsvRow(line);
+                    if (parts.length >= 10) {
+                        last = Math.max(last, parseLong(parts[0]));
+                    }
+                }
+            }
+        }
+        nextSeq = last + 1;
+        writeCheckpoint(last, System.currentTimeMillis(), new ArrayList<>(roster));
+    }
+
+    // Appends one committed write. roster supplies the whole roster, after
+    // this write, when a checkpoint is due.
+    public synchronized void record(List<Student> upserts, List<Student> deletes, Supplier<List<Student>> roster) {
+        if (upserts.isEmpty() && deletes.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            if (segment == null) {
+                segment = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(segmentPath(nextSeq),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8));
+                segmentCount = 0;
+            }
+            for (Student student : upserts) {
+                append(now, 'U', student);
+            }
+            for (Student student : deletes) {
+                append(now, 'D', student);
+            }
+            segment.flush();
+        } catch (IOException e) {
+            EventLog.error("journal", "Cannot write to " + directory + ": " + e.getMessage());
+            return;
+        }
+        if (segmentCount >= segmentRecords || (checkpointMillis > 0 && now - lastCheckpointMillis >= checkpointMillis)) {
+            closeSegment();
+            long seq = nextSeq - 1;
+            List<Student> copy = roster.get();
+            lastCheckpointMillis = now;
+            CHECKPOINTS.execute(() -> {
+                try {
+                    writeCheckpoint(seq, now, copy);
+                } catch (IOException e) {
+                    EventLog.error("journal", "Checkpoint " + seq + " failed: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    private void append(long now, char op, Student student) throws IOException {
+        segment.write(Long.toString(nextSeq++));
+        segment.write(',');
+        segment.write(Long.toString(now));
+        segment.write(',');
+        segment.write(op);
+        segment.write(',');
+        segment.write(SeatingDatabase.toCsvRow(student));
+        segment.newLine();
+        segmentCount++;
+        recorded.increment();
+    }
+
+    public synchronized void close() {
+        closeSegment();
+    }
+
+    private void closeSegment() {
+        if (segment == null) {
+            return;
+        }
+        try {
+            segment.close();
+        } catch (IOException e) {
+            EventLog.error("journal", "Cannot close segment: " + e.getMessage());
+        }
+        segment = null;
+    }
+
+    // The roster as it was at the given time: the newest checkpoint taken by
+    // then plus the records after it. Null when that is older than every
+    // checkpoint kept.
+    public List<Student> rosterAt(long epochMillis) throws IOException {
+        long[] base = null;
+        for (long[] checkpoint : listCheckpoints()) {
+            if (checkpoint[1] <= epochMillis && (base == null || checkpoint[1] > base[1])) {
+                base = checkpoint;
+            }
+        }
+        if (base == null) {
+            return null;
+        }
+        Map<String, Student> rows = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(checkpointPath(base[0], base[1]), StandardCharsets.UTF_8)) {
+            String[] parts = SeatingDatabase.parseCsvRow(line);
+            if (parts.length >= 7) {
+                Student student = new Student(parts[0], parts[1], parts[2], parts[3], parts[4], parts[5], parts[6]);
+                rows.put(SeatingDatabase.rowKey(student), student);
+            }
+        }
+        List<Long> segments = listSegments();
+        for (int i = 0; i < segments.size(); i++) {
+            // Skip segments that end at or before the checkpoint.
+            if (i + 1 < segments.size() && segments.get(i + 1) <= base[0] + 1) {
+                continue;
+            }
+            if (replay(segmentPath(segments.get(i)), base[0], epochMillis, rows)) {
+                break;
+            }
+        }
+        return new ArrayList<>(rows.values());
+    }
+
+    // Applies records after `after` up to the given time; true once a later
+    // record is reached.
+    private boolean replay(Path file, long after, long epochMillis, Map<String, Student> rows) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Every row ends in a quoted field, so a line cut short by
+                // a crash (or still being written) does not.
+                if (!line.endsWith("\"")) {
+                    continue;
+                }
+                String[] parts = SeatingDatabase.parseCsvRow(line);
+                if (parts.length < 10 || parseLong(parts[0]) <= after) {
+                    continue;
+                }
+                if (parseLong(parts[1]) > epochMillis) {
+                    return true;
+                }
+                Student student = new Student(parts[3], parts[4], parts[5], parts[6], parts[7], parts[8], parts[9]);
+                if ("D".equals(parts[2])) {
+                    rows.remove(SeatingDatabase.rowKey(student));
+                } else {
+                    rows.put(SeatingDatabase.rowKey(student), student);
+                }
+            }
+        }
+        return false;
+    }
+
+    // Written to a temporary file and renamed, so a checkpoint on disk is
+    // always complete.
+    private void writeCheckpoint(long seq, long epochMillis, List<Student> roster) throws IOException {
+        Path target = checkpointPath(seq, epochMillis);
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Student student : roster) {
+                writer.write(SeatingDatabase.toCsvRow(student));
+                writer.newLine();
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        synchronized (this) {
+            lastCheckpointMillis = Math.max(lastCheckpointMillis, epochMillis);
+        }
+        checkpoints.increment();
+        prune();
+    }
+
+    private synchronized void prune() throws IOException {
+        List<long[]> kept = listCheckpoints();
+        kept.sort((a, b) -> Long.compare(a[1], b[1]));
+        while (kept.size() > keepCheckpoints) {
+            long[] oldest = kept.remove(0);
+            Files.deleteIfExists(checkpointPath(oldest[0], oldest[1]));
+        }
+        long oldestSeq = Long.MAX_VALUE;
+        for (long[] checkpoint : kept) {
+            oldestSeq = Math.min(oldestSeq, checkpoint[0]);
+        }
+        List<Long> segments = listSegments();
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (segments.get(i + 1) - 1 <= oldestSeq) {
+                Files.deleteIfExists(segmentPath(segments.get(i)));
+            }
+        }
+    }
+
+    // {seq, epoch ms} of every checkpoint on disk.
+    private List<long[]> listCheckpoints() throws IOException {
+        List<long[]> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "checkpoint-*.csv")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String[] parts = name.substring("checkpoint-".length(), name.length() - ".csv".length()).split("-");
+                if (parts.length == 2) {
+                    found.add(new long[] {parseLong(parts[0]), parseLong(parts[1])});
+                }
+            }
+        }
+        return found;
+    }
+
+    // First sequence number of every segment, ascending.
+    private List<Long> listSegments() throws IOException {
+        List<Long> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "journal-*.log")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                found.add(parseLong(name.substring("journal-".length(), name.length() - ".log".length())));
+            }
+        }
+        found.sort(null);
+        return found;
+    }
+
+    private Path segmentPath(long firstSeq) {
+        return directory.resolve(String.format("journal-%012d.log", firstSeq));
+    }
+
+    private Path checkpointPath(long seq, long epochMillis) {
+        return directory.resolve(String.format("checkpoint-%012d-%d.csv", seq, epochMillis));
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public synchronized long getLastSequence() {
+        return nextSeq - 1;
+    }
+
+    // Time of the oldest checkpoint kept: restores can go back this far.
+    public long getOldestRestorableMillis() {
+        long oldest = Long.MAX_VALUE;
+        try {
+            for (long[] checkpoint : listCheckpoints()) {
+                oldest = Math.min(oldest, checkpoint[1]);
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        return oldest == Long.MAX_VALUE ? -1 : oldest;
+    }
+
+    public long getRecordCount() {
+        return recorded.sum();
+    }
+
+    public long getCheckpointCount() {
+        return checkpoints.sum();
+    }
+}
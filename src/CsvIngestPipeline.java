@@ -0,0 +1,335 @@
+// CsvIngestPipeline.java
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Roster CSV ingest in three stages. A splitter thread cuts the upload into
+// chunks of whole lines, a pool of workers parses and validates chunks in
+// parallel, and the calling thread hands the valid rows to a BatchWriter in
+// upload order, a batch at a time. A semaphore caps the chunks between the
+// splitter and the writer, so a slow store holds back parsing instead of
+// letting parsed rows pile up in memory. Every rejected or unsaved row is
+// reported by its line number in the file.
+public class CsvIngestPipeline {
+    public interface BatchWriter {
+        // Stores the rows as one batch; false when they could not be saved.
+        boolean write(List<Student> rows);
+    }
+
+    private final ExecutorService workers;
+    private final int parallelism;
+    private final int chunkLines;
+    private final int batchRows;
+    private final int maxReportedErrors;
+
+    public CsvIngestPipeline(int parallelism, int chunkLines, int batchRows, int maxReportedErrors) {
+        this.parallelism = Math.max(1, parallelism);
+        this.chunkLines = Math.max(1, chunkLines);
+        this.batchRows = Math.max(1, batchRows);
+        this.maxReportedErrors = Math.max(0, maxReportedErrors);
+        AtomicInteger threads = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(this.parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "csv-parse-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    // Runs the whole upload through the pipeline and returns once every valid
+    // row has been offered to writer. A first line naming the roll and room
+    // columns ("roll,room,floor,seat...") is taken as the header.
+    public Result ingest(String content, BatchWriter writer) throws InterruptedException {
+        Semaphore window = new Semaphore(parallelism * 2);
+        BlockingQueue<Chunk> parsed = new LinkedBlockingQueue<>();
+        Thread splitter = new Thread(() -> split(content, window, parsed), "csv-split");
+        splitter.setDaemon(true);
+        splitter.start();
+        Result result = new Result(maxReportedErrors);
+        // Workers finish out of order; chunks wait here until their turn.
+        Map<Integer, Chunk> waiting = new HashMap<>();
+        List<Student> batch = new ArrayList<>(batchRows);
+        List<Integer> batchLines = new ArrayList<>(batchRows);
+        int next = 0;
+        try {
+            while (true) {
+                Chunk chunk = waiting.remove(next);
+                if (chunk == null) {
+                    Chunk arrived = parsed.take();
+                    waiting.put(arrived.seq, arrived);
+                    continue;
+                }
+                if (chunk.end) {
+                    break;
+                }
+                next++;
+                window.release();
+                result.rows += chunk.rows;
+                for (int i = 0; i < chunk.errorLines.size(); i++) {
+                    result.addError(chunk.errorLines.get(i), chunk.errorMessages.get(i));
+                }
+                for (int i = 0; i < chunk.students.size(); i++) {
+                    batch.add(chunk.students.get(i));
+                    batchLines.add(chunk.studentLines.get(i));
+                    if (batch.size() >= batchRows) {
+                        flush(writer, batch, batchLines, result);
+                    }
+                }
+            }
+            flush(writer, batch, batchLines, result);
+        } finally {
+            splitter.interrupt();
+        }
+        result.sortErrors();
+        return result;
+    }
+
+    private static void flush(BatchWriter writer, List<Student> batch, List<Integer> lines, Result result) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (writer.write(batch)) {
+            result.saved += batch.size();
+        } else {
+            for (int line : lines) {
+                result.addError(line, "could not be saved");
+            }
+        }
+        batch.clear();
+        lines.clear();
+    }
+
+    private void split(String content, Semaphore window, BlockingQueue<Chunk> parsed) {
+        int seq = 0;
+        try {
+            int length = content.length();
+            int pos = 0;
+            int line = 1;
+            // Skip leading blank lines and the header, if any.
+            while (pos < length) {
+                int end = lineEnd(content, pos, length);
+                String text = content.substring(pos, end).trim();
+                if (!text.isEmpty()) {
+                    if (isHeader(text)) {
+                        pos = Math.min(length, end + 1);
+                        line++;
+                    }
+                    break;
+                }
+                pos = Math.min(length, end + 1);
+                line++;
+            }
+            while (pos < length) {
+                int start = pos;
+                int firstLine = line;
+                int count = 0;
+                while (pos < length && count < chunkLines) {
+                    pos = Math.min(length, lineEnd(content, pos, length) + 1);
+                    count++;
+                }
+                window.acquire();
+                Chunk chunk = new Chunk(seq, firstLine);
+                int end = pos;
+                workers.execute(() -> {
+                    try {
+                        parseChunk(content, start, end, chunk);
+                    } catch (RuntimeException e) {
+                        chunk.addError(chunk.firstLine, "chunk starting here could not be parsed: " + e);
+                    } finally {
+                        parsed.add(chunk);
+                    }
+                });
+                seq++;
+                line += count;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            parsed.add(Chunk.endMarker(seq));
+        }
+    }
+
+    private static int lineEnd(String content, int from, int limit) {
+        int newline = content.indexOf('\n', from);
+        return newline < 0 || newline >= limit ? limit : newline;
+    }
+
+    // Matched on whole fields, so a first data row whose roll merely starts
+    // with "roll" (ROLL2024001) is kept.
+    private static boolean isHeader(String text) {
+        String[] parts = SeatingDatabase.parseCsvRow(text);
+        if (parts.length < 2 || !"room".equalsIgnoreCase(parts[1].trim())) {
+            return false;
+        }
+        String first = parts[0].trim().toLowerCase(Locale.ROOT).replaceAll("[ _.-]", "");
+        return first.equals("roll") || first.equals("rollno") || first.equals("rollnumber");
+    }
+
+    private static void parseChunk(String content, int start, int end, Chunk chunk) {
+        int line = chunk.firstLine;
+        int pos = start;
+        while (pos < end) {
+            int lineEnd = lineEnd(content, pos, end);
+            int textEnd = lineEnd > pos && content.charAt(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+            parseLine(content.substring(pos, textEnd), line, chunk);
+            pos = lineEnd + 1;
+            line++;
+        }
+    }
+
+    private static void parseLine(String text, int line, Chunk chunk) {
+        if (text.isBlank()) {
+            return;
+        }
+        chunk.rows++;
+        int quotes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '"') {
+                quotes++;
+            }
+        }
+        // Escaped quotes come in pairs, so an odd count means one is unclosed.
+        if (quotes % 2 != 0) {
+            chunk.addError(line, "unterminated quoted field");
+            return;
+        }
+        String[] parts = SeatingDatabase.parseCsvRow(text);
+        if (parts.length < 4) {
+            chunk.addError(line, "expected at least 4 fields (roll, room, floor, seat), found " + parts.length);
+            return;
+        }
+        for (int i = 7; i < parts.length; i++) {
+            if (!parts[i].isBlank()) {
+                chunk.addError(line, "expected at most 7 fields, found " + parts.length);
+                return;
+            }
+        }
+        String roll = parts[0].trim();
+        String room = parts[1].trim();
+        String floor = parts[2].trim();
+        String seat = parts[3].trim();
+        List<String> missing = new ArrayList<>(4);
+        if (roll.isEmpty()) {
+            missing.add("roll number");
+        }
+        if (room.isEmpty()) {
+            missing.add("room");
+        }
+        if (floor.isEmpty()) {
+            missing.add("floor");
+        }
+        if (seat.isEmpty()) {
+            missing.add("seat");
+        }
+        if (!missing.isEmpty()) {
+            chunk.addError(line, "missing " + String.join(", ", missing));
+            return;
+        }
+        String examName = parts.length > 4 ? parts[4].trim() : "N/A";
+        String examDate = parts.length > 5 ? parts[5].trim() : "N/A";
+        String examTime = parts.length > 6 ? parts[6].trim() : "N/A";
+        chunk.students.add(new Student(roll, room, floor, seat, examName, examDate, examTime));
+        chunk.studentLines.add(line);
+    }
+
+    private static class Chunk {
+        private final int seq;
+        private final int firstLine;
+        private final boolean end;
+        private int rows;
+        private final List<Student> students = new ArrayList<>();
+        private final List<Integer> studentLines = new ArrayList<>();
+        private final List<Integer> errorLines = new ArrayList<>();
+        private final List<String> errorMessages = new ArrayList<>();
+
+        private Chunk(int seq, int firstLine) {
+            this(seq, firstLine, false);
+        }
+
+        private Chunk(int seq, int firstLine, boolean end) {
+            this.seq = seq;
+            this.firstLine = firstLine;
+            this.end = end;
+        }
+
+        private static Chunk endMarker(int seq) {
+            return new Chunk(seq, 0, true);
+        }
+
+        private void addError(int line, String message) {
+            errorLines.add(line);
+            errorMessages.add(message);
+        }
+    }
+
+    public static class LineError {
+        private final int line;
+        private final String message;
+
+        private LineError(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    public static class Result {
+        private final int maxErrors;
+        private final List<LineError> errors = new ArrayList<>();
+        private int errorCount;
+        private int rows;
+        private int saved;
+
+        private Result(int maxErrors) {
+            this.maxErrors = maxErrors;
+        }
+
+        private void addError(int line, String message) {
+            errorCount++;
+            if (errors.size() < maxErrors) {
+                errors.add(new LineError(line, message));
+            }
+        }
+
+        private void sortErrors() {
+            errors.sort((a, b) -> Integer.compare(a.line, b.line));
+        }
+
+        // Non-blank data lines in the upload.
+        public int getRows() {
+            return rows;
+        }
+
+        public int getSaved() {
+            return saved;
+        }
+
+        // Rejected plus unsaved rows; may exceed getErrors().size().
+        public int getErrorCount() {
+            return errorCount;
+        }
+
+        // The first rejected or unsaved rows, by line number.
+        public List<LineError> getErrors() {
+            return errors;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+// EventLog.java
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+// Structured access and diagnostic log. Callers only copy a few fields into
+// a preallocated ring-buffer slot; a background thread formats the events as
+// JSON lines and writes them to stdout (or SEATING_LOG_FILE). When the ring
+// is full the event is dropped and counted instead of blocking the caller.
+public final class EventLog {
+    private static final byte TYPE_ACCESS = 1;
+    private static final byte TYPE_INFO = 2;
+    private static final byte TYPE_ERROR = 3;
+
+    private static final class Slot {
+        // Written last by the producer; the drainer reads the slot only once
+        // this equals the sequence it is waiting for.
+        private volatile long sequence = -1;
+        private long claimed;
+        private byte type;
+        private long timestamp;
+        private long requestId;
+        private String method;
+        private String route;
+        private int status;
+        private long latencyMicros;
+        private long dbMicros;
+        // Raw roll for access events; only its hash is ever written out.
+        private String roll;
+        private String source;
+        private String message;
+    }
+
+    private static final int CAPACITY = Integer.highestOneBit(
+            Math.max(1024, AppConfig.intValue("SEATING_LOG_BUFFER", 16_384)));
+    private static final int MASK = CAPACITY - 1;
+    private static final Slot[] SLOTS = new Slot[CAPACITY];
+    private static final AtomicLong HEAD = new AtomicLong();
+    private static volatile long tail;
+    private static final LongAdder PUBLISHED = new LongAdder();
+    private static final LongAdder DROPPED = new LongAdder();
+    private static final byte[] ROLL_KEY = rollKey();
+    private static final ThreadLocal<Mac> ROLL_MAC = ThreadLocal.withInitial(() -> {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(ROLL_KEY, "HmacSHA256"));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    });
+    private static final ThreadLocal<long[]> DB_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+    private static final Writer OUT;
+    private static final Thread DRAINER;
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            SLOTS[i] = new Slot();
+        }
+        Writer out;
+        String file = AppConfig.get("SEATING_LOG_FILE", null);
+        try {
+            out = file != null
+                    ? new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)
+                    : new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        }
+        OUT = new BufferedWriter(out, 64 * 1024);
+        DRAINER = new Thread(EventLog::drainLoop, "event-log");
+        DRAINER.setDaemon(true);
+        DRAINER.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(EventLog::drainRemaining, "event-log-flush"));
+    }
+
+    private EventLog() {
+    }
+
+    public static void access(long requestId, String method, String route, int status,
+                              long latencyMicros, long dbMicros, String roll) {
+        Slot slot = claim();
+        if (slot == null) {
+            return;
+        }
+        slot.type = TYPE_ACCESS;
+        slot.requestId = requestId;
+        slot.method = method;
+        slot.route = route;
+        slot.status = status;
+        slot.latencyMicros = latencyMicros;
+        slot.dbMicros = dbMicros;
+        slot.roll = roll;
+        slot.source = null;
+        slot.message = null;
+        publish(slot);
+    }
+
+    public static void info(String source, String message) {
+        log(TYPE_INFO, source, message);
+    }
+
+    public static void error(String source, String message) {
+        log(TYPE_ERROR, source, message);
+    }
+
+    // Storage calls add their elapsed time to the current request.
+    public static void addDbTime(long nanos) {
+        DB_NANOS.get()[0] += nanos;
+    }
+
+    public static long takeDbTimeMicros() {
+        long[] nanos = DB_NANOS.get();
+        long micros = nanos[0] / 1000L;
+        nanos[0] = 0;
+        return micros;
+    }
+
+    public static long getPublishedCount() {
+        return PUBLISHED.sum();
+    }
+
+    public static long getDroppedCount() {
+        return DROPPED.sum();
+    }
+
+    public static long getBacklog() {
+        return HEAD.get() - tail;
+    }
+
+    public static int getCapacity() {
+        return CAPACITY;
+    }
+
+    private static void log(byte type, String source, String message) {
+        Slot slot = claim();
+        if (slot == null) {
+            return;
+        }
+        slot.type = type;
+        slot.requestId = 0;
+        slot.method = null;
+        slot.route = null;
+        slot.roll = null;
+        slot.source = source;
+        slot.message = message;
+        publish(slot);
+    }
+
+    private static Slot claim() {
+        long seq;
+        do {
+            seq = HEAD.get();
+            if (seq - tail >= CAPACITY) {
+                DROPPED.increment();
+                return null;
+            }
+        } while (!HEAD.compareAndSet(seq, seq + 1));
+        Slot slot = SLOTS[(int) (seq & MASK)];
+        slot.timestamp = System.currentTimeMillis();
+        slot.claimed = seq;
+        return slot;
+    }
+
+    private static void publish(Slot slot) {
+        PUBLISHED.increment();
+        slot.sequence = slot.claimed;
+    }
+
+    private static void drainLoop() {
+        StringBuilder line = new StringBuilder(256);
+        while (true) {
+            if (!drainOnce(line)) {
+                try {
+                    OUT.flush();
+                } catch (IOException e) {
+                    // nothing sensible to do; keep draining
+                }
+                LockSupport.parkNanos(1_000_000L);
+            }
+        }
+    }
+
+    private static synchronized boolean drainOnce(StringBuilder line) {
+        long seq = tail;
+        Slot slot = SLOTS[(int) (seq & MASK)];
+        if (slot.sequence != seq) {
+            return false;
+        }
+        line.setLength(0);
+        format(slot, line);
+        tail = seq + 1;
+        try {
+            OUT.write(line.toString());
+        } catch (IOException e) {
+            // the event is lost, like a dropped one
+        }
+        return true;
+    }
+
+    private static void drainRemaining() {
+        StringBuilder line = new StringBuilder(256);
+        while (drainOnce(line)) {
+            // keep going until the ring is empty
+        }
+        try {
+            OUT.flush();
+        } catch (IOException e) {
+            // shutting down anyway
+        }
+    }
+
+    private static void format(Slot slot, StringBuilder sb) {
+        sb.append("{\"ts\":\"").append(Instant.ofEpochMilli(slot.timestamp)).append('"');
+        if (slot.type == TYPE_ACCESS) {
+            sb.append(",\"type\":\"access\",\"request_id\":").append(slot.requestId)
+              .append(",\"method\":");
+            appendJson(sb, slot.method);
+            sb.append(",\"route\":");
+            appendJson(sb, slot.route);
+            sb.append(",\"status\":").append(slot.status)
+              .append(",\"latency_us\":").append(slot.latencyMicros)
+              .append(",\"db_us\":").append(slot.dbMicros);
+            if (slot.roll != null && !slot.roll.isEmpty()) {
+                sb.append(",\"roll_hash\":\"").append(rollHash(slot.roll)).append('"');
+            }
+        } else {
+            sb.append(",\"type\":\"").append(slot.type == TYPE_ERROR ? "error" : "info").append('"')
+              .append(",\"source\":");
+            appendJson(sb, slot.source);
+            sb.append(",\"message\":");
+            appendJson(sb, slot.message);
+        }
+        sb.append("}\n");
+    }
+
+    // Keyed, so a roll number cannot be recovered by hashing every roll in
+    // the (small, guessable) roll space. Without SEATING_LOG_ROLL_KEY the key
+    // is random per process, and hashes only correlate within one run.
+    private static String rollHash(String roll) {
+        Mac mac = ROLL_MAC.get();
+        if (mac == null) {
+            return "";
+        }
+        byte[] hash = mac.doFinal(roll.trim().getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(hash, 0, 6);
+    }
+
+    private static byte[] rollKey() {
+        String configured = AppConfig.get("SEATING_LOG_ROLL_KEY", "");
+        if (!configured.isEmpty()) {
+            return configured.getBytes(StandardCharsets.UTF_8);
+        }
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return key;
+    }
+
+    private static void appendJson(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
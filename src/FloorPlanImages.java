@@ -0,0 +1,339 @@
+// FloorPlanImages.java
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+// Floor plan images in memory, each in several widths. Every
+// static/floorplan_*.png|jpg is decoded once and downscaled to the widths
+// in SEATING_FLOORPLAN_WIDTHS as JPEG; the original file is kept as the
+// widest variant. An optional floorplan_*.seats file next to the image
+// places seats on it (see parseSeatMap). refresh() re-reads only files
+// whose size or modification time changed, so it is cheap to call on a timer.
+public class FloorPlanImages {
+    private final Path directory;
+    private final int[] widths;
+    private final float jpegQuality;
+    // "first_room101" -> plan; replaced as a whole on refresh.
+    private volatile Map<String, Plan> plans = Collections.emptyMap();
+    // Bumped whenever refresh() changes the set of plans or any plan in it.
+    private volatile long version;
+
+    public FloorPlanImages(Path directory, int[] widths, float jpegQuality) {
+        this.directory = directory;
+        this.widths = widths.clone();
+        this.jpegQuality = jpegQuality;
+    }
+
+    // Returns the number of plans that were (re)decoded.
+    public synchronized int refresh() {
+        Map<String, Plan> current = plans;
+        Map<String, Plan> next = new HashMap<>();
+        int decoded = 0;
+        if (Files.isDirectory(directory)) {
+            // Pick one source per room first, so a room with both a .png and
+            // a .jpg does not decode the loser on every poll.
+            Map<String, Path> sources = new TreeMap<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "floorplan_*.{png,jpg,jpeg}")) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    String key = name.substring("floorplan_".length(), name.lastIndexOf('.'));
+                    // A .png wins over a .jpg, and a .jpg over a .jpeg.
+                    sources.merge(key, file, (a, b) -> rank(a) <= rank(b) ? a : b);
+                }
+            } catch (IOException e) {
+                EventLog.error("floorplans", "Cannot scan " + directory + ": " + e.getMessage());
+                return 0;
+            }
+            for (Map.Entry<String, Path> source : sources.entrySet()) {
+                String key = source.getKey();
+                Path file = source.getValue();
+                String name = file.getFileName().toString();
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                    Plan previous = current.get(key);
+                    Path seatsFile = directory.resolve("floorplan_" + key + ".seats");
+                    long seatsStamp = stamp(seatsFile);
+                    if (previous != null && previous.source.equals(file)
+                            && previous.size == attrs.size()
+                            && previous.modified == attrs.lastModifiedTime().toMillis()) {
+                        next.put(key, previous.seatsStamp == seatsStamp
+                                ? previous
+                                : previous.withSeats(readSeatMap(seatsFile), seatsStamp));
+                        continue;
+                    }
+                    next.put(key, decode(key, file, attrs).withSeats(readSeatMap(seatsFile), seatsStamp));
+                    decoded++;
+                } catch (IOException | RuntimeException e) {
+                    EventLog.error("floorplans", "Cannot process " + name + ": " + e.getMessage());
+                }
+            }
+        }
+        if (decoded > 0 || !next.equals(current)) {
+            plans = Collections.unmodifiableMap(next);
+            version++;
+        }
+        return decoded;
+    }
+
+    private static int rank(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".png") ? 0 : name.endsWith(".jpg") ? 1 : 2;
+    }
+
+    public Plan get(String floorSlug, String roomSlug) {
+        return plans.get(floorSlug + "_" + roomSlug);
+    }
+
+    public Plan get(String key) {
+        return plans.get(key);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getPlanCount() {
+        return plans.size();
+    }
+
+    public long getCachedBytes() {
+        long total = 0;
+        for (Plan plan : plans.values()) {
+            for (Variant variant : plan.variants.values()) {
+                total += variant.bytes.length;
+            }
+        }
+        return total;
+    }
+
+    private static long stamp(Path file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            return attrs.size() * 31 + attrs.lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static Map<String, int[]> readSeatMap(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return Collections.emptyMap();
+        }
+        return parseSeatMap(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    // Seat centres in pixels of the original image, keyed by upper-case seat
+    // label. Lines are either "<seat> <x> <y>" or
+    // "grid <left> <top> <right> <bottom> <columns> <rows>", which numbers
+    // S1, S2, ... row by row across that rectangle like the on-page seat
+    // grid. Later lines override earlier ones; '#' starts a comment.
+    static Map<String, int[]> parseSeatMap(List<String> lines) {
+        Map<String, int[]> seats = new HashMap<>();
+        for (String raw : lines) {
+            String line = raw.contains("#") ? raw.substring(0, raw.indexOf('#')) : raw;
+            String[] parts = line.trim().split("\\s+");
+            try {
+                if (parts.length == 7 && "grid".equalsIgnoreCase(parts[0])) {
+                    int left = Integer.parseInt(parts[1]);
+                    int top = Integer.parseInt(parts[2]);
+                    int right = Integer.parseInt(parts[3]);
+                    int bottom = Integer.parseInt(parts[4]);
+                    int columns = Math.max(1, Integer.parseInt(parts[5]));
+                    int rows = Math.max(1, Integer.parseInt(parts[6]));
+                    for (int r = 0; r < rows; r++) {
+                        for (int c = 0; c < columns; c++) {
+                            int x = left + (2 * c + 1) * (right - left) / (2 * columns);
+                            int y = top + (2 * r + 1) * (bottom - top) / (2 * rows);
+                            seats.put("S" + (r * columns + c + 1), new int[] {x, y});
+                        }
+                    }
+                } else if (parts.length == 3) {
+                    seats.put(parts[0].toUpperCase(Locale.ROOT),
+                            new int[] {Integer.parseInt(parts[1]), Integer.parseInt(parts[2])});
+                }
+            } catch (NumberFormatException e) {
+                // ignore the malformed line
+            }
+        }
+        return seats;
+    }
+
+    private Plan decode(String key, Path file, BasicFileAttributes attrs) throws IOException {
+        byte[] original = Files.readAllBytes(file);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(original));
+        if (image == null) {
+            throw new IOException("unsupported image format");
+        }
+        String name = file.getFileName().toString().toLowerCase();
+        String mime = name.endsWith(".png") ? "image/png" : "image/jpeg";
+        NavigableMap<Integer, Variant> variants = new TreeMap<>();
+        for (int width : widths) {
+            if (width > 0 && width < image.getWidth()) {
+                int height = Math.max(1, Math.round((float) image.getHeight() * width / image.getWidth()));
+                variants.put(width, new Variant(width, height, "image/jpeg", encodeJpeg(scale(image, width, height), jpegQuality)));
+            }
+        }
+        variants.put(image.getWidth(), new Variant(image.getWidth(), image.getHeight(), mime, original));
+        return new Plan(key, file, attrs.size(), attrs.lastModifiedTime().toMillis(), variants,
+                Collections.emptyMap(), 0);
+    }
+
+    // Progressive bilinear halving keeps thin lines legible, which a single
+    // large downscale step does not.
+    private static BufferedImage scale(BufferedImage source, int width, int height) {
+        BufferedImage current = source;
+        int w = source.getWidth();
+        int h = source.getHeight();
+        do {
+            w = Math.max(width, w / 2);
+            h = Math.max(height, h / 2);
+            BufferedImage step = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = step.createGraphics();
+            try {
+                // JPEG has no alpha: transparent areas become white.
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, w, h);
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            current = step;
+        } while (w != width || h != height);
+        return current;
+    }
+
+    static byte[] encodeJpeg(BufferedImage image, float jpegQuality) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("no JPEG encoder available");
+        }
+        ImageWriter writer = writers.next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    // One floor plan and its variants keyed by width, narrowest first.
+    public static class Plan {
+        private final String key;
+        private final Path source;
+        private final long size;
+        private final long modified;
+        private final NavigableMap<Integer, Variant> variants;
+        private final Map<String, int[]> seats;
+        private final long seatsStamp;
+        private final String version;
+
+        private Plan(String key, Path source, long size, long modified, NavigableMap<Integer, Variant> variants,
+                     Map<String, int[]> seats, long seatsStamp) {
+            this.key = key;
+            this.source = source;
+            this.size = size;
+            this.modified = modified;
+            this.variants = Collections.unmodifiableNavigableMap(variants);
+            this.seats = seats;
+            this.seatsStamp = seatsStamp;
+            this.version = HexFormat.of().toHexDigits((size ^ modified) * 31 + seatsStamp).substring(8);
+        }
+
+        private Plan withSeats(Map<String, int[]> newSeats, long newSeatsStamp) {
+            return new Plan(key, source, size, modified, variants, Collections.unmodifiableMap(newSeats), newSeatsStamp);
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public NavigableMap<Integer, Variant> getVariants() {
+            return variants;
+        }
+
+        // Narrowest variant at least this wide, else the widest one.
+        public Variant forWidth(int width) {
+            Map.Entry<Integer, Variant> entry = variants.ceilingEntry(width);
+            return entry != null ? entry.getValue() : variants.lastEntry().getValue();
+        }
+
+        // Centre of the seat in original-image pixels, or null when unmapped.
+        public int[] seatPosition(String seatLabel) {
+            return seatLabel == null ? null : seats.get(seatLabel.trim().toUpperCase(Locale.ROOT));
+        }
+
+        public boolean hasSeatMap() {
+            return !seats.isEmpty();
+        }
+
+        // Width of the original image, the space seat positions are given in.
+        public int getSourceWidth() {
+            return variants.lastKey();
+        }
+
+        // Changes when the image or its seat map changes; used to bust caches.
+        public String getVersion() {
+            return version;
+        }
+    }
+
+    public static class Variant {
+        private final int width;
+        private final int height;
+        private final String mime;
+        private final byte[] bytes;
+
+        private Variant(int width, int height, String mime, byte[] bytes) {
+            this.width = width;
+            this.height = height;
+            this.mime = mime;
+            this.bytes = bytes;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public String getMime() {
+            return mime;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+// FuzzyRollIndex.java
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// "Did you mean" index over roll numbers: finds rolls within one edit of a
+// query (one wrong, missing or extra character, or two swapped neighbours),
+// ignoring case. Symmetric-delete scheme: every roll is stored under its own
+// hash and the hash of each single-character deletion, and a query probes the
+// same variants of itself, so a lookup costs length+1 hash probes however
+// many rolls there are. Roll numbers share long prefixes, which is why this
+// beats a BK-tree here: nearly every roll is within distance 2-3 of every
+// other, so a BK-tree query ends up visiting most of the tree.
+// Variants are kept as 32-bit hashes in one open-addressing table of ints;
+// hash collisions are weeded out by checking candidates against the query.
+public class FuzzyRollIndex {
+    private static final int EMPTY = 0;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Slot -> variant hash, and slot -> roll id + 1 (0 marks a free slot).
+    private int[] hashes = new int[1024];
+    private int[] ids = new int[1024];
+    private int used;
+    // Roll id -> roll; null once the roll is removed.
+    private String[] rolls = new String[256];
+    private int rollCount;
+    private int removedCount;
+
+    public void rebuild(Collection<String> all) {
+        lock.writeLock().lock();
+        try {
+            rebuildLocked(all);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void rebuildLocked(Collection<String> all) {
+        Set<String> distinct = new LinkedHashSet<>(all);
+        long variants = 0;
+        for (String roll : distinct) {
+            variants += roll.length() + 1;
+        }
+        // Sized for a load factor under 0.7 so bulk loads never regrow.
+        int capacity = Integer.highestOneBit((int) Math.min(1 << 29, Math.max(1024, variants * 10 / 7))) << 1;
+        hashes = new int[capacity];
+        ids = new int[capacity];
+        used = 0;
+        rolls = new String[Math.max(256, distinct.size())];
+        rollCount = 0;
+        removedCount = 0;
+        for (String roll : distinct) {
+            insert(roll);
+        }
+    }
+
+    public void add(String roll) {
+        lock.writeLock().lock();
+        try {
+            if (findId(roll) < 0) {
+                insert(roll);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addAll(Collection<String> all) {
+        lock.writeLock().lock();
+        try {
+            long variants = used;
+            for (String roll : all) {
+                variants += roll.length() + 1;
+            }
+            // Grow once up front rather than doubling part-way through.
+            while (variants * 10 > (long) hashes.length * 7 && hashes.length < 1 << 29) {
+                grow();
+            }
+            for (String roll : all) {
+                if (findId(roll) < 0) {
+                    insert(roll);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Removal only retires the roll id; its table slots are dropped when
+    // enough removals pile up to justify a rebuild. The rebuild stays under
+    // the write lock, so a roll added meanwhile cannot be left out of it.
+    public void remove(String roll) {
+        lock.writeLock().lock();
+        try {
+            int id = findId(roll);
+            if (id < 0) {
+                return;
+            }
+            rolls[id] = null;
+            removedCount++;
+            if (removedCount > 1024 && removedCount > rollCount / 2) {
+                List<String> live = new ArrayList<>(rollCount - removedCount);
+                for (int i = 0; i < rollCount; i++) {
+                    if (rolls[i] != null) {
+                        live.add(rolls[i]);
+                    }
+                }
+                rebuildLocked(live);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Up to limit rolls within one edit of the query, an exact case-insensitive
+    // match first, then in roll order. All one-edit neighbours rank the same,
+    // so probing stops as soon as limit of them are found.
+    public List<String> suggest(String query, int limit) {
+        List<String> result = new ArrayList<>();
+        if (query == null || query.isBlank() || limit <= 0) {
+            return result;
+        }
+        String q = query.trim().toUpperCase(Locale.ROOT);
+        List<String> matches = new ArrayList<>();
+        // Densely numbered rolls reach the same neighbour through several
+        // variants; each candidate id is verified once.
+        int[] checked = new int[16];
+        int checkedCount = 0;
+        lock.readLock().lock();
+        try {
+            int mask = hashes.length - 1;
+            // The whole-query probe runs first, so a case-only match is always found.
+            for (int skip = -1; skip < q.length() && matches.size() < limit; skip++) {
+                if (skip > 0 && q.charAt(skip) == q.charAt(skip - 1)) {
+                    continue;
+                }
+                int h = variantHash(q, skip);
+                next:
+                for (int slot = h & mask; ids[slot] != EMPTY; slot = (slot + 1) & mask) {
+                    if (hashes[slot] != h) {
+                        continue;
+                    }
+                    int id = ids[slot];
+                    for (int i = 0; i < checkedCount; i++) {
+                        if (checked[i] == id) {
+                            continue next;
+                        }
+                    }
+                    if (checkedCount == checked.length) {
+                        checked = Arrays.copyOf(checked, checkedCount * 2);
+                    }
+                    checked[checkedCount++] = id;
+                    String roll = rolls[id - 1];
+                    if (roll != null && withinOneEdit(q, roll)) {
+                        matches.add(roll);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<String> exact = new ArrayList<>();
+        for (String roll : matches) {
+            (roll.equalsIgnoreCase(q) ? exact : result).add(roll);
+        }
+        result.sort(String.CASE_INSENSITIVE_ORDER);
+        exact.addAll(result);
+        return exact.size() > limit ? new ArrayList<>(exact.subList(0, limit)) : exact;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rollCount - removedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void insert(String roll) {
+        if (rollCount == rolls.length) {
+            rolls = Arrays.copyOf(rolls, rolls.length * 2);
+        }
+        int id = rollCount++;
+        rolls[id] = roll;
+        String key = roll.toUpperCase(Locale.ROOT);
+        for (int skip = -1; skip < key.length(); skip++) {
+            // Deleting either of two equal neighbours gives the same variant.
+            if (skip > 0 && key.charAt(skip) == key.charAt(skip - 1)) {
+                continue;
+            }
+            if ((used + 1) * 10 > hashes.length * 7) {
+                grow();
+            }
+            put(variantHash(key, skip), id + 1);
+        }
+    }
+
+    private void put(int hash, int idPlusOne) {
+        int mask = hashes.length - 1;
+        int slot = hash & mask;
+        while (ids[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        hashes[slot] = hash;
+        ids[slot] = idPlusOne;
+        used++;
+    }
+
+    private void grow() {
+        int[] oldHashes = hashes;
+        int[] oldIds = ids;
+        hashes = new int[oldHashes.length * 2];
+        ids = new int[oldIds.length * 2];
+        used = 0;
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] != EMPTY) {
+                put(oldHashes[i], oldIds[i]);
+            }
+        }
+    }
+
+    private int findId(String roll) {
+        int h = variantHash(roll.toUpperCase(Locale.ROOT), -1);
+        int mask = hashes.length - 1;
+        for (int slot = h & mask; ids[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (hashes[slot] == h && roll.equals(rolls[ids[slot] - 1])) {
+                return ids[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    // FNV-1a over the string with the character at skip left out (skip = -1
+    // hashes the whole string), finished with a murmur mix so that linear
+    // probing sees well-spread low bits.
+    private static int variantHash(String s, int skip) {
+        int h = 0x811c9dc5;
+        for (int i = 0; i < s.length(); i++) {
+            if (i != skip) {
+                h ^= s.charAt(i);
+                h *= 0x01000193;
+            }
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    // Case-insensitive optimal string alignment distance <= 1, in one pass
+    // and without allocating.
+    static boolean withinOneEdit(String a, String b) {
+        int la = a.length();
+        int lb = b.length();
+        if (Math.abs(la - lb) > 1) {
+            return false;
+        }
+        int i = 0;
+        while (i < la && i < lb && same(a.charAt(i), b.charAt(i))) {
+            i++;
+        }
+        if (i == la && i == lb) {
+            return true;
+        }
+        if (la == lb) {
+            // One substitution, or one swap of neighbours.
+            if (a.regionMatches(true, i + 1, b, i + 1, la - i - 1)) {
+                return true;
+            }
+            return i + 1 < la && same(a.charAt(i), b.charAt(i + 1)) && same(a.charAt(i + 1), b.charAt(i))
+                    && a.regionMatches(true, i + 2, b, i + 2, la - i - 2);
+        }
+        return la > lb
+                ? a.regionMatches(true, i + 1, b, i, lb - i)
+                : b.regionMatches(true, i + 1, a, i, la - i);
+    }
+
+    private static boolean same(char x, char y) {
+        return x == y || Character.toUpperCase(x) == Character.toUpperCase(y);
+    }
+}
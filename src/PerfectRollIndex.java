@@ -0,0 +1,234 @@
+// PerfectRollIndex.java
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Immutable roll -> value lookup over a fixed key set, built once per import.
+// A minimal perfect hash (CHD, "compress, hash and displace") maps each of
+// the n rolls to its own slot in 0..n-1: keys are hashed into buckets of
+// about BUCKET_SIZE, and each bucket stores one displacement that sends its
+// keys to free slots. A lookup is one hash, one displacement read and one
+// probe into the slot arrays, with no chains and no collisions to resolve.
+// The hash itself costs 4 / BUCKET_SIZE bytes per key; keys and values sit
+// in two flat arrays in slot order, as references to the caller's objects
+// rather than copies. The stored key is compared on every hit, since a
+// perfect hash maps unknown keys to some slot too.
+public final class PerfectRollIndex<V> {
+    private static final int BUCKET_SIZE = 4;
+    private static final int MAX_SEEDS = 32;
+
+    private final long seed;
+    private final int slots;
+    // Per bucket: d0 * slots + d1, see position().
+    private final int[] displacements;
+    private final String[] keys;
+    private final Object[] values;
+    private final long buildNanos;
+
+    private PerfectRollIndex(long seed, int[] displacements, String[] keys, Object[] values, long buildNanos) {
+        this.seed = seed;
+        this.slots = keys.length;
+        this.displacements = displacements;
+        this.keys = keys;
+        this.values = values;
+        this.buildNanos = buildNanos;
+    }
+
+    public static <V> PerfectRollIndex<V> build(Map<String, V> entries) {
+        long start = System.nanoTime();
+        // Copied through lists: a concurrent map may change size mid-iteration.
+        List<String> keyList = new ArrayList<>(entries.size());
+        List<Object> valueList = new ArrayList<>(entries.size());
+        for (Map.Entry<String, V> entry : entries.entrySet()) {
+            keyList.add(entry.getKey());
+            valueList.add(entry.getValue());
+        }
+        String[] inputKeys = keyList.toArray(new String[0]);
+        Object[] inputValues = valueList.toArray();
+        int n = inputKeys.length;
+        for (int attempt = 0; attempt < MAX_SEEDS; attempt++) {
+            long seed = 0x9E3779B97F4A7C15L * (attempt + 1);
+            int[] displacements = place(inputKeys, seed);
+            if (displacements != null) {
+                String[] keys = new String[n];
+                Object[] values = new Object[n];
+                int buckets = displacements.length;
+                for (int k = 0; k < n; k++) {
+                    long h = hash(inputKeys[k], seed);
+                    int slot = position(h, displacements[bucket(h, buckets)], n);
+                    keys[slot] = inputKeys[k];
+                    values[slot] = inputValues[k];
+                }
+                return new PerfectRollIndex<>(seed, displacements, keys, values, System.nanoTime() - start);
+            }
+        }
+        // Each seed fails only with tiny probability (see place()).
+        throw new IllegalStateException("cannot build a perfect hash over " + n + " keys");
+    }
+
+    // Displacement per bucket, or null when this seed does not work out.
+    private static int[] place(String[] keys, long seed) {
+        int n = keys.length;
+        int buckets = Math.max(1, (n + BUCKET_SIZE - 1) / BUCKET_SIZE);
+        int[] displacements = new int[buckets];
+        if (n == 0) {
+            return displacements;
+        }
+        long[] hashes = new long[n];
+        int[] bucketStart = new int[buckets + 1];
+        for (int k = 0; k < n; k++) {
+            hashes[k] = hash(keys[k], seed);
+            bucketStart[bucket(hashes[k], buckets) + 1]++;
+        }
+        int maxSize = 0;
+        for (int b = 0; b < buckets; b++) {
+            maxSize = Math.max(maxSize, bucketStart[b + 1]);
+            bucketStart[b + 1] += bucketStart[b];
+        }
+        // Key indexes grouped by bucket (counting sort).
+        int[] members = new int[n];
+        int[] fill = bucketStart.clone();
+        for (int k = 0; k < n; k++) {
+            members[fill[bucket(hashes[k], buckets)]++] = k;
+        }
+        // Buckets ordered largest first: big buckets are placed while the
+        // table is still empty, which is what makes the search converge.
+        int[] bySizeStart = new int[maxSize + 2];
+        for (int b = 0; b < buckets; b++) {
+            bySizeStart[maxSize - (bucketStart[b + 1] - bucketStart[b]) + 1]++;
+        }
+        for (int s = 0; s <= maxSize; s++) {
+            bySizeStart[s + 1] += bySizeStart[s];
+        }
+        int[] order = new int[buckets];
+        for (int b = 0; b < buckets; b++) {
+            order[bySizeStart[maxSize - (bucketStart[b + 1] - bucketStart[b])]++] = b;
+        }
+
+        boolean[] taken = new boolean[n];
+        int[] positions = new int[maxSize];
+        int nextFree = 0;
+        for (int b : order) {
+            int from = bucketStart[b];
+            int size = bucketStart[b + 1] - from;
+            if (size == 0) {
+                break;
+            }
+            if (size == 1) {
+                // A single key can go straight to the next free slot.
+                while (taken[nextFree]) {
+                    nextFree++;
+                }
+                long h = hashes[members[from]];
+                int d1 = Math.floorMod(nextFree - f1(h, n), n);
+                displacements[b] = d1;
+                taken[nextFree] = true;
+                continue;
+            }
+            // For a fixed d0, d1 shifts the whole bucket along the table, so
+            // the search walks shifts with additions only. Keys that land on
+            // the same base slot never separate and need the next d0.
+            boolean placed = false;
+            next:
+            for (long d0 = 0; d0 * n <= Integer.MAX_VALUE - (n - 1) && d0 < 1024; d0++) {
+                for (int j = 0; j < size; j++) {
+                    long h = hashes[members[from + j]];
+                    positions[j] = (int) ((f1(h, n) + d0 * f2(h, n)) % n);
+                    for (int earlier = 0; earlier < j; earlier++) {
+                        if (positions[earlier] == positions[j]) {
+                            continue next;
+                        }
+                    }
+                }
+                shift:
+                for (int d1 = 0; d1 < n; d1++) {
+                    for (int j = 0; j < size; j++) {
+                        int slot = positions[j] + d1;
+                        if (taken[slot >= n ? slot - n : slot]) {
+                            continue shift;
+                        }
+                    }
+                    for (int j = 0; j < size; j++) {
+                        int slot = positions[j] + d1;
+                        taken[slot >= n ? slot - n : slot] = true;
+                    }
+                    displacements[b] = (int) (d0 * n + d1);
+                    placed = true;
+                    break next;
+                }
+            }
+            if (!placed) {
+                return null;
+            }
+        }
+        return displacements;
+    }
+
+    public V get(String key) {
+        if (key == null || slots == 0) {
+            return null;
+        }
+        long h = hash(key, seed);
+        int slot = position(h, displacements[bucket(h, displacements.length)], slots);
+        @SuppressWarnings("unchecked")
+        V value = key.equals(keys[slot]) ? (V) values[slot] : null;
+        return value;
+    }
+
+    public int size() {
+        return slots;
+    }
+
+    // Bytes of the hash function itself, excluding the key and value arrays.
+    public long getHashBytes() {
+        return 4L * displacements.length;
+    }
+
+    // Bytes of the index's own arrays, assuming 4-byte (compressed)
+    // references and 16-byte array headers. The keys and values are shared
+    // with the map the index was built from and not counted.
+    public long getIndexBytes() {
+        return getHashBytes() + 2L * 4 * slots + 3L * 16;
+    }
+
+    public long getBuildNanos() {
+        return buildNanos;
+    }
+
+    // (f1 + d0 * f2 + d1) mod slots, the CHD displacement with d0 and d1
+    // packed into one int.
+    private static int position(long h, int displacement, int slots) {
+        long d0 = displacement / slots;
+        long d1 = displacement % slots;
+        return (int) ((f1(h, slots) + d0 * f2(h, slots) + d1) % slots);
+    }
+
+    private static int bucket(long h, int buckets) {
+        return (int) (((h >>> 32) * buckets) >>> 32);
+    }
+
+    private static int f1(long h, int slots) {
+        return (int) (((h & 0xffffffffL) * slots) >>> 32);
+    }
+
+    private static int f2(long h, int slots) {
+        long mixed = h * 0xC2B2AE3D27D4EB4FL;
+        return (int) (((mixed >>> 32) * slots) >>> 32);
+    }
+
+    // 64-bit FNV-1a over the characters, finished with the murmur3 fmix64
+    // step so every output bit depends on every input bit.
+    private static long hash(String key, long seed) {
+        long h = 0xcbf29ce484222325L ^ seed;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
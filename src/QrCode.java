@@ -0,0 +1,516 @@
+// QrCode.java
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Minimal QR Code encoder (ISO/IEC 18004): byte mode, error correction
+// level M, smallest version 1-40 that fits, mask chosen by the standard
+// penalty score. Encoding is the expensive part, so callers keep the
+// result. Modules are kept packed, one bit each and a whole number of
+// longs per row; toSvg() just walks them.
+public final class QrCode {
+    // Indexed by version; level M only.
+    private static final int[] ECC_CODEWORDS_PER_BLOCK = {-1,
+            10, 16, 26, 18, 24, 16, 18, 22, 22, 26, 30, 22, 22, 24, 24, 28, 28, 26, 26, 26,
+            26, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28};
+    private static final int[] ECC_BLOCKS = {-1,
+            1, 1, 1, 2, 2, 4, 4, 4, 5, 5, 5, 8, 9, 9, 10, 10, 11, 13, 14, 16,
+            17, 17, 18, 20, 21, 23, 25, 26, 28, 29, 31, 33, 35, 37, 38, 40, 43, 45, 47, 49};
+    // Format bits for level M are 00.
+    private static final int ECC_FORMAT_BITS = 0;
+
+    private final int version;
+    private final int size;
+    private final int words;
+    private final long[] rows;
+
+    private QrCode(int version, int size, long[] rows) {
+        this.version = version;
+        this.size = size;
+        this.words = wordsPerRow(size);
+        this.rows = rows;
+    }
+
+    // Throws IllegalArgumentException when the text does not fit version 40.
+    public static QrCode encode(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int version = 1;
+        while (4 + (version < 10 ? 8 : 16) + bytes.length * 8 > dataCodewords(version) * 8) {
+            if (++version > 40) {
+                throw new IllegalArgumentException("text too long for a QR code: " + bytes.length + " bytes");
+            }
+        }
+        return new Builder(version).build(codewords(version, dataBits(version, bytes)));
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isDark(int x, int y) {
+        return (rows[y * words + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    // Scalable image with the required four-module quiet zone; horizontal
+    // runs of dark modules are merged into one rectangle each.
+    public String toSvg() {
+        int border = 4;
+        int extent = size + 2 * border;
+        StringBuilder sb = new StringBuilder(size * size);
+        sb.append("<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 ").append(extent).append(' ').append(extent)
+                .append("\" shape-rendering=\"crispEdges\"><rect width=\"100%\" height=\"100%\" fill=\"#fff\"/><path d=\"");
+        for (int y = 0; y < size; y++) {
+            int x = 0;
+            while (x < size) {
+                if (!isDark(x, y)) {
+                    x++;
+                    continue;
+                }
+                int start = x;
+                while (x < size && isDark(x, y)) {
+                    x++;
+                }
+                sb.append('M').append(start + border).append(',').append(y + border)
+                        .append('h').append(x - start).append("v1h-").append(x - start).append('z');
+            }
+        }
+        sb.append("\" fill=\"#000\"/></svg>");
+        return sb.toString();
+    }
+
+    private static int wordsPerRow(int size) {
+        return (size + 63) >>> 6;
+    }
+
+    // Mode indicator, length, data, terminator and pad bytes.
+    private static byte[] dataBits(int version, byte[] bytes) {
+        int capacity = dataCodewords(version);
+        byte[] out = new byte[capacity];
+        int[] pos = {0};
+        appendBits(out, pos, 0b0100, 4);
+        appendBits(out, pos, bytes.length, version < 10 ? 8 : 16);
+        for (byte b : bytes) {
+            appendBits(out, pos, b & 0xFF, 8);
+        }
+        appendBits(out, pos, 0, Math.min(4, capacity * 8 - pos[0]));
+        pos[0] = (pos[0] + 7) / 8 * 8;
+        for (int i = pos[0] / 8, pad = 0xEC; i < capacity; i++, pad ^= 0xEC ^ 0x11) {
+            out[i] = (byte) pad;
+        }
+        return out;
+    }
+
+    private static void appendBits(byte[] out, int[] pos, int value, int count) {
+        for (int i = count - 1; i >= 0; i--, pos[0]++) {
+            if (((value >>> i) & 1) != 0) {
+                out[pos[0] >>> 3] |= (byte) (0x80 >>> (pos[0] & 7));
+            }
+        }
+    }
+
+    // Splits data into blocks, appends Reed-Solomon codewords to each and
+    // interleaves them in the order the symbol is read.
+    private static byte[] codewords(int version, byte[] data) {
+        int blocks = ECC_BLOCKS[version];
+        int eccLen = ECC_CODEWORDS_PER_BLOCK[version];
+        int raw = rawDataModules(version) / 8;
+        int shortBlocks = blocks - raw % blocks;
+        int shortLen = raw / blocks;
+        byte[] divisor = reedSolomonDivisor(eccLen);
+        byte[][] blockData = new byte[blocks][];
+        for (int i = 0, k = 0; i < blocks; i++) {
+            byte[] dat = Arrays.copyOfRange(data, k, k + shortLen - eccLen + (i < shortBlocks ? 0 : 1));
+            k += dat.length;
+            byte[] block = Arrays.copyOf(dat, shortLen + 1);
+            byte[] ecc = reedSolomonRemainder(dat, divisor);
+            System.arraycopy(ecc, 0, block, block.length - eccLen, eccLen);
+            blockData[i] = block;
+        }
+        byte[] result = new byte[raw];
+        for (int i = 0, k = 0; i < shortLen + 1; i++) {
+            for (int j = 0; j < blocks; j++) {
+                // Short blocks have no byte at the last data position.
+                if (i != shortLen - eccLen || j >= shortBlocks) {
+                    result[k++] = blockData[j][i];
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int dataCodewords(int version) {
+        return rawDataModules(version) / 8 - ECC_CODEWORDS_PER_BLOCK[version] * ECC_BLOCKS[version];
+    }
+
+    // Modules left for codewords once function patterns are placed.
+    private static int rawDataModules(int version) {
+        int result = (16 * version + 128) * version + 64;
+        if (version >= 2) {
+            int align = version / 7 + 2;
+            result -= (25 * align - 10) * align - 55;
+            if (version >= 7) {
+                result -= 36;
+            }
+        }
+        return result;
+    }
+
+    private static byte[] reedSolomonDivisor(int degree) {
+        byte[] result = new byte[degree];
+        result[degree - 1] = 1;
+        int root = 1;
+        for (int i = 0; i < degree; i++) {
+            for (int j = 0; j < degree; j++) {
+                result[j] = (byte) gfMultiply(result[j] & 0xFF, root);
+                if (j + 1 < degree) {
+                    result[j] ^= result[j + 1];
+                }
+            }
+            root = gfMultiply(root, 0x02);
+        }
+        return result;
+    }
+
+    private static byte[] reedSolomonRemainder(byte[] data, byte[] divisor) {
+        byte[] result = new byte[divisor.length];
+        for (byte b : data) {
+            int factor = (b ^ result[0]) & 0xFF;
+            System.arraycopy(result, 1, result, 0, result.length - 1);
+            result[result.length - 1] = 0;
+            for (int i = 0; i < result.length; i++) {
+                result[i] ^= (byte) gfMultiply(divisor[i] & 0xFF, factor);
+            }
+        }
+        return result;
+    }
+
+    // Multiplication in GF(2^8) modulo x^8 + x^4 + x^3 + x^2 + 1.
+    private static int gfMultiply(int x, int y) {
+        int z = 0;
+        for (int i = 7; i >= 0; i--) {
+            z = (z << 1) ^ ((z >>> 7) * 0x11D);
+            z ^= ((y >>> i) & 1) * x;
+        }
+        return z;
+    }
+
+    // For each version, the eight mask patterns as packed rows with the
+    // function modules cleared, so applying a mask is one XOR per word.
+    private static final long[][][] MASK_PATTERNS = new long[41][][];
+
+    private static long[][] maskPatterns(int version, boolean[][] function) {
+        synchronized (MASK_PATTERNS) {
+            long[][] patterns = MASK_PATTERNS[version];
+            if (patterns == null) {
+                int size = function.length;
+                int words = wordsPerRow(size);
+                patterns = new long[8][size * words];
+                for (int mask = 0; mask < 8; mask++) {
+                    for (int y = 0; y < size; y++) {
+                        for (int x = 0; x < size; x++) {
+                            if (!function[y][x] && masked(mask, x, y)) {
+                                patterns[mask][y * words + (x >>> 6)] |= 1L << x;
+                            }
+                        }
+                    }
+                }
+                MASK_PATTERNS[version] = patterns;
+            }
+            return patterns;
+        }
+    }
+
+    private static boolean masked(int mask, int x, int y) {
+        switch (mask) {
+            case 0: return (x + y) % 2 == 0;
+            case 1: return y % 2 == 0;
+            case 2: return x % 3 == 0;
+            case 3: return (x + y) % 3 == 0;
+            case 4: return (x / 3 + y / 2) % 2 == 0;
+            case 5: return x * y % 2 + x * y % 3 == 0;
+            case 6: return (x * y % 2 + x * y % 3) % 2 == 0;
+            default: return ((x + y) % 2 + x * y % 3) % 2 == 0;
+        }
+    }
+
+    private interface ModuleSink {
+        void set(int x, int y, boolean dark);
+    }
+
+    // Lays out one symbol: function patterns and codewords on a grid, then
+    // each mask is scored on packed rows and the lowest penalty wins.
+    private static final class Builder {
+        private final int version;
+        private final int size;
+        private final int words;
+        private final boolean[][] modules;
+        private final boolean[][] function;
+        private final int[] runs;
+
+        private Builder(int version) {
+            this.version = version;
+            this.size = version * 4 + 17;
+            this.words = wordsPerRow(size);
+            this.modules = new boolean[size][size];
+            this.function = new boolean[size][size];
+            this.runs = new int[size];
+        }
+
+        private QrCode build(byte[] codewords) {
+            drawFunctionPatterns();
+            drawCodewords(codewords);
+            long[] base = new long[size * words];
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    if (modules[y][x]) {
+                        base[y * words + (x >>> 6)] |= 1L << x;
+                    }
+                }
+            }
+            long[][] patterns = maskPatterns(version, function);
+            long[] best = null;
+            int bestPenalty = Integer.MAX_VALUE;
+            long[] columns = new long[size * words];
+            for (int mask = 0; mask < 8; mask++) {
+                long[] candidate = base.clone();
+                long[] pattern = patterns[mask];
+                for (int i = 0; i < candidate.length; i++) {
+                    candidate[i] ^= pattern[i];
+                }
+                drawFormatBits(mask, (x, y, dark) -> {
+                    long bit = 1L << x;
+                    int i = y * words + (x >>> 6);
+                    candidate[i] = dark ? candidate[i] | bit : candidate[i] & ~bit;
+                });
+                int penalty = penalty(candidate, columns);
+                if (penalty < bestPenalty) {
+                    best = candidate;
+                    bestPenalty = penalty;
+                }
+            }
+            return new QrCode(version, size, best);
+        }
+
+        private void set(int x, int y, boolean isDark) {
+            modules[y][x] = isDark;
+            function[y][x] = true;
+        }
+
+        private void drawFunctionPatterns() {
+            for (int i = 0; i < size; i++) {
+                set(6, i, i % 2 == 0);
+                set(i, 6, i % 2 == 0);
+            }
+            drawFinder(3, 3);
+            drawFinder(size - 4, 3);
+            drawFinder(3, size - 4);
+            int[] align = alignmentPositions();
+            int n = align.length;
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    // The three corners already hold finder patterns.
+                    if (!(i == 0 && j == 0 || i == 0 && j == n - 1 || i == n - 1 && j == 0)) {
+                        drawAlignment(align[i], align[j]);
+                    }
+                }
+            }
+            // Reserve the format areas; the real bits go in per mask.
+            drawFormatBits(0, this::set);
+            drawVersion();
+        }
+
+        private void drawFinder(int cx, int cy) {
+            for (int dy = -4; dy <= 4; dy++) {
+                for (int dx = -4; dx <= 4; dx++) {
+                    int x = cx + dx;
+                    int y = cy + dy;
+                    if (x >= 0 && x < size && y >= 0 && y < size) {
+                        int dist = Math.max(Math.abs(dx), Math.abs(dy));
+                        set(x, y, dist != 2 && dist != 4);
+                    }
+                }
+            }
+        }
+
+        private void drawAlignment(int cx, int cy) {
+            for (int dy = -2; dy <= 2; dy++) {
+                for (int dx = -2; dx <= 2; dx++) {
+                    set(cx + dx, cy + dy, Math.max(Math.abs(dx), Math.abs(dy)) != 1);
+                }
+            }
+        }
+
+        private int[] alignmentPositions() {
+            if (version == 1) {
+                return new int[0];
+            }
+            int count = version / 7 + 2;
+            int step = (version * 8 + count * 3 + 5) / (count * 4 - 4) * 2;
+            int[] result = new int[count];
+            result[0] = 6;
+            for (int i = count - 1, pos = size - 7; i >= 1; i--, pos -= step) {
+                result[i] = pos;
+            }
+            return result;
+        }
+
+        private void drawFormatBits(int mask, ModuleSink sink) {
+            int data = ECC_FORMAT_BITS << 3 | mask;
+            int rem = data;
+            for (int i = 0; i < 10; i++) {
+                rem = (rem << 1) ^ ((rem >>> 9) * 0x537);
+            }
+            int bits = (data << 10 | rem) ^ 0x5412;
+            for (int i = 0; i <= 5; i++) {
+                sink.set(8, i, bit(bits, i));
+            }
+            sink.set(8, 7, bit(bits, 6));
+            sink.set(8, 8, bit(bits, 7));
+            sink.set(7, 8, bit(bits, 8));
+            for (int i = 9; i < 15; i++) {
+                sink.set(14 - i, 8, bit(bits, i));
+            }
+            for (int i = 0; i < 8; i++) {
+                sink.set(size - 1 - i, 8, bit(bits, i));
+            }
+            for (int i = 8; i < 15; i++) {
+                sink.set(8, size - 15 + i, bit(bits, i));
+            }
+            sink.set(8, size - 8, true);
+        }
+
+        private void drawVersion() {
+            if (version < 7) {
+                return;
+            }
+            int rem = version;
+            for (int i = 0; i < 12; i++) {
+                rem = (rem << 1) ^ ((rem >>> 11) * 0x1F25);
+            }
+            int bits = version << 12 | rem;
+            for (int i = 0; i < 18; i++) {
+                boolean b = bit(bits, i);
+                int a = size - 11 + i % 3;
+                int c = i / 3;
+                set(a, c, b);
+                set(c, a, b);
+            }
+        }
+
+        // Zigzag through two-module columns from the bottom right, skipping
+        // the vertical timing column.
+        private void drawCodewords(byte[] data) {
+            int i = 0;
+            for (int right = size - 1; right >= 1; right -= 2) {
+                if (right == 6) {
+                    right = 5;
+                }
+                boolean upward = ((right + 1) & 2) == 0;
+                for (int vert = 0; vert < size; vert++) {
+                    int y = upward ? size - 1 - vert : vert;
+                    for (int j = 0; j < 2; j++) {
+                        int x = right - j;
+                        if (!function[y][x] && i < data.length * 8) {
+                            modules[y][x] = bit(data[i >>> 3], 7 - (i & 7));
+                            i++;
+                        }
+                    }
+                }
+            }
+        }
+
+        // The four penalty rules of the standard. Columns are scored as rows
+        // of the transposed matrix.
+        private int penalty(long[] grid, long[] columns) {
+            Arrays.fill(columns, 0L);
+            int result = 0;
+            int darkCount = 0;
+            for (int y = 0; y < size; y++) {
+                for (int w = 0; w < words; w++) {
+                    long word = grid[y * words + w];
+                    darkCount += Long.bitCount(word);
+                    while (word != 0) {
+                        int x = (w << 6) + Long.numberOfTrailingZeros(word);
+                        columns[x * words + (y >>> 6)] |= 1L << y;
+                        word &= word - 1;
+                    }
+                }
+                result += linePenalty(grid, y * words);
+            }
+            for (int x = 0; x < size; x++) {
+                result += linePenalty(columns, x * words);
+            }
+            // 2x2 blocks of one colour: module x equal to x+1 and to the two
+            // below it.
+            for (int y = 0; y + 1 < size; y++) {
+                int top = y * words;
+                int bottom = top + words;
+                for (int w = 0; w < words; w++) {
+                    long a = grid[top + w];
+                    long b = grid[bottom + w];
+                    boolean last = w + 1 == words;
+                    long aNext = (a >>> 1) | (last ? 0 : grid[top + w + 1] << 63);
+                    long bNext = (b >>> 1) | (last ? 0 : grid[bottom + w + 1] << 63);
+                    long same = ~(a ^ b) & ~(a ^ aNext) & ~(aNext ^ bNext);
+                    if (last) {
+                        same &= (1L << (size - 1 - (w << 6))) - 1;
+                    }
+                    result += 3 * Long.bitCount(same);
+                }
+            }
+            int total = size * size;
+            result += ((Math.abs(darkCount * 20 - total * 10) + total - 1) / total - 1) * 10;
+            return result;
+        }
+
+        // Runs of five or more, and finder-like 1:1:3:1:1 runs with four light
+        // modules on either side; the quiet zone counts as light.
+        private int linePenalty(long[] grid, int base) {
+            int n = 0;
+            for (int x = 0; x < size; ) {
+                int end = nextChange(grid, base, x);
+                runs[n++] = end - x;
+                x = end;
+            }
+            boolean firstDark = (grid[base] & 1) != 0;
+            int result = 0;
+            for (int k = 0; k < n; k++) {
+                int run = runs[k];
+                if (run >= 5) {
+                    result += run - 2;
+                }
+                if (run == 3 && (k % 2 == 0) == firstDark && k >= 2 && k + 2 < n
+                        && runs[k - 2] == 1 && runs[k - 1] == 1 && runs[k + 1] == 1 && runs[k + 2] == 1) {
+                    if (k < 3 || runs[k - 3] >= 4) {
+                        result += 40;
+                    }
+                    if (k + 3 >= n || runs[k + 3] >= 4) {
+                        result += 40;
+                    }
+                }
+            }
+            return result;
+        }
+
+        // First position after x whose colour differs from x's, or size.
+        private int nextChange(long[] grid, int base, int x) {
+            int w = x >>> 6;
+            long flip = (grid[base + w] & (1L << x)) != 0 ? -1L : 0L;
+            long word = (grid[base + w] ^ flip) & (-1L << x);
+            while (word == 0) {
+                if (++w == words) {
+                    return size;
+                }
+                word = grid[base + w] ^ flip;
+            }
+            return Math.min(size, (w << 6) + Long.numberOfTrailingZeros(word));
+        }
+
+        private static boolean bit(int value, int i) {
+            return ((value >>> i) & 1) != 0;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+// RateLimiter.java
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+// Router middleware: a token bucket per client address. Each client may
+// burst up to `burst` requests and is then refilled at perMinute; beyond
+// that it gets 429 with Retry-After. The table holds at most MAX_CLIENTS
+// buckets in least-recently-seen order, so a scan from many addresses
+// evicts the longest idle client in O(1) instead of growing the table.
+public class RateLimiter implements Router.Middleware {
+    private static final int MAX_CLIENTS = 10_000;
+
+    private final double tokensPerNano;
+    private final double burst;
+    private final int trustedHops;
+    private final Predicate<Router.Request> exempt;
+    // Guarded by itself; access order, so the eldest entry is the client
+    // seen least recently.
+    private final Map<String, Bucket> buckets = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+            return size() > MAX_CLIENTS;
+        }
+    };
+    private final LongAdder rejected = new LongAdder();
+
+    // perMinute <= 0 turns the limiter off. With trustedHops > 0 the server
+    // sits behind that many proxies, each appending the address it got the
+    // request from to X-Forwarded-For; the client is the address the
+    // outermost of them saw. Entries further left are whatever the client
+    // sent and are ignored.
+    public RateLimiter(int perMinute, int burst, int trustedHops, Predicate<Router.Request> exempt) {
+        this.tokensPerNano = perMinute / 60e9;
+        this.burst = Math.max(1, burst);
+        this.trustedHops = Math.max(0, trustedHops);
+        this.exempt = exempt;
+    }
+
+    @Override
+    public void handle(Router.Request request, Router.Handler next) throws IOException {
+        if (tokensPerNano <= 0 || exempt.test(request)) {
+            next.handle(request);
+            return;
+        }
+        long now = System.nanoTime();
+        String client = clientOf(request);
+        Bucket bucket;
+        synchronized (buckets) {
+            bucket = buckets.computeIfAbsent(client, k -> new Bucket(burst, now));
+        }
+        long waitNanos;
+        synchronized (bucket) {
+            bucket.refill(now, tokensPerNano, burst);
+            if (bucket.tokens >= 1) {
+                bucket.tokens -= 1;
+                waitNanos = 0;
+            } else {
+                waitNanos = (long) ((1 - bucket.tokens) / tokensPerNano);
+            }
+        }
+        if (waitNanos == 0) {
+            next.handle(request);
+            return;
+        }
+        rejected.increment();
+        request.getExchange().getResponseHeaders().set("Retry-After",
+                Long.toString(Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L)));
+        request.send(429, "text/plain; charset=UTF-8",
+                "Too many requests. Please wait a moment and try again.".getBytes(StandardCharsets.UTF_8));
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private String clientOf(Router.Request request) {
+        if (trustedHops > 0) {
+            String forwarded = String.join(",", request.getExchange().getRequestHeaders()
+                    .getOrDefault("X-Forwarded-For", List.of()));
+            String[] hops = forwarded.split(",");
+            // With fewer entries than trusted proxies, the leftmost is the
+            // best there is.
+            String client = hops[Math.max(0, hops.length - trustedHops)].trim();
+            if (!client.isEmpty()) {
+                return client;
+            }
+        }
+        return request.getExchange().getRemoteAddress().getAddress().getHostAddress();
+    }
+
+    public int getClientCount() {
+        synchronized (buckets) {
+            return buckets.size();
+        }
+    }
+
+    private static final class Bucket {
+        private double tokens;
+        private long updatedNanos;
+
+        private Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.updatedNanos = now;
+        }
+
+        private void refill(long now, double tokensPerNano, double burst) {
+            tokens = Math.min(burst, tokens + (now - updatedNanos) * tokensPerNano);
+            updatedNanos = now;
+        }
+    }
+}
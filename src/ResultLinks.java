@@ -0,0 +1,18 @@
+// ResultLinks.java
+
+// Where a seating result page points: the live server's routes, or the
+// relative files of a static export (see StaticSiteExporter).
+public interface ResultLinks {
+    // The search page.
+    String home();
+
+    // The page for one sitting of the same roll; not yet HTML-escaped.
+    String sitting(Student sitting);
+
+    // One width of a floor plan, with the seat marked unless seat is null.
+    // Returned HTML-escaped, ready for an attribute.
+    String floorPlan(FloorPlanImages.Plan plan, FloorPlanImages.Variant variant, String seat);
+
+    // The sitting's QR seat slip, HTML-escaped; null when there is none.
+    String slip(Student sitting);
+}
@@ -0,0 +1,154 @@
+// RollLookupBenchmark.java
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.ref.Reference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// Compares the roll lookup paths: PerfectRollIndex against the HashMap and
+// ConcurrentHashMap it replaces on the read path, and, when the sqlite3 CLI
+// is installed, the per-search SQL query.
+// Usage: java -cp src RollLookupBenchmark [rolls] [rounds]
+public class RollLookupBenchmark {
+    private static final int MEASURE_TRIES = 5;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        List<String> rolls = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rolls.add(String.format("R%07d", i));
+        }
+        Map<String, Student> students = new HashMap<>();
+        for (String roll : rolls) {
+            students.put(roll, new Student(roll, "Room-101", "First Floor", "S1", "Maths", "2026-01-01", "09:30"));
+        }
+
+        // The index's size is exact, from its arrays; the maps have no such
+        // accounting and are measured on the heap.
+        long hashMapBytes = retainedBytes(() -> new HashMap<>(students));
+        long concurrentBytes = retainedBytes(() -> new ConcurrentHashMap<>(students));
+        Map<String, Student> hashMap = new HashMap<>(students);
+        Map<String, Student> concurrentMap = new ConcurrentHashMap<>(students);
+        PerfectRollIndex<Student> perfect = PerfectRollIndex.build(students);
+
+        System.out.printf("%d rolls; perfect hash built in %d ms%n", count, perfect.getBuildNanos() / 1_000_000L);
+        System.out.printf("bytes per roll: HashMap %s, ConcurrentHashMap %s, PerfectRollIndex %.1f (hash alone %.2f)%n",
+                perRoll(hashMapBytes, count), perRoll(concurrentBytes, count),
+                (double) perfect.getIndexBytes() / count, (double) perfect.getHashBytes() / count);
+
+        Random random = new Random(42);
+        for (int round = 0; round < rounds; round++) {
+            // Fresh strings every round, as a search parses a new one per
+            // request: no cached String hash codes.
+            String[] queries = new String[count];
+            for (int i = 0; i < count; i++) {
+                queries[i] = new String(rolls.get(random.nextInt(count)).toCharArray());
+            }
+            long t0 = System.nanoTime();
+            int hits = 0;
+            for (String query : queries) {
+                hits += hashMap.get(query) != null ? 1 : 0;
+            }
+            long t1 = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                queries[i] = new String(queries[i].toCharArray());
+            }
+            long t2 = System.nanoTime();
+            for (String query : queries) {
+                hits += concurrentMap.get(query) != null ? 1 : 0;
+            }
+            long t3 = System.nanoTime();
+            for (String query : queries) {
+                hits += perfect.get(query) != null ? 1 : 0;
+            }
+            long t4 = System.nanoTime();
+            System.out.printf("round %d: HashMap %.1f ns, ConcurrentHashMap %.1f ns, PerfectRollIndex %.1f ns per lookup (%d hits)%n",
+                    round + 1, (double) (t1 - t0) / count, (double) (t3 - t2) / count, (double) (t4 - t3) / count, hits);
+        }
+        benchmarkSqlite(rolls);
+    }
+
+    private static void benchmarkSqlite(List<String> rolls) throws IOException, InterruptedException {
+        if (!run(new ProcessBuilder("sqlite3", "-version"), null)) {
+            System.out.println("sqlite3 not installed; skipping the SQL path");
+            return;
+        }
+        Path db = Files.createTempFile("roll-bench-", ".db");
+        try {
+            StringBuilder script = new StringBuilder(
+                    "CREATE TABLE students (roll TEXT, exam_date TEXT, exam_time TEXT, room TEXT, " +
+                    "PRIMARY KEY (roll, exam_date, exam_time)) WITHOUT ROWID;BEGIN;");
+            for (String roll : rolls) {
+                script.append("INSERT INTO students VALUES ('").append(roll).append("','2026-01-01','09:30','Room-101');");
+            }
+            script.append("COMMIT;");
+            run(new ProcessBuilder("sqlite3", db.toString()), script.toString());
+            List<String> sample = new ArrayList<>(rolls);
+            Collections.shuffle(sample, new Random(7));
+            int queries = Math.min(50, sample.size());
+            long start = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                run(new ProcessBuilder("sqlite3", "-csv", db.toString(),
+                        "SELECT * FROM students WHERE roll = '" + sample.get(i) + "';"), null);
+            }
+            System.out.printf("sqlite3 query: %.2f ms per lookup (%d queries)%n",
+                    (System.nanoTime() - start) / 1e6 / queries, queries);
+        } finally {
+            Files.deleteIfExists(db);
+        }
+    }
+
+    private static boolean run(ProcessBuilder builder, String stdin) throws InterruptedException {
+        try {
+            Process process = builder.redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            try (Writer writer = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8)) {
+                if (stdin != null) {
+                    writer.write(stdin);
+                }
+            }
+            return process.waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Heap retained by what build returns: the median of MEASURE_TRIES
+    // GC-stabilised readings, or -1 when the heap was too noisy to tell.
+    private static long retainedBytes(Supplier<Object> build) throws InterruptedException {
+        long[] samples = new long[MEASURE_TRIES];
+        for (int i = 0; i < samples.length; i++) {
+            long before = usedHeap();
+            Object built = build.get();
+            samples[i] = usedHeap() - before;
+            Reference.reachabilityFence(built);
+        }
+        Arrays.sort(samples);
+        long median = samples[samples.length / 2];
+        return median > 0 ? median : -1;
+    }
+
+    private static String perRoll(long bytes, int count) {
+        return bytes < 0 ? "n/a" : String.format("%.1f", (double) bytes / count);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
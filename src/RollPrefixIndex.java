@@ -0,0 +1,207 @@
+// RollPrefixIndex.java
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Sorted-array index of roll numbers for case-insensitive prefix completion.
+// Lookups binary-search an immutable base array plus a small sorted array of
+// recent additions; deletions are tombstones. When the delta grows past a
+// threshold everything is merged into a fresh base array, so single writes
+// stay cheap and bulk loads go through rebuild() or addAll().
+public class RollPrefixIndex {
+    private static final Comparator<String> ORDER =
+            String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+
+    private static final class State {
+        private final String[] base;
+        private final String[] added;
+        private final Set<String> removed;
+
+        private State(String[] base, String[] added, Set<String> removed) {
+            this.base = base;
+            this.added = added;
+            this.removed = removed;
+        }
+    }
+
+    private volatile State state = new State(new String[0], new String[0], Set.of());
+
+    public synchronized void rebuild(Collection<String> rolls) {
+        String[] base = rolls.stream().distinct().toArray(String[]::new);
+        Arrays.sort(base, ORDER);
+        state = new State(base, new String[0], Set.of());
+    }
+
+    public synchronized void add(String roll) {
+        State current = state;
+        Set<String> removed = current.removed;
+        if (removed.contains(roll)) {
+            removed = new HashSet<>(removed);
+            removed.remove(roll);
+            state = new State(current.base, current.added, removed);
+            return;
+        }
+        if (Arrays.binarySearch(current.base, roll, ORDER) >= 0
+                || Arrays.binarySearch(current.added, roll, ORDER) >= 0) {
+            return;
+        }
+        int pos = -Arrays.binarySearch(current.added, roll, ORDER) - 1;
+        String[] added = new String[current.added.length + 1];
+        System.arraycopy(current.added, 0, added, 0, pos);
+        added[pos] = roll;
+        System.arraycopy(current.added, pos, added, pos + 1, current.added.length - pos);
+        state = new State(current.base, added, removed);
+        compactIfNeeded();
+    }
+
+    // Adds many rolls in one pass. The delta is allowed to grow to an eighth
+    // of the base before merging, so an upload arriving in batches costs a
+    // few linear merges instead of one every few thousand rolls.
+    public synchronized void addAll(Collection<String> rolls) {
+        if (rolls.isEmpty()) {
+            return;
+        }
+        State current = state;
+        String[] incoming = rolls.toArray(new String[0]);
+        Arrays.sort(incoming, ORDER);
+        Set<String> removed = current.removed;
+        List<String> fresh = new ArrayList<>(incoming.length);
+        String previous = null;
+        for (String roll : incoming) {
+            if (roll.equals(previous)) {
+                continue;
+            }
+            previous = roll;
+            if (removed.contains(roll)) {
+                if (removed == current.removed) {
+                    removed = new HashSet<>(removed);
+                }
+                removed.remove(roll);
+            } else if (Arrays.binarySearch(current.base, roll, ORDER) < 0
+                    && Arrays.binarySearch(current.added, roll, ORDER) < 0) {
+                fresh.add(roll);
+            }
+        }
+        String[] added = merge(current.added, Set.of(), fresh.toArray(new String[0]));
+        state = new State(current.base, added, removed);
+        if (added.length + removed.size() > Math.max(1024, current.base.length / 8)) {
+            compact();
+        }
+    }
+
+    public synchronized void remove(String roll) {
+        State current = state;
+        int addedPos = Arrays.binarySearch(current.added, roll, ORDER);
+        if (addedPos >= 0) {
+            String[] added = new String[current.added.length - 1];
+            System.arraycopy(current.added, 0, added, 0, addedPos);
+            System.arraycopy(current.added, addedPos + 1, added, addedPos, added.length - addedPos);
+            state = new State(current.base, added, current.removed);
+            return;
+        }
+        if (Arrays.binarySearch(current.base, roll, ORDER) < 0 || current.removed.contains(roll)) {
+            return;
+        }
+        Set<String> removed = new HashSet<>(current.removed);
+        removed.add(roll);
+        state = new State(current.base, current.added, removed);
+        compactIfNeeded();
+    }
+
+    public int size() {
+        State current = state;
+        return current.base.length + current.added.length - current.removed.size();
+    }
+
+    // Up to limit rolls starting with prefix (ignoring case), in sorted order.
+    public List<String> complete(String prefix, int limit) {
+        List<String> result = new ArrayList<>(Math.max(0, limit));
+        if (prefix == null || limit <= 0) {
+            return result;
+        }
+        State current = state;
+        int i = lowerBound(current.base, prefix);
+        int j = lowerBound(current.added, prefix);
+        while (result.size() < limit) {
+            String fromBase = nextMatch(current.base, i, prefix);
+            String fromAdded = nextMatch(current.added, j, prefix);
+            if (fromBase == null && fromAdded == null) {
+                break;
+            }
+            String next;
+            if (fromAdded == null || (fromBase != null && ORDER.compare(fromBase, fromAdded) <= 0)) {
+                next = fromBase;
+                i++;
+                if (current.removed.contains(next)) {
+                    continue;
+                }
+            } else {
+                next = fromAdded;
+                j++;
+            }
+            result.add(next);
+        }
+        return result;
+    }
+
+    private static String nextMatch(String[] rolls, int index, String prefix) {
+        if (index >= rolls.length) {
+            return null;
+        }
+        String roll = rolls[index];
+        return roll.regionMatches(true, 0, prefix, 0, prefix.length()) ? roll : null;
+    }
+
+    // First index whose roll is not less than prefix, ignoring case.
+    private static int lowerBound(String[] rolls, String prefix) {
+        int lo = 0;
+        int hi = rolls.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (String.CASE_INSENSITIVE_ORDER.compare(rolls[mid], prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void compactIfNeeded() {
+        State current = state;
+        int delta = current.added.length + current.removed.size();
+        int threshold = Math.max(1024, (int) Math.sqrt(current.base.length) * 4);
+        if (delta > threshold) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        State current = state;
+        state = new State(merge(current.base, current.removed, current.added), new String[0], Set.of());
+    }
+
+    // Merges two sorted arrays, leaving out skipped rolls of the first.
+    private static String[] merge(String[] first, Set<String> skip, String[] second) {
+        String[] merged = new String[first.length + second.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < first.length || j < second.length) {
+            if (j == second.length || (i < first.length && ORDER.compare(first[i], second[j]) <= 0)) {
+                String roll = first[i++];
+                if (!skip.isEmpty() && skip.contains(roll)) {
+                    continue;
+                }
+                merged[n++] = roll;
+            } else {
+                merged[n++] = second[j++];
+            }
+        }
+        return n == merged.length ? merged : Arrays.copyOf(merged, n);
+    }
+}
@@ -0,0 +1,326 @@
+// RoomRegistry.java
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Exam rooms: seat layout, capacity, floor and floor-plan image, read from
+// data/rooms.txt. Each line is "room,floor,rows,columns[,capacity[,plan]]";
+// capacity defaults to rows x columns and plan names an image in static/
+// ("floorplan_first_room101.jpg"), defaulting to the one the room and floor
+// names point at. '#' starts a comment.
+//
+// refresh() re-reads the file when it changes and re-resolves plans when
+// the floor plans change; lookups in between are one map lookup and never
+// touch the filesystem. Rooms are keyed by floor and room, so "Room 101" on
+// two floors are two rooms; a sitting whose floor does not match the file
+// falls back to the room name when only one floor has it. A room missing
+// from the file is resolved the first time it is seen, logged once, and
+// given SEATING_DEFAULT_ROOM_SEATS seats.
+public class RoomRegistry {
+    private static final int DEFAULT_COLUMNS = 6;
+
+    private final Path file;
+    private final FloorPlanImages floorPlans;
+    private final int defaultSeats;
+    private volatile Index index = new Index(Collections.emptyMap());
+    // Bumped on every rebuild, so pages rendered from the registry can tell
+    // when they are stale.
+    private volatile long version;
+    private long fileStamp = Long.MIN_VALUE;
+    private long plansVersion = Long.MIN_VALUE;
+    private Map<String, String[]> configured = Collections.emptyMap();
+    // Unlisted rooms already logged; reset when the file changes.
+    private final Set<String> warned = ConcurrentHashMap.newKeySet();
+
+    public RoomRegistry(Path file, FloorPlanImages floorPlans, int defaultSeats) {
+        this.file = file;
+        this.floorPlans = floorPlans;
+        this.defaultSeats = Math.max(1, defaultSeats);
+    }
+
+    // Returns true when the index was rebuilt.
+    public synchronized boolean refresh() {
+        long stamp = stamp(file);
+        long plans = floorPlans.getVersion();
+        if (stamp == fileStamp && plans == plansVersion) {
+            return false;
+        }
+        if (stamp != fileStamp) {
+            configured = readFile();
+            fileStamp = stamp;
+            warned.clear();
+        }
+        plansVersion = plans;
+        Map<String, Room> rooms = new HashMap<>();
+        for (Map.Entry<String, String[]> entry : configured.entrySet()) {
+            Room room = parse(entry.getValue());
+            if (room != null) {
+                rooms.put(entry.getKey(), room);
+            }
+        }
+        index = new Index(rooms);
+        version++;
+        return true;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // The room a sitting is in. Never null: unlisted rooms get a default
+    // layout and the plan their names point at.
+    public Room lookup(String room, String floor) {
+        Index current = index;
+        String key = (room == null ? "" : room) + '\u001f' + (floor == null ? "" : floor);
+        Room found = current.resolved.get(key);
+        if (found != null) {
+            return found;
+        }
+        found = current.configured.get(roomKey(room, floor));
+        // Without a floor, a name used on several floors gets the largest
+        // of them, so nothing sized from it is short of seats.
+        if (found == null && floor == null) {
+            found = current.widest(slug(room));
+        } else if (found == null) {
+            found = current.only(slug(room));
+        }
+        if (found == null) {
+            found = unlisted(room, floor);
+        }
+        Room previous = current.resolved.putIfAbsent(key, found);
+        return previous != null ? previous : found;
+    }
+
+    public int getConfiguredCount() {
+        return index.configured.size();
+    }
+
+    public int getUnlistedCount() {
+        int count = 0;
+        for (Room room : index.resolved.values()) {
+            if (!room.isListed()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Room unlisted(String room, String floor) {
+        String planKey = roomKey(room, floor);
+        FloorPlanImages.Plan plan = floorPlans.get(planKey);
+        if (warned.add(planKey)) {
+            EventLog.info("rooms", "Room \"" + room + "\" is not in " + file + "; assuming " + defaultSeats + " seats.");
+        }
+        int columns = Math.min(DEFAULT_COLUMNS, defaultSeats);
+        return new Room(room == null ? "" : room.trim(), floor == null ? "" : floor.trim(),
+                (defaultSeats + columns - 1) / columns, columns, defaultSeats,
+                "floorplan_" + planKey + ".png or .jpg", plan, false);
+    }
+
+    private Map<String, String[]> readFile() {
+        Map<String, String[]> rows = new HashMap<>();
+        if (!Files.exists(file)) {
+            return rows;
+        }
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                int hash = line.indexOf('#');
+                String content = (hash < 0 ? line : line.substring(0, hash)).trim();
+                if (content.isEmpty() || content.toLowerCase(Locale.ROOT).startsWith("room,")) {
+                    continue;
+                }
+                String[] parts = SeatingDatabase.parseCsvRow(content);
+                if (parts.length < 4 || parts[0].isBlank()) {
+                    EventLog.error("rooms", "Ignoring line in " + file + ": " + content);
+                    continue;
+                }
+                String[] previous = rows.put(roomKey(parts[0], parts[1]), parts);
+                if (previous != null) {
+                    EventLog.error("rooms", "Room " + parts[0].trim() + " on " + parts[1].trim()
+                            + " is listed twice in " + file + "; using the later line: " + content);
+                }
+            }
+            EventLog.info("rooms", "Loaded " + rows.size() + " room(s) from " + file + ".");
+        } catch (IOException e) {
+            EventLog.error("rooms", "Cannot read " + file + ": " + e.getMessage());
+        }
+        return rows;
+    }
+
+    private Room parse(String[] parts) {
+        String name = parts[0].trim();
+        String floor = parts[1].trim();
+        try {
+            int rows = Integer.parseInt(parts[2].trim());
+            int columns = Integer.parseInt(parts[3].trim());
+            int capacity = parts.length > 4 && !parts[4].isBlank() ? Integer.parseInt(parts[4].trim()) : rows * columns;
+            if (rows <= 0 || columns <= 0 || capacity <= 0) {
+                throw new NumberFormatException("must be positive");
+            }
+            boolean named = parts.length > 5 && !parts[5].isBlank();
+            String key = named ? planKey(parts[5].trim()) : roomKey(name, floor);
+            String asset = named ? parts[5].trim() : "floorplan_" + key + ".png or .jpg";
+            FloorPlanImages.Plan plan = floorPlans.get(key);
+            if (plan == null && named) {
+                EventLog.error("rooms", "Floor plan " + asset + " for " + name + " not found in static/.");
+            }
+            return new Room(name, floor, rows, columns, capacity, asset, plan, true);
+        } catch (NumberFormatException e) {
+            EventLog.error("rooms", "Bad layout for " + name + " in " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // "floorplan_first_room101.jpg" -> "first_room101"
+    private static String planKey(String asset) {
+        String key = asset.startsWith("floorplan_") ? asset.substring("floorplan_".length()) : asset;
+        int dot = key.lastIndexOf('.');
+        return dot < 0 ? key : key.substring(0, dot);
+    }
+
+    // ("Room-101", "First Floor") -> "first_room101"; also the default plan key.
+    static String roomKey(String room, String floor) {
+        return floorSlug(floor) + "_" + slug(room);
+    }
+
+    // "Room-101" -> "room101"
+    static String slug(String name) {
+        if (name == null) {
+            return "unknown";
+        }
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = Character.toLowerCase(name.charAt(i));
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    // "First Floor" -> "first"; otherwise the first word, as a slug.
+    static String floorSlug(String floor) {
+        if (floor == null) {
+            return "unknown";
+        }
+        String f = floor.toLowerCase(Locale.ROOT);
+        for (String known : List.of("first", "second", "third", "ground")) {
+            if (f.contains(known)) {
+                return known;
+            }
+        }
+        String trimmed = f.trim();
+        int space = trimmed.indexOf(' ');
+        return slug(space < 0 ? trimmed : trimmed.substring(0, space));
+    }
+
+    private static long stamp(Path file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            return attrs.lastModifiedTime().toMillis() * 31 + attrs.size();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    // Configured rooms by roomKey, the same rooms by slug alone, plus every
+    // (room, floor) pair seen since the last rebuild; dropped as a whole when
+    // the file or the plans change.
+    private static final class Index {
+        private final Map<String, Room> configured;
+        private final Map<String, List<Room>> bySlug = new HashMap<>();
+        private final Map<String, Room> resolved = new ConcurrentHashMap<>();
+
+        private Index(Map<String, Room> configured) {
+            this.configured = configured;
+            for (Room room : configured.values()) {
+                bySlug.computeIfAbsent(slug(room.getName()), k -> new ArrayList<>()).add(room);
+            }
+        }
+
+        // The room with this name when only one floor has it.
+        private Room only(String slug) {
+            List<Room> candidates = bySlug.get(slug);
+            return candidates != null && candidates.size() == 1 ? candidates.get(0) : null;
+        }
+
+        // The largest room with this name on any floor.
+        private Room widest(String slug) {
+            Room best = null;
+            for (Room room : bySlug.getOrDefault(slug, List.of())) {
+                if (best == null || room.getCapacity() > best.getCapacity()) {
+                    best = room;
+                }
+            }
+            return best;
+        }
+    }
+
+    public static final class Room {
+        private final String name;
+        private final String floor;
+        private final int rows;
+        private final int columns;
+        private final int capacity;
+        private final String asset;
+        private final FloorPlanImages.Plan plan;
+        private final boolean listed;
+
+        private Room(String name, String floor, int rows, int columns, int capacity, String asset,
+                     FloorPlanImages.Plan plan, boolean listed) {
+            this.name = name;
+            this.floor = floor;
+            this.rows = rows;
+            this.columns = columns;
+            this.capacity = capacity;
+            this.asset = asset;
+            this.plan = plan;
+            this.listed = listed;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getFloor() {
+            return floor;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public int getColumns() {
+            return columns;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        // The floor-plan file name, shown when the plan is missing.
+        public String getAsset() {
+            return asset;
+        }
+
+        // Null when no image was found for the room.
+        public FloorPlanImages.Plan getPlan() {
+            return plan;
+        }
+
+        // False for rooms not in the registry file.
+        public boolean isListed() {
+            return listed;
+        }
+    }
+}
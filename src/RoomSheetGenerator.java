@@ -0,0 +1,344 @@
+// RoomSheetGenerator.java
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiFunction;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Printable per-room sheets for each exam session: a door sheet (roll ->
+// seat) as HTML and CSV, plus a seat map with roll numbers in the grid.
+// The seat map takes its size and width from the room registry. Rooms are
+// rendered in parallel, one fork-join task per room, and a room whose roster
+// and layout are unchanged since the last run is skipped.
+public class RoomSheetGenerator {
+    private final Path outputDir;
+    // (room, floor) -> layout; see RoomRegistry.lookup.
+    private final BiFunction<String, String, RoomRegistry.Room> roomLayout;
+    // "session/room\u001ffloor" -> fingerprint of the students and layout
+    // last rendered for it
+    private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+    // Same key -> file name stem in the session directory. Kept across runs,
+    // so a room's files stay put when another room appears.
+    private final Map<String, String> stems = new ConcurrentHashMap<>();
+
+    public RoomSheetGenerator(Path outputDir, BiFunction<String, String, RoomRegistry.Room> roomLayout) {
+        this.outputDir = outputDir;
+        this.roomLayout = roomLayout;
+    }
+
+    public Result generate(List<Student> students, String sessionFilter) throws IOException {
+        long start = System.nanoTime();
+        Map<String, List<Student>> byRoom = new TreeMap<>();
+        Map<String, String> sessionLabels = new HashMap<>();
+        for (Student student : students) {
+            String session = sessionKey(student);
+            if (sessionFilter != null && !sessionFilter.isEmpty() && !sessionFilter.equals(session)) {
+                continue;
+            }
+            sessionLabels.putIfAbsent(session, sessionLabel(student));
+            // Rooms are per floor, as in the registry.
+            String key = session + "/" + (student.getRoom() == null ? "" : student.getRoom().trim())
+                    + '\u001f' + (student.getFloor() == null ? "" : student.getFloor().trim());
+            byRoom.computeIfAbsent(key, k -> new ArrayList<>()).add(student);
+        }
+        assignStems(byRoom.keySet());
+
+        List<RoomTask> tasks = new ArrayList<>();
+        for (Map.Entry<String, List<Student>> entry : byRoom.entrySet()) {
+            String session = sessionOf(entry.getKey());
+            tasks.add(new RoomTask(entry.getKey(), sessionLabels.get(session), entry.getValue()));
+        }
+        List<RoomSheet> sheets = new ArrayList<>();
+        for (RoomTask task : RecursiveTask.invokeAll(tasks)) {
+            RoomSheet sheet = task.join();
+            if (sheet.error != null) {
+                throw sheet.error;
+            }
+            sheets.add(sheet);
+        }
+        removeStaleRooms(byRoom.keySet(), sessionFilter);
+        return new Result(sheets, (System.nanoTime() - start) / 1_000_000L);
+    }
+
+    public void writeZip(Result result, OutputStream out) throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (RoomSheet sheet : result.getSheets()) {
+                for (Path file : sheet.getFiles()) {
+                    zip.putNextEntry(new ZipEntry(outputDir.relativize(file).toString().replace('\\', '/')));
+                    Files.copy(file, zip);
+                    zip.closeEntry();
+                }
+            }
+        }
+    }
+
+    public static String sessionKey(Student student) {
+        return slug(student.getExamDate()) + "_" + slug(student.getExamTime()) + "_" + slug(student.getExamName());
+    }
+
+    // Rooms whose names slug alike ("Room 101", "Room-101", or one name on
+    // two floors) get "-2", "-3"...
+    // A stem still held by a room about to be removed is not reused, so the
+    // removal cannot delete the new room's files.
+    private void assignStems(Set<String> keys) {
+        Map<String, Set<String>> taken = new HashMap<>();
+        for (Map.Entry<String, String> entry : stems.entrySet()) {
+            taken.computeIfAbsent(sessionOf(entry.getKey()), k -> new HashSet<>()).add(entry.getValue());
+        }
+        for (String key : keys) {
+            if (stems.containsKey(key)) {
+                continue;
+            }
+            Set<String> used = taken.computeIfAbsent(sessionOf(key), k -> new HashSet<>());
+            String base = slug(key.substring(key.indexOf('/') + 1, key.lastIndexOf('\u001f')));
+            String stem = base;
+            for (int n = 2; !used.add(stem); n++) {
+                stem = base + "-" + n;
+            }
+            stems.put(key, stem);
+        }
+    }
+
+    private void removeStaleRooms(Set<String> current, String sessionFilter) throws IOException {
+        Set<String> stale = new HashSet<>(stems.keySet());
+        stale.removeAll(current);
+        for (String key : stale) {
+            if (sessionFilter != null && !sessionFilter.isEmpty() && !sessionFilter.equals(sessionOf(key))) {
+                continue;
+            }
+            fingerprints.remove(key);
+            for (Path file : filesFor(key)) {
+                Files.deleteIfExists(file);
+            }
+            stems.remove(key);
+        }
+    }
+
+    private List<Path> filesFor(String key) {
+        Path dir = outputDir.resolve(sessionOf(key));
+        String stem = stems.get(key);
+        List<Path> files = new ArrayList<>();
+        files.add(dir.resolve(stem + "-door.html"));
+        files.add(dir.resolve(stem + "-door.csv"));
+        files.add(dir.resolve(stem + "-seats.html"));
+        return files;
+    }
+
+    // The session slug contains no '/', so the first one ends it.
+    private static String sessionOf(String key) {
+        return key.substring(0, key.indexOf('/'));
+    }
+
+    // Never serialized; fork-join tasks only implement Serializable by descent.
+    @SuppressWarnings("serial")
+    private final class RoomTask extends RecursiveTask<RoomSheet> {
+        private final String key;
+        private final String sessionLabel;
+        private final List<Student> students;
+
+        private RoomTask(String key, String sessionLabel, List<Student> students) {
+            this.key = key;
+            this.sessionLabel = sessionLabel;
+            this.students = students;
+        }
+
+        @Override
+        protected RoomSheet compute() {
+            List<Path> files = filesFor(key);
+            students.sort(Comparator.comparing(Student::getRollNumber, String.CASE_INSENSITIVE_ORDER));
+            String room = students.get(0).getRoom();
+            RoomRegistry.Room layout = roomLayout.apply(room, students.get(0).getFloor());
+            // An edit to rooms.txt changes the seat map as much as a roster edit.
+            String fingerprint = fingerprint(students) + "/" + layout.getCapacity() + "x" + layout.getColumns();
+            boolean unchanged = fingerprint.equals(fingerprints.get(key));
+            for (Path file : files) {
+                unchanged &= Files.exists(file);
+            }
+            if (unchanged) {
+                return new RoomSheet(sessionLabel, room, students.size(), false, files, null);
+            }
+            try {
+                Files.createDirectories(files.get(0).getParent());
+                Files.writeString(files.get(0), doorSheetHtml(room, students), StandardCharsets.UTF_8);
+                Files.writeString(files.get(1), doorSheetCsv(students), StandardCharsets.UTF_8);
+                Files.writeString(files.get(2), seatMapHtml(room, layout, students), StandardCharsets.UTF_8);
+                fingerprints.put(key, fingerprint);
+                return new RoomSheet(sessionLabel, room, students.size(), true, files, null);
+            } catch (IOException e) {
+                return new RoomSheet(sessionLabel, room, students.size(), true, files, e);
+            }
+        }
+
+        private String doorSheetHtml(String room, List<Student> roster) {
+            StringBuilder sb = new StringBuilder();
+            appendHeader(sb, room, "Door sheet", 0);
+            sb.append("<table><thead><tr><th>Roll</th><th>Seat</th></tr></thead><tbody>");
+            for (Student student : roster) {
+                sb.append("<tr><td>").append(escape(student.getRollNumber())).append("</td><td>")
+                  .append(escape(student.getSeatNumber())).append("</td></tr>");
+            }
+            sb.append("</tbody></table></body></html>");
+            return sb.toString();
+        }
+
+        private String doorSheetCsv(List<Student> roster) {
+            StringBuilder sb = new StringBuilder("roll,room,floor,seat,examName,examDate,examTime\n");
+            for (Student student : roster) {
+                // Quoted like seatingData.txt, so commas in names survive.
+                sb.append(SeatingDatabase.toCsvRow(student)).append('\n');
+            }
+            return sb.toString();
+        }
+
+        private String seatMapHtml(String room, RoomRegistry.Room layout, List<Student> roster) {
+            Map<Integer, String> rollBySeat = new HashMap<>();
+            int totalSeats = layout.getCapacity();
+            for (Student student : roster) {
+                int index = student.getSeatIndex();
+                if (index > 0) {
+                    rollBySeat.put(index, student.getRollNumber());
+                    totalSeats = Math.max(totalSeats, index);
+                }
+            }
+            StringBuilder sb = new StringBuilder();
+            appendHeader(sb, room, "Seat map", layout.getColumns());
+            sb.append("<div class='grid'>");
+            for (int i = 1; i <= totalSeats; i++) {
+                String roll = rollBySeat.get(i);
+                sb.append("<div class='seat").append(roll != null ? " taken" : "").append("'><b>S")
+                  .append(i).append("</b>").append(roll != null ? escape(roll) : "&nbsp;").append("</div>");
+            }
+            sb.append("</div></body></html>");
+            return sb.toString();
+        }
+
+        // columns sets the seat grid's width; 0 when the page has no grid.
+        private void appendHeader(StringBuilder sb, String room, String title, int columns) {
+            sb.append("<!DOCTYPE html><html><head><meta charset='UTF-8'><title>")
+              .append(escape(room)).append(" - ").append(title).append("</title><style>")
+              .append("body{font-family:sans-serif;margin:24px}h1{margin:0 0 4px}")
+              .append("table{border-collapse:collapse;width:100%}td,th{border:1px solid #999;padding:6px 10px;text-align:left}")
+              .append(".grid{display:grid;grid-template-columns:repeat(").append(Math.max(1, columns)).append(",1fr);gap:8px}")
+              .append(".seat{border:1px solid #999;border-radius:6px;padding:8px;text-align:center;font-size:.9rem}")
+              .append(".seat b{display:block}.seat.taken{background:#eef1ff}")
+              .append("@media print{body{margin:0}}</style></head><body>")
+              .append("<h1>").append(escape(room)).append(" - ").append(title).append("</h1>")
+              .append("<p>").append(escape(students.get(0).getFloor())).append(" &middot; ")
+              .append(escape(sessionLabel)).append(" &middot; ").append(students.size()).append(" student(s)</p>");
+        }
+    }
+
+    private static String fingerprint(List<Student> students) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Student student : students) {
+                digest.update(student.getDetails().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String sessionLabel(Student student) {
+        return student.getExamName() + " (" + student.getExamDate() + ", " + student.getExamTime() + ")";
+    }
+
+    private static String slug(String value) {
+        if (value == null || value.isBlank()) {
+            return "na";
+        }
+        String slug = value.toLowerCase().replaceAll("[^a-z0-9]+", "-").replaceAll("^-|-$", "");
+        return slug.isEmpty() ? "na" : slug;
+    }
+
+    private static String escape(String s) {
+        if (s == null) return "";
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;")
+                .replace("\"", "&quot;").replace("'", "&#39;");
+    }
+
+    public static class Result {
+        private final List<RoomSheet> sheets;
+        private final long elapsedMillis;
+
+        private Result(List<RoomSheet> sheets, long elapsedMillis) {
+            this.sheets = sheets;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public List<RoomSheet> getSheets() {
+            return sheets;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public int getRegeneratedCount() {
+            int count = 0;
+            for (RoomSheet sheet : sheets) {
+                if (sheet.isRegenerated()) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    public static class RoomSheet {
+        private final String session;
+        private final String room;
+        private final int studentCount;
+        private final boolean regenerated;
+        private final List<Path> files;
+        private final IOException error;
+
+        private RoomSheet(String session, String room, int studentCount, boolean regenerated,
+                          List<Path> files, IOException error) {
+            this.session = session;
+            this.room = room;
+            this.studentCount = studentCount;
+            this.regenerated = regenerated;
+            this.files = files;
+            this.error = error;
+        }
+
+        public String getSession() {
+            return session;
+        }
+
+        public String getRoom() {
+            return room;
+        }
+
+        public int getStudentCount() {
+            return studentCount;
+        }
+
+        public boolean isRegenerated() {
+            return regenerated;
+        }
+
+        public List<Path> getFiles() {
+            return files;
+        }
+    }
+}
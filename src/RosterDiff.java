@@ -0,0 +1,53 @@
+// RosterDiff.java
+import java.util.ArrayList;
+import java.util.List;
+
+// Result of comparing an uploaded roster with the stored one by per-row
+// content hash, one row per sitting. Only inserts, updates and (optionally)
+// deletes are applied.
+public class RosterDiff {
+    private final List<Student> inserts = new ArrayList<>();
+    private final List<Student> updates = new ArrayList<>();
+    private final List<Student> deletes = new ArrayList<>();
+    private int unchanged;
+
+    void addInsert(Student student) {
+        inserts.add(student);
+    }
+
+    void addUpdate(Student student) {
+        updates.add(student);
+    }
+
+    void addDelete(Student student) {
+        deletes.add(student);
+    }
+
+    void addUnchanged() {
+        unchanged++;
+    }
+
+    public List<Student> getInserts() {
+        return inserts;
+    }
+
+    public List<Student> getUpdates() {
+        return updates;
+    }
+
+    public List<Student> getDeletes() {
+        return deletes;
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    public int getChangeCount() {
+        return inserts.size() + updates.size() + deletes.size();
+    }
+
+    public boolean isEmpty() {
+        return getChangeCount() == 0;
+    }
+}
@@ -0,0 +1,197 @@
+// RosterSnapshots.java
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+
+// Immutable, versioned roster snapshots in a shared directory. The primary
+// writes roster-vNNNNNNNN.csv plus a .sha256 file, then flips the LATEST
+// pointer; replicas read LATEST, verify the checksum and load that version.
+// Published versions are never rewritten. Only the newest `keep` versions
+// are kept; see prune().
+public class RosterSnapshots {
+    private static final String LATEST_FILE = "LATEST";
+
+    private final Path directory;
+    private final int keep;
+
+    public RosterSnapshots(Path directory, int keep) {
+        this.directory = directory;
+        this.keep = Math.max(2, keep);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public synchronized long publish(List<Student> students) throws IOException {
+        Files.createDirectories(directory);
+        StringBuilder sb = new StringBuilder();
+        for (Student student : students) {
+            sb.append(SeatingDatabase.toCsvRow(student)).append('\n');
+        }
+        byte[] content = sb.toString().getBytes(StandardCharsets.UTF_8);
+        String checksum = sha256(content);
+
+        List<Long> published = publishedVersions();
+        long highest = published.isEmpty() ? 0 : published.get(published.size() - 1);
+        long previous = readLatestVersion();
+        long version = Math.max(previous, highest) + 1;
+        // CREATE_NEW fails if the version exists, so a published file is
+        // never overwritten. Writing in place is safe: nobody reads this
+        // version until LATEST points at it, and a file left half-written by
+        // a crash only burns its version number.
+        Files.write(dataFile(version), content, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        writeAtomically(checksumFile(version), checksum + "\n");
+        writeAtomically(directory.resolve(LATEST_FILE), version + " " + checksum + "\n");
+        published.add(version);
+        prune(published, version, previous);
+        return version;
+    }
+
+    // Deletes all but the newest `keep` versions. The version LATEST names
+    // and the one it named before always stay, so a replica that read the
+    // pointer just before the flip can still open its file.
+    private void prune(List<Long> published, long latest, long previous) {
+        for (int i = 0; i < published.size() - keep; i++) {
+            long version = published.get(i);
+            if (version == latest || version == previous) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(dataFile(version));
+                Files.deleteIfExists(checksumFile(version));
+            } catch (IOException e) {
+                EventLog.error("snapshots", "Cannot delete roster snapshot v" + version + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Cheap poll: reads only the LATEST pointer. Returns 0 when nothing is published.
+    public long readLatestVersion() {
+        String[] pointer = readPointer();
+        if (pointer == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(pointer[0]);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public Snapshot readLatest() throws IOException {
+        String[] pointer = readPointer();
+        if (pointer == null || pointer.length < 2) {
+            return null;
+        }
+        long version;
+        try {
+            version = Long.parseLong(pointer[0]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed LATEST pointer in " + directory);
+        }
+        byte[] content = Files.readAllBytes(dataFile(version));
+        String checksum = sha256(content);
+        if (!checksum.equals(pointer[1])) {
+            throw new IOException("Checksum mismatch for roster version " + version);
+        }
+        List<Student> students = new ArrayList<>();
+        for (String line : new String(content, StandardCharsets.UTF_8).split("\n")) {
+            String[] parts = SeatingDatabase.parseCsvRow(line);
+            if (parts.length >= 7) {
+                students.add(new Student(parts[0], parts[1], parts[2], parts[3], parts[4], parts[5], parts[6]));
+            }
+        }
+        return new Snapshot(version, checksum, students);
+    }
+
+    private String[] readPointer() {
+        Path latest = directory.resolve(LATEST_FILE);
+        if (!Files.exists(latest)) {
+            return null;
+        }
+        try {
+            String text = Files.readString(latest, StandardCharsets.UTF_8).trim();
+            return text.isEmpty() ? null : text.split("\\s+");
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Versions with a data file, oldest first.
+    private List<Long> publishedVersions() throws IOException {
+        List<Long> versions = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return versions;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "roster-v*.csv")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    versions.add(Long.parseLong(name.substring(8, name.length() - 4)));
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        Collections.sort(versions);
+        return versions;
+    }
+
+    private void writeAtomically(Path target, String text) throws IOException {
+        Path temp = Files.createTempFile(directory, ".pointer-", ".tmp");
+        Files.writeString(temp, text, StandardCharsets.UTF_8);
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path dataFile(long version) {
+        return directory.resolve(String.format("roster-v%08d.csv", version));
+    }
+
+    private Path checksumFile(long version) {
+        return directory.resolve(String.format("roster-v%08d.sha256", version));
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static class Snapshot {
+        private final long version;
+        private final String checksum;
+        private final List<Student> students;
+
+        private Snapshot(long version, String checksum, List<Student> students) {
+            this.version = version;
+            this.checksum = checksum;
+            this.students = students;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public String getChecksum() {
+            return checksum;
+        }
+
+        public List<Student> getStudents() {
+            return students;
+        }
+    }
+}
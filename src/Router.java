@@ -0,0 +1,318 @@
+// Router.java
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+// The server's single HttpHandler. Routes are registered as exact paths
+// ("/admin/add") or patterns with {name} segments ("/floorplans/{plan}/{width}").
+// Exact paths resolve with one hash lookup; patterns are bucketed by first
+// segment and segment count at registration, so a request only tries the
+// few patterns in its bucket. Paths are matched whole: "/admin/anything" is
+// a 404, not the admin page. Each route's handler is wrapped once, at
+// registration, in the global middleware (use()) and then its own, outermost
+// first.
+public final class Router implements HttpHandler {
+    public interface Handler {
+        void handle(Request request) throws IOException;
+    }
+
+    public interface Middleware {
+        void handle(Request request, Handler next) throws IOException;
+    }
+
+    private final List<Middleware> global = new ArrayList<>();
+    private final Map<String, Route> exact = new HashMap<>();
+    // "<first segment>/<segment count>" -> patterns in registration order
+    private final Map<String, List<Route>> patterns = new HashMap<>();
+    private final Route notFound = new Route("", List.of(),
+            request -> request.send(404, "text/plain; charset=UTF-8", "Not found".getBytes(StandardCharsets.UTF_8)));
+    private boolean routesAdded;
+
+    public Router() {
+        notFound.chain = notFound.handler;
+    }
+
+    // Global middleware must be added before the first route.
+    public Router use(Middleware middleware) {
+        if (routesAdded) {
+            throw new IllegalStateException("use() after route()");
+        }
+        global.add(middleware);
+        notFound.chain = wrap(notFound.handler, List.of());
+        return this;
+    }
+
+    public Router route(String pattern, Handler handler, Middleware... middleware) {
+        routesAdded = true;
+        String path = normalize(pattern);
+        List<String> segments = segments(path);
+        Route route = new Route(path, segments, handler);
+        route.chain = wrap(handler, List.of(middleware));
+        if (!path.contains("{")) {
+            if (exact.putIfAbsent(path, route) != null) {
+                throw new IllegalArgumentException("duplicate route " + pattern);
+            }
+        } else {
+            patterns.computeIfAbsent(bucket(segments), k -> new ArrayList<>()).add(route);
+        }
+        return this;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        Request request = new Request(exchange);
+        String path = normalize(exchange.getRequestURI().getPath());
+        Route route = exact.get(path);
+        if (route == null) {
+            List<String> segments = segments(path);
+            List<Route> candidates = patterns.get(bucket(segments));
+            if (candidates != null) {
+                for (Route candidate : candidates) {
+                    Map<String, String> params = candidate.match(segments);
+                    if (params != null) {
+                        route = candidate;
+                        request.pathParams = params;
+                        break;
+                    }
+                }
+            }
+        }
+        if (route == null) {
+            route = notFound;
+        }
+        request.route = route.pattern;
+        route.chain.handle(request);
+    }
+
+    private Handler wrap(Handler handler, List<Middleware> own) {
+        List<Middleware> all = new ArrayList<>(global);
+        all.addAll(own);
+        Handler chain = handler;
+        for (int i = all.size() - 1; i >= 0; i--) {
+            Middleware middleware = all.get(i);
+            Handler next = chain;
+            chain = request -> middleware.handle(request, next);
+        }
+        return chain;
+    }
+
+    // Compresses text responses of at least minBytes sent through
+    // Request.send when the client accepts gzip.
+    public static Middleware compression(int minBytes) {
+        return (request, next) -> {
+            request.compressMinBytes = minBytes;
+            next.handle(request);
+        };
+    }
+
+    private static String normalize(String path) {
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        return path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+
+    private static List<String> segments(String path) {
+        List<String> segments = new ArrayList<>();
+        int start = 1;
+        while (start <= path.length()) {
+            int slash = path.indexOf('/', start);
+            int end = slash < 0 ? path.length() : slash;
+            if (end > start) {
+                segments.add(path.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return segments;
+    }
+
+    private static String bucket(List<String> segments) {
+        return (segments.isEmpty() ? "" : segments.get(0)) + "/" + segments.size();
+    }
+
+    private static final class Route {
+        private final String pattern;
+        private final List<String> segments;
+        private final Handler handler;
+        private Handler chain;
+
+        private Route(String pattern, List<String> segments, Handler handler) {
+            this.pattern = pattern;
+            this.segments = segments;
+            this.handler = handler;
+        }
+
+        // Path parameters, or null when the segments do not fit.
+        private Map<String, String> match(List<String> path) {
+            Map<String, String> params = new HashMap<>(4);
+            for (int i = 0; i < segments.size(); i++) {
+                String segment = segments.get(i);
+                if (segment.startsWith("{") && segment.endsWith("}")) {
+                    params.put(segment.substring(1, segment.length() - 1), path.get(i));
+                } else if (!segment.equals(path.get(i))) {
+                    return null;
+                }
+            }
+            return params;
+        }
+    }
+
+    // One exchange. Query string, form body and cookies are each parsed on
+    // first use and kept, so middleware and handler share one parse.
+    public static final class Request {
+        private final HttpExchange exchange;
+        private String route = "";
+        private Map<String, String> pathParams = Collections.emptyMap();
+        private Map<String, String> query;
+        private Map<String, String> form;
+        private Map<String, String> cookies;
+        private byte[] body;
+        private int compressMinBytes = -1;
+
+        private Request(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        public HttpExchange getExchange() {
+            return exchange;
+        }
+
+        // The matched route pattern, "" when nothing matched.
+        public String getRoute() {
+            return route;
+        }
+
+        public boolean isMethod(String method) {
+            return method.equalsIgnoreCase(exchange.getRequestMethod());
+        }
+
+        public String pathParam(String name) {
+            return pathParams.getOrDefault(name, "");
+        }
+
+        // Decoded query parameter; "" when absent. The first occurrence wins.
+        public String query(String name) {
+            if (query == null) {
+                query = parsePairs(exchange.getRequestURI().getRawQuery(), '&');
+            }
+            return query.getOrDefault(name, "");
+        }
+
+        // Raw request body, read once.
+        public byte[] body() throws IOException {
+            if (body == null) {
+                body = exchange.getRequestBody().readAllBytes();
+            }
+            return body;
+        }
+
+        // Field of an application/x-www-form-urlencoded body; "" when absent.
+        public String form(String name) throws IOException {
+            return form().getOrDefault(name, "");
+        }
+
+        public boolean hasForm(String name) throws IOException {
+            return form().containsKey(name);
+        }
+
+        private Map<String, String> form() throws IOException {
+            if (form == null) {
+                form = parsePairs(new String(body(), StandardCharsets.UTF_8), '&');
+            }
+            return form;
+        }
+
+        public String cookie(String name) {
+            if (cookies == null) {
+                cookies = new HashMap<>();
+                List<String> headers = exchange.getRequestHeaders().get("Cookie");
+                if (headers != null) {
+                    for (String header : headers) {
+                        for (String cookie : header.split(";")) {
+                            int eq = cookie.indexOf('=');
+                            if (eq > 0) {
+                                cookies.putIfAbsent(cookie.substring(0, eq).trim(), cookie.substring(eq + 1).trim());
+                            }
+                        }
+                    }
+                }
+            }
+            return cookies.get(name);
+        }
+
+        public void redirect(String location) throws IOException {
+            exchange.getResponseHeaders().set("Location", location);
+            exchange.sendResponseHeaders(302, -1);
+        }
+
+        // Sends a complete response, gzipped when compression() is on this
+        // route, the type is text or JSON and the client accepts it.
+        public void send(int status, String contentType, byte[] bytes) throws IOException {
+            if (contentType != null) {
+                exchange.getResponseHeaders().set("Content-Type", contentType);
+            }
+            if (compressMinBytes >= 0 && bytes.length >= compressMinBytes && compressible(contentType)) {
+                exchange.getResponseHeaders().add("Vary", "Accept-Encoding");
+                String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                if (accept != null && accept.toLowerCase(Locale.ROOT).contains("gzip")) {
+                    ByteArrayOutputStream buffer = new ByteArrayOutputStream(bytes.length / 4 + 64);
+                    try (GZIPOutputStream gzip = new GZIPOutputStream(buffer)) {
+                        gzip.write(bytes);
+                    }
+                    bytes = buffer.toByteArray();
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                }
+            }
+            exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+
+        private static boolean compressible(String contentType) {
+            if (contentType == null) {
+                return false;
+            }
+            String type = contentType.toLowerCase(Locale.ROOT);
+            return type.startsWith("text/") || type.contains("json") || type.contains("xml")
+                    || type.contains("javascript");
+        }
+
+        private static Map<String, String> parsePairs(String raw, char separator) {
+            Map<String, String> pairs = new HashMap<>();
+            if (raw == null || raw.isEmpty()) {
+                return pairs;
+            }
+            int start = 0;
+            while (start <= raw.length()) {
+                int end = raw.indexOf(separator, start);
+                if (end < 0) {
+                    end = raw.length();
+                }
+                int eq = raw.indexOf('=', start);
+                if (eq > start && eq < end) {
+                    try {
+                        pairs.putIfAbsent(URLDecoder.decode(raw.substring(start, eq), StandardCharsets.UTF_8),
+                                URLDecoder.decode(raw.substring(eq + 1, end), StandardCharsets.UTF_8));
+                    } catch (IllegalArgumentException e) {
+                        // A malformed escape ("%zz", a trailing "%") drops
+                        // that pair only, as if it had not been sent.
+                    }
+                }
+                start = end + 1;
+            }
+            return pairs;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+// SeatEventHub.java
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Server-Sent Events for kiosk displays. Seat changes are gathered for
+// flushMillis and then published as one "seats" event per room and exam
+// session, so an upload of thousands of rows sends each room a single event.
+// An event is serialized once and the same bytes go to every subscriber.
+// Each subscriber has a small bounded queue drained by its own writer
+// thread; a subscriber whose queue fills up is too slow and is disconnected
+// (it reconnects and catches up via Last-Event-ID). A comment line every
+// heartbeatMillis keeps proxies from closing idle streams and finds dead
+// connections.
+public class SeatEventHub implements SeatingDatabase.ChangeListener {
+    private static final int ROLLS_PER_EVENT = 50;
+    private static final int REPLAY_EVENTS = 256;
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final int maxSubscribers;
+    private final int queueSize;
+    private final long flushMillis;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "seat-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // room|date|time -> changes waiting for the next flush.
+    private final Map<String, PendingEvent> pending = new LinkedHashMap<>();
+    private boolean flushScheduled;
+    // Recent events for reconnecting subscribers, oldest first.
+    private final ArrayDeque<Event> replay = new ArrayDeque<>();
+    private final AtomicLong eventIds = new AtomicLong();
+    private final AtomicLong subscriberIds = new AtomicLong();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public SeatEventHub(int maxSubscribers, int queueSize, long flushMillis, long heartbeatMillis) {
+        this.maxSubscribers = maxSubscribers;
+        this.queueSize = Math.max(1, queueSize);
+        this.flushMillis = Math.max(0, flushMillis);
+        if (heartbeatMillis > 0) {
+            scheduler.scheduleWithFixedDelay(this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Starts the stream and returns at once; the exchange stays open and is
+    // written by the subscriber's own thread. Null filters match everything.
+    // Returns false, without touching the exchange, when the hub is full.
+    public boolean subscribe(HttpExchange exchange, String room, String date, String time, String lastEventId)
+            throws IOException {
+        if (subscribers.size() >= maxSubscribers) {
+            return false;
+        }
+        Subscriber subscriber = new Subscriber(exchange, normalize(room), normalize(date), normalize(time));
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.getResponseHeaders().set("X-Accel-Buffering", "no");
+        exchange.sendResponseHeaders(200, 0);
+        long after = parseEventId(lastEventId);
+        synchronized (replay) {
+            // Registered under the replay lock, so no event is both replayed
+            // and delivered live, or neither.
+            subscriber.offer(("retry: 5000\n\n").getBytes(StandardCharsets.UTF_8));
+            if (after >= 0) {
+                for (Event event : replay) {
+                    if (event.id > after && subscriber.matches(event) && !subscriber.offer(event.bytes)) {
+                        break;
+                    }
+                }
+            }
+            subscribers.add(subscriber);
+        }
+        subscriber.start();
+        return true;
+    }
+
+    // Runs on the writing thread, so it only records the change;
+    // serialization and fan-out happen on flush.
+    @Override
+    public void sittingsChanged(List<Student> sittings) {
+        synchronized (pending) {
+            for (Student student : sittings) {
+                String room = normalize(student.getRoom());
+                String date = normalize(student.getExamDate());
+                String time = normalize(student.getExamTime());
+                String key = room + "|" + date + "|" + time;
+                PendingEvent event = pending.get(key);
+                if (event == null) {
+                    event = new PendingEvent(student.getRoom(), student.getExamDate(), student.getExamTime());
+                    pending.put(key, event);
+                }
+                event.changes++;
+                if (event.rolls.size() < ROLLS_PER_EVENT) {
+                    event.rolls.add(student.getRollNumber());
+                }
+            }
+            if (!flushScheduled && !pending.isEmpty()) {
+                flushScheduled = true;
+                scheduler.schedule(this::flush, flushMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    // Tells every subscriber to refetch everything, e.g. after a replica
+    // installed a new roster snapshot.
+    public void publishReload() {
+        scheduler.execute(() -> publish(new Event(eventIds.incrementAndGet(), "reload", null, null, null, "{}")));
+    }
+
+    private void flush() {
+        List<PendingEvent> batch;
+        synchronized (pending) {
+            batch = new ArrayList<>(pending.values());
+            pending.clear();
+            flushScheduled = false;
+        }
+        for (PendingEvent change : batch) {
+            StringBuilder json = new StringBuilder("{\"room\":").append(jsonString(change.room))
+                    .append(",\"examDate\":").append(jsonString(change.date))
+                    .append(",\"examTime\":").append(jsonString(change.time))
+                    .append(",\"changes\":").append(change.changes)
+                    .append(",\"rolls\":[");
+            int i = 0;
+            for (String roll : change.rolls) {
+                json.append(i++ > 0 ? "," : "").append(jsonString(roll));
+            }
+            json.append("],\"truncated\":").append(change.changes > change.rolls.size()).append('}');
+            publish(new Event(eventIds.incrementAndGet(), "seats",
+                    normalize(change.room), normalize(change.date), normalize(change.time), json.toString()));
+        }
+    }
+
+    private void publish(Event event) {
+        synchronized (replay) {
+            replay.addLast(event);
+            if (replay.size() > REPLAY_EVENTS) {
+                replay.removeFirst();
+            }
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.matches(event) && !subscriber.offer(event.bytes)) {
+                    evict(subscriber);
+                }
+            }
+        }
+        published.increment();
+    }
+
+    private void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.offer(HEARTBEAT)) {
+                evict(subscriber);
+            }
+        }
+    }
+
+    private void evict(Subscriber subscriber) {
+        if (subscriber.close()) {
+            evictions.increment();
+            EventLog.info("events", "Disconnected slow subscriber " + subscriber.id);
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private static long parseEventId(String value) {
+        if (value == null || value.isBlank()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String normalize(String value) {
+        return value == null || value.isBlank() ? null : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String jsonString(String s) {
+        if (s == null) return "null";
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static class PendingEvent {
+        private final String room;
+        private final String date;
+        private final String time;
+        private final Set<String> rolls = new LinkedHashSet<>();
+        private int changes;
+
+        private PendingEvent(String room, String date, String time) {
+            this.room = room;
+            this.date = date;
+            this.time = time;
+        }
+    }
+
+    private static class Event {
+        private final long id;
+        // Normalized; null on events meant for every subscriber.
+        private final String room;
+        private final String date;
+        private final String time;
+        private final byte[] bytes;
+
+        private Event(long id, String type, String room, String date, String time, String json) {
+            this.id = id;
+            this.room = room;
+            this.date = date;
+            this.time = time;
+            this.bytes = ("id: " + id + "\nevent: " + type + "\ndata: " + json + "\n\n").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private class Subscriber implements Runnable {
+        private final long id = subscriberIds.incrementAndGet();
+        private final HttpExchange exchange;
+        private final String room;
+        private final String date;
+        private final String time;
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(queueSize);
+        // Platform threads with a small stack: one per display is a few
+        // hundred threads at most, each parked on its queue.
+        private final Thread writer;
+        private volatile boolean closed;
+
+        private Subscriber(HttpExchange exchange, String room, String date, String time) {
+            this.exchange = exchange;
+            this.room = room;
+            this.date = date;
+            this.time = time;
+            this.writer = new Thread(null, this, "sse-" + id, 128 * 1024);
+            this.writer.setDaemon(true);
+        }
+
+        private void start() {
+            writer.start();
+        }
+
+        private boolean matches(Event event) {
+            return (room == null || event.room == null || room.equals(event.room))
+                    && (date == null || event.date == null || date.equals(event.date))
+                    && (time == null || event.time == null || time.equals(event.time));
+        }
+
+        private boolean offer(byte[] bytes) {
+            return !closed && queue.offer(bytes);
+        }
+
+        @Override
+        public void run() {
+            OutputStream out = exchange.getResponseBody();
+            try {
+                while (!closed) {
+                    byte[] next = queue.take();
+                    out.write(next);
+                    // Send whatever else is already queued in the same flush.
+                    List<byte[]> more = new ArrayList<>();
+                    queue.drainTo(more);
+                    for (byte[] bytes : more) {
+                        out.write(bytes);
+                    }
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // the display went away
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+                exchange.close();
+            }
+        }
+
+        // Returns true for the call that actually closed it. The exchange is
+        // closed by the writer thread: the interrupt also aborts a write
+        // stuck on a full socket, so this never blocks the publisher.
+        private synchronized boolean close() {
+            if (closed) {
+                return false;
+            }
+            closed = true;
+            subscribers.remove(this);
+            writer.interrupt();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+// SeatOverlayCache.java
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.imageio.ImageIO;
+
+// Floor plan variants with one seat marked, rendered on first use and kept
+// in an LRU cache bounded by total bytes. Keys include the plan version, so
+// a replaced image or seat map never serves a stale overlay; old entries
+// simply age out.
+public class SeatOverlayCache {
+    private static final Color MARKER = new Color(0x6c, 0x63, 0xff);
+    private static final Color HALO = new Color(0x6c, 0x63, 0xff, 0x40);
+
+    private final long maxBytes;
+    private final float jpegQuality;
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public SeatOverlayCache(long maxBytes, float jpegQuality) {
+        this.maxBytes = Math.max(0, maxBytes);
+        this.jpegQuality = jpegQuality;
+    }
+
+    // The variant with the seat marked, or null when the plan has no position
+    // for that seat.
+    public byte[] get(FloorPlanImages.Plan plan, FloorPlanImages.Variant variant, String seat) throws IOException {
+        int[] position = plan.seatPosition(seat);
+        if (position == null) {
+            return null;
+        }
+        String key = key(plan, variant, seat);
+        synchronized (this) {
+            byte[] cached = entries.get(key);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+        misses.increment();
+        byte[] rendered = render(plan, variant, position);
+        put(key, rendered);
+        return rendered;
+    }
+
+    // Renders into the cache unless already present; returns true if rendered.
+    public boolean prerender(FloorPlanImages.Plan plan, FloorPlanImages.Variant variant, String seat) throws IOException {
+        int[] position = plan.seatPosition(seat);
+        if (position == null) {
+            return false;
+        }
+        String key = key(plan, variant, seat);
+        synchronized (this) {
+            if (entries.containsKey(key)) {
+                return false;
+            }
+        }
+        put(key, render(plan, variant, position));
+        return true;
+    }
+
+    // Renders without going through the cache, for bulk exports that would
+    // otherwise evict the overlays live searches need; null as in get().
+    public byte[] renderUncached(FloorPlanImages.Plan plan, FloorPlanImages.Variant variant, String seat) throws IOException {
+        int[] position = plan.seatPosition(seat);
+        return position == null ? null : render(plan, variant, position);
+    }
+
+    private static String key(FloorPlanImages.Plan plan, FloorPlanImages.Variant variant, String seat) {
+        return plan.getKey() + "|" + plan.getVersion() + "|" + variant.getWidth() + "|" + seat.trim().toUpperCase(Locale.ROOT);
+    }
+
+    private synchronized void put(String key, byte[] value) {
+        if (value.length > maxBytes) {
+            return;
+        }
+        byte[] previous = entries.put(key, value);
+        bytes += value.length - (previous != null ? previous.length : 0);
+        Iterator<Map.Entry<String, byte[]>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, byte[]> eldest = it.next();
+            bytes -= eldest.getValue().length;
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    private byte[] render(FloorPlanImages.Plan plan, FloorPlanImages.Variant variant, int[] position) throws IOException {
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(variant.getBytes()));
+        if (decoded == null) {
+            throw new IOException("cannot decode floor plan " + plan.getKey());
+        }
+        BufferedImage image = new BufferedImage(decoded.getWidth(), decoded.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+            g.drawImage(decoded, 0, 0, null);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            double scale = (double) variant.getWidth() / plan.getSourceWidth();
+            int x = (int) Math.round(position[0] * scale);
+            int y = (int) Math.round(position[1] * scale);
+            // Sized to the image so the marker reads the same at every width.
+            int r = Math.max(5, variant.getWidth() / 80);
+            g.setColor(HALO);
+            g.fillOval(x - 3 * r, y - 3 * r, 6 * r, 6 * r);
+            g.setColor(MARKER);
+            g.fillOval(x - r, y - r, 2 * r, 2 * r);
+            g.setColor(Color.WHITE);
+            g.setStroke(new BasicStroke(Math.max(1.5f, r / 3f)));
+            g.drawOval(x - r, y - r, 2 * r, 2 * r);
+        } finally {
+            g.dispose();
+        }
+        return FloorPlanImages.encodeJpeg(image, jpegQuality);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+}
@@ -0,0 +1,146 @@
+// SeatSlipCache.java
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// QR codes for seat slips, one per roll and sitting. pregenerate() encodes
+// the whole roster in parallel slices after an upload and stamps the result
+// with the data version it was built from; a sitting whose payload has not
+// changed keeps its code, and sittings no longer in the roster drop out.
+// Only the module matrix is kept (a few hundred bytes per code); SVG is
+// drawn from it per request.
+public class SeatSlipCache {
+    private static final int SLICE_SITTINGS = 1000;
+
+    private final Function<Student, String> payloads;
+    private final ExecutorService workers;
+    private final Map<String, Slip> slips = new ConcurrentHashMap<>();
+    private volatile long dataVersion = -1;
+    private volatile long lastPregenerateMillis;
+    private final LongAdder encoded = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public SeatSlipCache(Function<Student, String> payloads, int parallelism) {
+        this.payloads = payloads;
+        AtomicInteger threads = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+            Thread thread = new Thread(runnable, "seat-slips-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Brings the cache in line with the roster; returns the number of codes
+    // encoded (the rest were reused).
+    public synchronized int pregenerate(List<Student> students, long version) throws InterruptedException {
+        long start = System.nanoTime();
+        Map<String, Student> current = new HashMap<>();
+        for (Student student : students) {
+            if (student.getRollNumber() != null && !student.getRollNumber().isBlank()) {
+                current.put(key(student), student);
+            }
+        }
+        List<Map.Entry<String, Student>> entries = new ArrayList<>(current.entrySet());
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int from = 0; from < entries.size(); from += SLICE_SITTINGS) {
+            List<Map.Entry<String, Student>> slice = entries.subList(from, Math.min(entries.size(), from + SLICE_SITTINGS));
+            tasks.add(() -> encodeSlice(slice));
+        }
+        int count = 0;
+        for (Future<Integer> future : workers.invokeAll(tasks)) {
+            try {
+                count += future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("seat slip encoding failed: " + e.getCause(), e.getCause());
+            }
+        }
+        slips.keySet().retainAll(current.keySet());
+        dataVersion = version;
+        lastPregenerateMillis = (System.nanoTime() - start) / 1_000_000L;
+        return count;
+    }
+
+    private int encodeSlice(List<Map.Entry<String, Student>> slice) {
+        int count = 0;
+        for (Map.Entry<String, Student> entry : slice) {
+            String payload = payloads.apply(entry.getValue());
+            Slip cached = slips.get(entry.getKey());
+            if (cached == null || !cached.payload.equals(payload)) {
+                slips.put(entry.getKey(), new Slip(payload, QrCode.encode(payload)));
+                encoded.increment();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // The slip for a sitting as it is now. A sitting edited since the last
+    // pregenerate() is encoded here and cached, and counted as a miss.
+    public Slip get(Student sitting) {
+        String payload = payloads.apply(sitting);
+        String key = key(sitting);
+        Slip cached = slips.get(key);
+        if (cached != null && cached.payload.equals(payload)) {
+            return cached;
+        }
+        misses.increment();
+        encoded.increment();
+        Slip slip = new Slip(payload, QrCode.encode(payload));
+        slips.put(key, slip);
+        return slip;
+    }
+
+    private static String key(Student sitting) {
+        return sitting.getRollNumber().trim() + "|" + SeatingDatabase.sittingKey(sitting);
+    }
+
+    public int size() {
+        return slips.size();
+    }
+
+    // Data version of the last pregenerate(), -1 before the first.
+    public long getDataVersion() {
+        return dataVersion;
+    }
+
+    public long getLastPregenerateMillis() {
+        return lastPregenerateMillis;
+    }
+
+    public long getEncodedCount() {
+        return encoded.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public static final class Slip {
+        private final String payload;
+        private final QrCode code;
+
+        private Slip(String payload, QrCode code) {
+            this.payload = payload;
+            this.code = code;
+        }
+
+        public QrCode getCode() {
+            return code;
+        }
+
+        // Changes whenever the encoded text does.
+        public String getEtag() {
+            return "\"" + Integer.toHexString(payload.hashCode()) + "-" + code.getVersion() + "\"";
+        }
+    }
+}
@@ -0,0 +1,289 @@
+// SeatStats.java
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Live rollups for the admin stats page, one bucket per (session, room):
+// seats taken and searches, the latter also per minute over the last hour.
+// Counters are LongAdders and CAS-updated arrays, bumped on every search and
+// every committed write, so the page renders from these alone and never
+// scans the roster. Occupancy is kept exact by remembering which bucket
+// each stored row counts in; rebuild() recounts from a full roster and is
+// only needed at startup and when a replica installs a snapshot.
+public class SeatStats {
+    static final int MINUTES = 60;
+    private static final int MAX_MISSED_ROLLS = 1_000;
+    // Longer input is not a roll number anyone mistyped.
+    private static final int MAX_ROLL_LENGTH = 32;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    // row key -> key of the bucket the row is counted in
+    private final Map<String, String> placements = new ConcurrentHashMap<>();
+    private final MissedRolls missedRolls = new MissedRolls(MAX_MISSED_ROLLS);
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final MinuteSeries searchSeries = new MinuteSeries();
+
+    // The roster is read inside the same monitor as rowsWritten, so a write
+    // committed meanwhile is either in what roster returns or reported once
+    // the recount is done; place() counts a row once however often it comes.
+    public synchronized void rebuild(Supplier<? extends Collection<Student>> roster) {
+        placements.clear();
+        for (Bucket bucket : buckets.values()) {
+            bucket.seated.reset();
+        }
+        for (Student student : roster.get()) {
+            place(student);
+        }
+    }
+
+    // Committed upserts and deletes, as reported by the store.
+    public synchronized void rowsWritten(List<Student> upserts, List<Student> deletes) {
+        for (Student student : upserts) {
+            place(student);
+        }
+        for (Student student : deletes) {
+            String previous = placements.remove(SeatingDatabase.rowKey(student));
+            if (previous != null) {
+                buckets.get(previous).seated.decrement();
+            }
+        }
+    }
+
+    private void place(Student student) {
+        Bucket bucket = bucketFor(student);
+        String previous = placements.put(SeatingDatabase.rowKey(student), bucket.key);
+        if (!bucket.key.equals(previous)) {
+            bucket.seated.increment();
+            if (previous != null) {
+                buckets.get(previous).seated.decrement();
+            }
+        }
+    }
+
+    public void searchHit(Student sitting) {
+        searches.increment();
+        long minute = currentMinute();
+        searchSeries.increment(minute);
+        Bucket bucket = bucketFor(sitting);
+        bucket.searches.increment();
+        bucket.series.increment(minute);
+    }
+
+    public void searchMiss(String roll) {
+        searches.increment();
+        misses.increment();
+        searchSeries.increment(currentMinute());
+        if (roll == null || roll.isBlank() || roll.trim().length() > MAX_ROLL_LENGTH) {
+            return;
+        }
+        missedRolls.add(roll.trim().toUpperCase(Locale.ROOT));
+    }
+
+    // A conditional GET answered with 304: counted, but not per room, since
+    // no sitting was looked up.
+    public void searchRevalidated() {
+        searches.increment();
+        revalidations.increment();
+        searchSeries.increment(currentMinute());
+    }
+
+    private Bucket bucketFor(Student sitting) {
+        String date = sitting.getExamDate() == null ? "" : sitting.getExamDate().trim();
+        String time = sitting.getExamTime() == null ? "" : sitting.getExamTime().trim();
+        String room = sitting.getRoom() == null ? "" : sitting.getRoom().trim();
+        String key = SeatingDatabase.sittingKey(sitting) + '\u001f' + room;
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, k -> new Bucket(k, date, time, room, sitting.getFloor()));
+        }
+        bucket.examName = sitting.getExamName();
+        return bucket;
+    }
+
+    // Buckets with seats or searches, in session then room order.
+    public List<Bucket> getBuckets() {
+        List<Bucket> list = new ArrayList<>();
+        for (Bucket bucket : buckets.values()) {
+            if (bucket.seated.sum() > 0 || bucket.searches.sum() > 0) {
+                list.add(bucket);
+            }
+        }
+        list.sort((a, b) -> a.key.compareTo(b.key));
+        return list;
+    }
+
+    // The most searched rolls that matched nothing, most frequent first.
+    public List<Map.Entry<String, Long>> topMissedRolls(int limit) {
+        return missedRolls.top(limit);
+    }
+
+    public long getSearchCount() {
+        return searches.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getRevalidationCount() {
+        return revalidations.sum();
+    }
+
+    // Searches per minute, oldest first, ending with the current minute.
+    public long[] getSearchSeries() {
+        return searchSeries.snapshot(currentMinute());
+    }
+
+    static long currentMinute() {
+        return System.currentTimeMillis() / 60_000L;
+    }
+
+    public static final class Bucket {
+        private final String key;
+        private final String examDate;
+        private final String examTime;
+        private final String room;
+        private final String floor;
+        private volatile String examName;
+        private final LongAdder seated = new LongAdder();
+        private final LongAdder searches = new LongAdder();
+        private final MinuteSeries series = new MinuteSeries();
+
+        private Bucket(String key, String examDate, String examTime, String room, String floor) {
+            this.key = key;
+            this.examDate = examDate;
+            this.examTime = examTime;
+            this.room = room;
+            this.floor = floor;
+        }
+
+        public String getExamDate() {
+            return examDate;
+        }
+
+        public String getExamTime() {
+            return examTime;
+        }
+
+        public String getExamName() {
+            return examName;
+        }
+
+        public String getRoom() {
+            return room;
+        }
+
+        public String getFloor() {
+            return floor;
+        }
+
+        public long getSeated() {
+            return seated.sum();
+        }
+
+        public long getSearches() {
+            return searches.sum();
+        }
+
+        public long[] getSearchSeries() {
+            return series.snapshot(currentMinute());
+        }
+    }
+
+    // Space-Saving heavy hitters: at most `capacity` rolls are counted. A new
+    // roll past that takes over the slot of the least counted one and
+    // inherits its count, so any roll missed more often than total/capacity
+    // times is always listed, with its count overestimated by at most the
+    // inherited part. Entries are ordered by count, so finding and replacing
+    // the minimum is O(log capacity).
+    private static final class MissedRolls {
+        private final int capacity;
+        private final Map<String, Counter> byRoll = new HashMap<>();
+        private final TreeSet<Counter> byCount = new TreeSet<>((a, b) -> a.count != b.count
+                ? Long.compare(a.count, b.count) : Long.compare(a.id, b.id));
+        private long nextId;
+
+        private MissedRolls(int capacity) {
+            this.capacity = capacity;
+        }
+
+        private synchronized void add(String roll) {
+            Counter counter = byRoll.get(roll);
+            if (counter == null) {
+                long inherited = 0;
+                if (byRoll.size() >= capacity) {
+                    Counter smallest = byCount.pollFirst();
+                    byRoll.remove(smallest.roll);
+                    inherited = smallest.count;
+                }
+                counter = new Counter(roll, inherited, nextId++);
+                byRoll.put(roll, counter);
+            } else {
+                byCount.remove(counter);
+            }
+            counter.count++;
+            byCount.add(counter);
+        }
+
+        private synchronized List<Map.Entry<String, Long>> top(int limit) {
+            List<Map.Entry<String, Long>> list = new ArrayList<>();
+            for (Counter counter : byCount.descendingSet()) {
+                if (list.size() >= limit) {
+                    break;
+                }
+                list.add(Map.entry(counter.roll, counter.count));
+            }
+            return list;
+        }
+    }
+
+    private static final class Counter {
+        private final String roll;
+        private final long id;
+        private long count;
+
+        private Counter(String roll, long count, long id) {
+            this.roll = roll;
+            this.count = count;
+            this.id = id;
+        }
+    }
+
+    // Counts per minute in a ring of MINUTES slots, each tagged with the
+    // minute it holds. The first hit in a new minute claims the slot by CAS
+    // and zeroes it; a hit racing that reset may be lost, which is fine for
+    // a chart.
+    private static final class MinuteSeries {
+        private final AtomicLongArray minutes = new AtomicLongArray(MINUTES);
+        private final AtomicLongArray counts = new AtomicLongArray(MINUTES);
+
+        private void increment(long minute) {
+            int slot = (int) (minute % MINUTES);
+            long held = minutes.get(slot);
+            if (held != minute && minutes.compareAndSet(slot, held, minute)) {
+                counts.set(slot, 0);
+            }
+            counts.incrementAndGet(slot);
+        }
+
+        private long[] snapshot(long now) {
+            long[] series = new long[MINUTES];
+            for (int i = 0; i < MINUTES; i++) {
+                long minute = now - (MINUTES - 1) + i;
+                int slot = (int) (minute % MINUTES);
+                series[i] = minutes.get(slot) == minute ? counts.get(slot) : 0;
+            }
+            return series;
+        }
+    }
+}
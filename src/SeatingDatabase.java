@@ -5,44 +5,520 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-public class SeatingDatabase {
+// A row is one sitting: the key is (roll, exam date, exam time), so a student
+// can hold a different seat for every exam. In memory each roll maps to its
+// sittings sorted by start time; see sittingKey and currentSitting.
+public class SeatingDatabase implements SeatingStore {
+    private static final char KEY_SEPARATOR = '\u001f';
+    private static final Pattern START_TIME = Pattern.compile("^(\\d{1,2})[:.](\\d{2})\\s*([AaPp][Mm])?");
+    private static final DateTimeFormatter MINUTES = DateTimeFormatter.ofPattern("HH:mm");
+
+    private final String name;
     private final Path dbPath;
     private final Path fallbackFilePath;
-    private final Map<String, Student> fallbackMap;
-    private final boolean sqliteAvailable;
+    // data/seating.txt, the pre-sqlite roster; only the default store reads it.
+    private final Path legacyFilePath;
+    // Text-file storage on the fallback path; on sqlite it is the in-memory
+    // read copy used while the storage circuit breaker is open. The inner maps
+    // are immutable and replaced on write, so readers never see a partial update.
+    private final Map<String, NavigableMap<String, Student>> fallbackMap;
+    // Startup phase -> elapsed milliseconds, in the order the phases ran.
+    private final Map<String, Long> startupPhases;
+    private volatile boolean sqliteAvailable;
+    private volatile boolean ready;
+    // Read replicas serve from an immutable snapshot swapped in as a whole;
+    // null on standalone and primary nodes.
+    private volatile Map<String, NavigableMap<String, Student>> snapshotView;
+    private volatile boolean replica;
+    private volatile long snapshotVersion;
+    // Non-null when SEATING_WRITE_MODE is group or async.
+    private volatile WriteBehindQueue writeBehind;
+    private volatile boolean writeBehindDurable;
+    // Data versions for conditional GETs. Every write to a roll stamps it
+    // with the next value of versionCounter; the generation changes when the
+    // whole data set is replaced (process start, snapshot install).
+    private final AtomicLong versionCounter = new AtomicLong();
+    // Bumped before every change to fallbackMap and again when the lookup
+    // index is invalidated after it, so a lookup index build that overlaps
+    // any part of a change is never published.
+    private final AtomicLong fallbackWrites = new AtomicLong();
+    private final Map<String, Long> rollVersions = new ConcurrentHashMap<>();
+    private volatile long generation = System.currentTimeMillis();
+    private final RollPrefixIndex rollIndex = new RollPrefixIndex();
+    private final FuzzyRollIndex fuzzyIndex = new FuzzyRollIndex();
+    // row key -> content hash of the stored row, for differential uploads.
+    private final Map<String, Long> rowHashes = new ConcurrentHashMap<>();
+    // Perfect-hash read index over the roster, rebuilt once writes go quiet;
+    // null while a rebuild is due, and reads then use the maps or SQL.
+    private volatile PerfectRollIndex<NavigableMap<String, Student>> lookupIndex;
+    private final Object lookupLock = new Object();
+    private final AtomicBoolean lookupRebuildPending = new AtomicBoolean();
+    private volatile long lastWriteNanos;
+    private volatile long lookupBuildMillis;
+    private final long lookupRebuildDelayMillis = AppConfig.longValue("SEATING_LOOKUP_REBUILD_DELAY_MS", 1000L);
+    private volatile ChangeListener changeListener;
+    // Non-null unless SEATING_JOURNAL=false; see ChangeJournal.
+    private volatile ChangeJournal journal;
+    private static final ScheduledExecutorService LOOKUP_REBUILDER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lookup-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Every sqlite3 call gets a deadline; the watchdog kills processes that
+    // overrun it, and repeated failures open the breaker.
+    private static final ScheduledExecutorService SQL_WATCHDOG = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sqlite-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final int SQL_ARGUMENT_LIMIT = 100_000;
+    private final long sqlTimeoutMillis = AppConfig.longValue("SEATING_SQL_TIMEOUT_MS", 5000L);
+    private final CircuitBreaker storageBreaker = new CircuitBreaker("storage",
+            AppConfig.intValue("SEATING_BREAKER_FAILURES", 5),
+            AppConfig.longValue("SEATING_BREAKER_OPEN_MS", 10_000L));
+    private final LongAdder sqlTimeouts = new LongAdder();
+    private final LongAdder sqlFailures = new LongAdder();
+    // A sitting counts as current until this long after its start time.
+    private final long sittingWindowMinutes = AppConfig.longValue("SEATING_SITTING_WINDOW_MINUTES", 180L);
 
     public SeatingDatabase(String dbFilePath) {
-        this.dbPath = Path.of(dbFilePath);
-        this.fallbackFilePath = Path.of("data", "seatingData.txt");
-        this.fallbackMap = new HashMap<>();
-        this.sqliteAvailable = isSqliteAvailable();
+        this(dbFilePath, false);
+    }
+
+    // With deferOpen the constructor does no I/O; storage is opened by the
+    // first call to open() or to any data method.
+    public SeatingDatabase(String dbFilePath, boolean deferOpen) {
+        this("default", Path.of(dbFilePath), Path.of("data", "seatingData.txt"), Path.of("data", "seating.txt"), deferOpen);
+    }
+
+    // A named store with its own files, e.g. one shard of ShardedSeatingStore.
+    // legacyFile may be null.
+    public SeatingDatabase(String name, Path dbPath, Path fallbackFile, Path legacyFile, boolean deferOpen) {
+        this.name = name;
+        this.dbPath = dbPath;
+        this.fallbackFilePath = fallbackFile;
+        this.legacyFilePath = legacyFile;
+        this.fallbackMap = new ConcurrentHashMap<>();
+        this.startupPhases = new LinkedHashMap<>();
+        if (!deferOpen) {
+            open();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<SeatingDatabase> getShards() {
+        return List.of(this);
+    }
+
+    public SeatingDatabase shardFor(String rollNumber) {
+        return this;
+    }
+
+    public synchronized void open() {
+        if (ready || replica) {
+            return;
+        }
+        long phaseStart = System.nanoTime();
+        // SEATING_STORAGE=sqlite|file skips the sqlite3 -version probe entirely.
+        String storage = AppConfig.get("SEATING_STORAGE", "auto");
+        if ("sqlite".equalsIgnoreCase(storage)) {
+            sqliteAvailable = true;
+        } else if ("file".equalsIgnoreCase(storage)) {
+            sqliteAvailable = false;
+        } else {
+            sqliteAvailable = isSqliteAvailable();
+        }
+        phaseStart = recordPhase("sqlite_probe", phaseStart);
         if (sqliteAvailable) {
+            // Decided before the schema is created, which itself gives the
+            // file content.
+            boolean importLegacy = shouldImportLegacyData();
             initializeDatabase();
-            importLegacyDataIfEmpty();
+            phaseStart = recordPhase("schema_init", phaseStart);
+            if (importLegacy) {
+                importLegacyDataIfEmpty();
+                recordPhase("legacy_import", phaseStart);
+            }
         } else {
-            System.out.println("sqlite3 not available; falling back to text file storage.");
+            EventLog.info("storage", "sqlite3 not available; falling back to text file storage.");
             loadFallbackData();
+            recordPhase("fallback_load", phaseStart);
+        }
+        phaseStart = System.nanoTime();
+        rebuildIndexes();
+        phaseStart = recordPhase("index_build", phaseStart);
+        startWriteBehind();
+        if (AppConfig.flag("SEATING_JOURNAL", true)) {
+            openJournal();
+            recordPhase("journal", phaseStart);
+        }
+        ready = true;
+    }
+
+    // The journal lives next to the store: data/journal, or
+    // data/shards/<name>/journal for a shard.
+    private void openJournal() {
+        Path parent = dbPath.toAbsolutePath().getParent();
+        ChangeJournal opened = new ChangeJournal(parent.resolve("journal"),
+                AppConfig.intValue("SEATING_JOURNAL_SEGMENT_RECORDS", 100_000),
+                AppConfig.longValue("SEATING_JOURNAL_CHECKPOINT_MINUTES", 60L) * 60_000L,
+                AppConfig.intValue("SEATING_JOURNAL_KEEP_CHECKPOINTS", 24));
+        try {
+            opened.open(allSittings());
+            journal = opened;
+        } catch (IOException e) {
+            EventLog.error("journal", "Cannot open change journal: " + e.getMessage());
+        }
+    }
+
+    private List<Student> allSittings() {
+        List<Student> students = new ArrayList<>();
+        flatten(fallbackMap, students);
+        return students;
+    }
+
+    // Journals a committed write and reports it to the change listener. With
+    // write-behind, the write is only queued here; the writer thread journals
+    // it once its batch commits (see applyQueuedBatch).
+    private void written(List<Student> upserts, List<Student> deletes) {
+        if (writeBehind == null) {
+            journal(upserts, deletes);
+        }
+        ChangeListener listener = changeListener;
+        if (listener != null) {
+            try {
+                listener.rowsWritten(upserts, deletes);
+            } catch (RuntimeException e) {
+                EventLog.error("storage", "Change listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void journal(List<Student> upserts, List<Student> deletes) {
+        ChangeJournal current = journal;
+        if (current != null) {
+            current.record(upserts, deletes, this::allSittings);
         }
     }
 
+    public ChangeJournal getJournal() {
+        return journal;
+    }
+
+    // Changes that take the roster back to how it was at the given time,
+    // from the journal; null when the journal does not reach back that far.
+    public RosterDiff planRestore(long epochMillis) throws IOException {
+        ensureOpen();
+        ChangeJournal current = journal;
+        List<Student> roster = current == null ? null : current.rosterAt(epochMillis);
+        return roster == null ? null : planDiff(roster, true, true);
+    }
+
+    // In-memory indexes derived from the full roster; rebuilt after bulk
+    // loads and kept current by addStudent/deleteStudent.
+    private void rebuildIndexes() {
+        List<Student> students = new ArrayList<>();
+        Map<String, NavigableMap<String, Student>> view = snapshotView;
+        if (view != null) {
+            flatten(view, students);
+        } else {
+            readAllStudents(students);
+            if (sqliteAvailable) {
+                fallbackWrites.incrementAndGet();
+                fallbackMap.clear();
+                fallbackMap.putAll(groupByRoll(students));
+            }
+        }
+        List<String> rolls = new ArrayList<>();
+        rowHashes.clear();
+        String previous = null;
+        for (Student student : students) {
+            // Sittings of one roll are adjacent, so this skips most duplicates.
+            if (!student.getRollNumber().equals(previous)) {
+                rolls.add(student.getRollNumber());
+                previous = student.getRollNumber();
+            }
+            rowHashes.put(rowKey(student), contentHash(student));
+        }
+        rollIndex.rebuild(rolls);
+        fuzzyIndex.rebuild(rolls);
+        rebuildLookupIndex();
+    }
+
+    // Builds the perfect-hash index over the current roster. A build that
+    // overlapped a write is dropped rather than published stale, and
+    // another attempt follows once writes go quiet.
+    public void rebuildLookupIndex() {
+        long writes = fallbackWrites.get();
+        Map<String, NavigableMap<String, Student>> view = snapshotView;
+        PerfectRollIndex<NavigableMap<String, Student>> built =
+                PerfectRollIndex.build(view != null ? view : fallbackMap);
+        synchronized (lookupLock) {
+            if (fallbackWrites.get() == writes && snapshotView == view) {
+                lookupIndex = built;
+                lookupBuildMillis = built.getBuildNanos() / 1_000_000L;
+                return;
+            }
+        }
+        scheduleLookupRebuild();
+    }
+
+    private void invalidateLookupIndex() {
+        synchronized (lookupLock) {
+            fallbackWrites.incrementAndGet();
+            lookupIndex = null;
+        }
+        scheduleLookupRebuild();
+    }
+
+    // For a change to fallbackMap that is not followed by afterUpsert or
+    // afterDelete, e.g. because the write then failed.
+    private void changeFallback(Runnable change) {
+        fallbackWrites.incrementAndGet();
+        change.run();
+        invalidateLookupIndex();
+    }
+
+    private void scheduleLookupRebuild() {
+        lastWriteNanos = System.nanoTime();
+        if (lookupRebuildPending.compareAndSet(false, true)) {
+            LOOKUP_REBUILDER.schedule(this::rebuildWhenQuiet, lookupRebuildDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Waits for a quiet spell, so an upload written in many batches is
+    // indexed once, at the end.
+    private void rebuildWhenQuiet() {
+        long quietMillis = (System.nanoTime() - lastWriteNanos) / 1_000_000L;
+        if (quietMillis < lookupRebuildDelayMillis) {
+            LOOKUP_REBUILDER.schedule(this::rebuildWhenQuiet, lookupRebuildDelayMillis - quietMillis, TimeUnit.MILLISECONDS);
+            return;
+        }
+        lookupRebuildPending.set(false);
+        try {
+            rebuildLookupIndex();
+        } catch (RuntimeException e) {
+            EventLog.error("storage", "Lookup index rebuild failed: " + e.getMessage());
+        }
+    }
+
+    // Rolls in the perfect-hash index; 0 while it is being rebuilt.
+    public int getLookupIndexSize() {
+        PerfectRollIndex<NavigableMap<String, Student>> index = lookupIndex;
+        return index == null ? 0 : index.size();
+    }
+
+    public long getLookupIndexBuildMillis() {
+        return lookupBuildMillis;
+    }
+
+    public List<String> completeRolls(String prefix, int limit) {
+        if (prefix == null || prefix.isBlank()) {
+            return new ArrayList<>();
+        }
+        return rollIndex.complete(prefix.trim(), limit);
+    }
+
+    // Rolls within one typo of the given one, for "did you mean" hints.
+    public List<String> suggestRolls(String roll, int limit) {
+        if (roll == null || roll.isBlank()) {
+            return new ArrayList<>();
+        }
+        return fuzzyIndex.suggest(roll.trim(), limit);
+    }
+
+    // SEATING_WRITE_MODE: sync (default) writes before returning; group queues
+    // the write and waits for the batch that commits it; async returns as soon
+    // as the write is queued and relies on close() to flush on shutdown.
+    private void startWriteBehind() {
+        String mode = AppConfig.get("SEATING_WRITE_MODE", "sync").toLowerCase();
+        if (!"group".equals(mode) && !"async".equals(mode)) {
+            return;
+        }
+        writeBehindDurable = "group".equals(mode);
+        writeBehind = new WriteBehindQueue(this::applyQueuedBatch,
+                AppConfig.intValue("SEATING_WRITE_QUEUE", 10_000),
+                AppConfig.intValue("SEATING_WRITE_BATCH", 500),
+                AppConfig.longValue("SEATING_WRITE_FLUSH_MS", 50L),
+                !writeBehindDurable);
+    }
+
+    // Flushes queued writes; safe to call more than once.
+    public void close() {
+        WriteBehindQueue queue = writeBehind;
+        if (queue != null) {
+            queue.close();
+        }
+        ChangeJournal current = journal;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    public int getPendingWriteCount() {
+        WriteBehindQueue queue = writeBehind;
+        return queue == null ? 0 : queue.size();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public synchronized Map<String, Long> getStartupPhases() {
+        return new LinkedHashMap<>(startupPhases);
+    }
+
+    private synchronized long recordPhase(String phase, long phaseStart) {
+        long now = System.nanoTime();
+        startupPhases.put(phase, (now - phaseStart) / 1_000_000L);
+        return now;
+    }
+
+    // Set before the first data call; a replica only ever serves snapshots.
+    public void setReplica() {
+        replica = true;
+    }
+
+    // Replaces the whole read view in one volatile write. Once a snapshot is
+    // installed this store is read-only and never touches local storage.
+    public void installSnapshot(long version, List<Student> students) {
+        synchronized (lookupLock) {
+            lookupIndex = null;
+        }
+        snapshotView = Collections.unmodifiableMap(groupByRoll(students));
+        snapshotVersion = version;
+        generation = version;
+        rollVersions.clear();
+        rebuildIndexes();
+        ready = true;
+    }
+
+    // Opaque token that changes whenever the record for this roll may have
+    // changed. Memory only: never touches storage.
+    public String getDataVersion(String rollNumber) {
+        String key = rollNumber == null ? "" : rollNumber.trim();
+        return generation + "." + rollVersions.getOrDefault(key, 0L);
+    }
+
+    // Key of the sitting getStudent(roll) picks right now, read from memory
+    // only. The pick moves as sittings start and end, so it is part of the
+    // search ETag next to the data version.
+    public String getCurrentSittingKey(String rollNumber) {
+        if (rollNumber == null || rollNumber.isBlank()) {
+            return "";
+        }
+        Map<String, NavigableMap<String, Student>> view = snapshotView;
+        Student student = currentSitting((view != null ? view : fallbackMap).get(rollNumber.trim()));
+        return student == null ? "" : sittingKey(student);
+    }
+
+    public long getGlobalDataVersion() {
+        return versionCounter.get();
+    }
+
+    private void bumpVersion(String roll) {
+        rollVersions.put(roll, versionCounter.incrementAndGet());
+    }
+
+    public long getSnapshotVersion() {
+        return snapshotVersion;
+    }
+
+    public boolean isReadOnly() {
+        return replica || snapshotView != null;
+    }
+
+    // A replica without a snapshot has nothing to serve: it must not fall
+    // back to whatever data/seating.db happens to be on local disk.
+    private void ensureOpen() {
+        if (!ready) {
+            if (replica) {
+                throw new IllegalStateException("Replica " + name + " is not ready: no snapshot installed yet.");
+            }
+            open();
+        }
+    }
+
+    // A populated seating.db never needs the legacy text import, so fast-start
+    // mode skips the COUNT(*) round trip when the file already has content.
+    private boolean shouldImportLegacyData() {
+        if (!AppConfig.flag("SEATING_LEGACY_IMPORT", true)) {
+            return false;
+        }
+        if (AppConfig.flag("SEATING_FAST_START", false)) {
+            try {
+                return !Files.exists(dbPath) || Files.size(dbPath) == 0;
+            } catch (IOException e) {
+                return true;
+            }
+        }
+        return true;
+    }
+
+    private static final String STUDENTS_TABLE = "(" +
+            "roll TEXT NOT NULL," +
+            "room TEXT NOT NULL," +
+            "floor TEXT NOT NULL," +
+            "seat TEXT NOT NULL," +
+            "exam_name TEXT," +
+            "exam_date TEXT NOT NULL DEFAULT 'N/A'," +
+            "exam_time TEXT NOT NULL DEFAULT 'N/A'," +
+            "PRIMARY KEY (roll, exam_date, exam_time)" +
+            ") WITHOUT ROWID";
+
+    // The composite primary key is a clustered b-tree, so all sittings of a
+    // roll are one range scan. Databases created with roll as the only key are
+    // migrated in place.
     private void initializeDatabase() {
-        runSql("CREATE TABLE IF NOT EXISTS students (" +
-                "roll TEXT PRIMARY KEY," +
-                "room TEXT NOT NULL," +
-                "floor TEXT NOT NULL," +
-                "seat TEXT NOT NULL," +
-                "exam_name TEXT," +
-                "exam_date TEXT," +
-                "exam_time TEXT" +
-                ");");
+        runSql("CREATE TABLE IF NOT EXISTS students " + STUDENTS_TABLE + ";" +
+                "CREATE INDEX IF NOT EXISTS idx_students_exam_date ON students(exam_date);");
+        List<String> keyColumns = runSqlQuery("SELECT COUNT(*) FROM pragma_table_info('students') WHERE pk > 0;");
+        if (keyColumns != null && !keyColumns.isEmpty() && "1".equals(keyColumns.get(0).trim())) {
+            boolean migrated = runSql("BEGIN;" +
+                    "CREATE TABLE students_v2 " + STUDENTS_TABLE + ";" +
+                    "INSERT OR REPLACE INTO students_v2 (roll, room, floor, seat, exam_name, exam_date, exam_time) " +
+                    "SELECT roll, room, floor, seat, exam_name, COALESCE(exam_date, 'N/A'), COALESCE(exam_time, 'N/A') FROM students;" +
+                    "DROP TABLE students;" +
+                    "ALTER TABLE students_v2 RENAME TO students;" +
+                    "CREATE INDEX IF NOT EXISTS idx_students_exam_date ON students(exam_date);" +
+                    "COMMIT;");
+            EventLog.info("storage", migrated
+                    ? "Migrated students table to the (roll, exam_date, exam_time) key."
+                    : "Could not migrate students table to the composite key.");
+        }
     }
 
     private void importLegacyDataIfEmpty() {
@@ -50,8 +526,7 @@ public class SeatingDatabase {
         if (count > 0) {
             return;
         }
-        loadDataIfPresent(Path.of("data", "seatingData.txt"));
-        loadDataIfPresent(Path.of("data", "seating.txt"));
+        loadFallbackData();
     }
 
     private int getStudentCount() {
@@ -73,39 +548,201 @@ public class SeatingDatabase {
         try (BufferedReader br = new BufferedReader(new FileReader(path.toFile()))) {
             String line;
             while ((line = br.readLine()) != null) {
-                // Example format: R001,Room-101,First Floor,S12
-                String[] parts = line.split(",");
+                // Example format: R001,Room-101,First Floor,S12. Fields are
+                // quoted since uploads may carry commas; older files are not.
+                String[] parts = parseCsvRow(line);
                 if (parts.length >= 4) {
                     String examName = parts.length > 4 ? parts[4] : "N/A";
                     String examDate = parts.length > 5 ? parts[5] : "N/A";
                     String examTime = parts.length > 6 ? parts[6] : "N/A";
                     Student student = new Student(parts[0], parts[1], parts[2], parts[3], examName, examDate, examTime);
                     if (sqliteAvailable) {
-                        addStudent(student);
+                        upsertSqlite(student);
                     } else {
-                        fallbackMap.put(student.getRollNumber(), student);
+                        putSitting(fallbackMap, student);
                     }
                 }
             }
         } catch (IOException e) {
-            System.out.println("Error loading data: " + e.getMessage());
+            EventLog.error("storage", "Error loading data: " + e.getMessage());
+        }
+    }
+
+    // Identity of one stored row.
+    private static String sessionKey(Student student) {
+        return nullToEmpty(student.getExamDate()) + KEY_SEPARATOR + nullToEmpty(student.getExamTime());
+    }
+
+    static String rowKey(Student student) {
+        return student.getRollNumber() + KEY_SEPARATOR + nullToEmpty(student.getExamDate())
+                + KEY_SEPARATOR + nullToEmpty(student.getExamTime());
+    }
+
+    // Orders the sittings of a roll by start time: "yyyy-MM-ddTHH:mm", then the
+    // raw date and time so that distinct rows never collide. Dates or times
+    // that do not parse sort after every parseable one.
+    static String sittingKey(Student student) {
+        return sortPrefix(student.getExamDate(), student.getExamTime())
+                + KEY_SEPARATOR + nullToEmpty(student.getExamDate())
+                + KEY_SEPARATOR + nullToEmpty(student.getExamTime());
+    }
+
+    private static String sortPrefix(String examDate, String examTime) {
+        LocalDate date = SessionArchive.parseDate(examDate);
+        LocalTime time = parseStartTime(examTime);
+        return (date != null ? date.toString() : "~") + "T" + (time != null ? time.format(MINUTES) : "~");
+    }
+
+    // Start of an exam time such as "09:30", "9.30 AM" or "14:00-17:00".
+    static LocalTime parseStartTime(String value) {
+        if (value == null) {
+            return null;
+        }
+        Matcher m = START_TIME.matcher(value.trim());
+        if (!m.find()) {
+            return null;
+        }
+        int hour = Integer.parseInt(m.group(1));
+        int minute = Integer.parseInt(m.group(2));
+        if (m.group(3) != null) {
+            boolean pm = m.group(3).equalsIgnoreCase("pm");
+            if (hour < 1 || hour > 12) {
+                return null;
+            }
+            hour = hour % 12 + (pm ? 12 : 0);
+        }
+        if (hour > 23 || minute > 59) {
+            return null;
         }
+        return LocalTime.of(hour, minute);
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
     }
 
+    private static Map<String, NavigableMap<String, Student>> groupByRoll(List<Student> students) {
+        Map<String, TreeMap<String, Student>> grouped = new HashMap<>();
+        for (Student student : students) {
+            grouped.computeIfAbsent(student.getRollNumber(), r -> new TreeMap<>()).put(sittingKey(student), student);
+        }
+        Map<String, NavigableMap<String, Student>> result = new HashMap<>(grouped.size() * 2);
+        for (Map.Entry<String, TreeMap<String, Student>> entry : grouped.entrySet()) {
+            result.put(entry.getKey(), Collections.unmodifiableNavigableMap(entry.getValue()));
+        }
+        return result;
+    }
+
+    private static void flatten(Map<String, NavigableMap<String, Student>> byRoll, List<Student> out) {
+        for (NavigableMap<String, Student> sittings : byRoll.values()) {
+            out.addAll(sittings.values());
+        }
+    }
+
+    // Copy-on-write update of one roll's sittings; the roll entry disappears
+    // with its last sitting.
+    private static void putSitting(Map<String, NavigableMap<String, Student>> byRoll, Student student) {
+        byRoll.compute(student.getRollNumber(), (roll, sittings) -> {
+            TreeMap<String, Student> copy = sittings == null ? new TreeMap<>() : new TreeMap<>(sittings);
+            copy.put(sittingKey(student), student);
+            return Collections.unmodifiableNavigableMap(copy);
+        });
+    }
+
+    private static void removeSitting(Map<String, NavigableMap<String, Student>> byRoll, Student student) {
+        byRoll.computeIfPresent(student.getRollNumber(), (roll, sittings) -> {
+            TreeMap<String, Student> copy = new TreeMap<>(sittings);
+            copy.remove(sittingKey(student));
+            return copy.isEmpty() ? null : Collections.unmodifiableNavigableMap(copy);
+        });
+    }
+
+    // The sitting in progress (started less than SEATING_SITTING_WINDOW_MINUTES
+    // ago) or else the next one; after the last sitting, the most recent one.
+    // One ceiling lookup on the sorted sittings, O(log n).
+    public Student currentSitting(NavigableMap<String, Student> sittings) {
+        if (sittings == null || sittings.isEmpty()) {
+            return null;
+        }
+        LocalDateTime since = LocalDateTime.now().minusMinutes(sittingWindowMinutes);
+        String from = since.toLocalDate() + "T" + since.toLocalTime().format(MINUTES);
+        Map.Entry<String, Student> entry = sittings.ceilingEntry(from);
+        return entry != null ? entry.getValue() : sittings.lastEntry().getValue();
+    }
+
+    // Current or next sitting for the roll; see currentSitting.
     public Student getStudent(String rollNumber) {
+        return currentSitting(getSittings(rollNumber));
+    }
+
+    public Student getStudent(String rollNumber, String examDate, String examTime) {
+        for (Student student : getSittings(rollNumber).values()) {
+            if (nullToEmpty(student.getExamDate()).equals(nullToEmpty(examDate))
+                    && nullToEmpty(student.getExamTime()).equals(nullToEmpty(examTime))) {
+                return student;
+            }
+        }
+        return null;
+    }
+
+    // Every sitting of the roll in start-time order, including queued writes.
+    public NavigableMap<String, Student> getSittings(String rollNumber) {
         if (rollNumber == null || rollNumber.isBlank()) {
-            return null;
+            return Collections.emptyNavigableMap();
+        }
+        String key = rollNumber.trim();
+        PerfectRollIndex<NavigableMap<String, Student>> index = lookupIndex;
+        if (index != null) {
+            NavigableMap<String, Student> sittings = index.get(key);
+            return sittings != null ? sittings : Collections.emptyNavigableMap();
         }
+        Map<String, NavigableMap<String, Student>> view = snapshotView;
+        if (view != null) {
+            return view.getOrDefault(key, Collections.emptyNavigableMap());
+        }
+        ensureOpen();
+        NavigableMap<String, Student> sittings = readSittings(key);
+        WriteBehindQueue queue = writeBehind;
+        if (queue != null) {
+            List<WriteBehindQueue.Pending> pendingWrites = queue.lookupRoll(key);
+            if (!pendingWrites.isEmpty()) {
+                TreeMap<String, Student> merged = new TreeMap<>(sittings);
+                for (WriteBehindQueue.Pending pendingWrite : pendingWrites) {
+                    if (pendingWrite.isDelete()) {
+                        merged.remove(sittingKey(pendingWrite.getStudent()));
+                    } else {
+                        merged.put(sittingKey(pendingWrite.getStudent()), pendingWrite.getStudent());
+                    }
+                }
+                return Collections.unmodifiableNavigableMap(merged);
+            }
+        }
+        return sittings;
+    }
+
+    private NavigableMap<String, Student> readSittings(String key) {
         if (!sqliteAvailable) {
-            return fallbackMap.get(rollNumber.trim());
+            return fallbackMap.getOrDefault(key, Collections.emptyNavigableMap());
         }
+        // Served by the primary key: a range scan over the roll's sittings.
         String sql = "SELECT roll, room, floor, seat, exam_name, exam_date, exam_time FROM students " +
-                "WHERE roll = '" + escapeSql(rollNumber.trim()) + "' LIMIT 1;";
+                "WHERE roll = '" + escapeSql(key) + "';";
         List<String> rows = runSqlQuery(sql);
-        if (rows == null || rows.isEmpty()) {
-            return null;
+        if (rows == null) {
+            // Storage failed, timed out or the breaker is open: serve the read copy.
+            return fallbackMap.getOrDefault(key, Collections.emptyNavigableMap());
+        }
+        TreeMap<String, Student> sittings = new TreeMap<>();
+        for (String row : rows) {
+            Student student = fromCsvParts(parseCsvRow(row));
+            if (student != null) {
+                sittings.put(sittingKey(student), student);
+            }
         }
-        String[] parts = parseCsvRow(rows.get(0));
+        return Collections.unmodifiableNavigableMap(sittings);
+    }
+
+    private static Student fromCsvParts(String[] parts) {
         if (parts.length < 4) {
             return null;
         }
@@ -117,38 +754,359 @@ public class SeatingDatabase {
 
     public List<Student> getAllStudents() {
         List<Student> students = new ArrayList<>();
-        if (!sqliteAvailable) {
-            students.addAll(fallbackMap.values());
+        Map<String, NavigableMap<String, Student>> view = snapshotView;
+        if (view != null) {
+            flatten(view, students);
+            return students;
+        }
+        ensureOpen();
+        readAllStudents(students);
+        WriteBehindQueue queue = writeBehind;
+        if (queue == null) {
             return students;
         }
+        Map<String, WriteBehindQueue.Pending> overlay = queue.snapshotPending();
+        if (overlay.isEmpty()) {
+            return students;
+        }
+        Map<String, Student> merged = new LinkedHashMap<>();
+        for (Student student : students) {
+            merged.put(rowKey(student), student);
+        }
+        for (Map.Entry<String, WriteBehindQueue.Pending> entry : overlay.entrySet()) {
+            if (entry.getValue().isDelete()) {
+                merged.remove(entry.getKey());
+            } else {
+                merged.put(entry.getKey(), entry.getValue().getStudent());
+            }
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    private void readAllStudents(List<Student> students) {
+        if (!sqliteAvailable) {
+            flatten(fallbackMap, students);
+            return;
+        }
         String sql = "SELECT roll, room, floor, seat, exam_name, exam_date, exam_time FROM students " +
                 "ORDER BY roll COLLATE NOCASE;";
         List<String> rows = runSqlQuery(sql);
         if (rows == null) {
-            return students;
+            flatten(fallbackMap, students);
+            return;
         }
         for (String row : rows) {
-            String[] parts = parseCsvRow(row);
-            if (parts.length < 4) {
+            Student student = fromCsvParts(parseCsvRow(row));
+            if (student != null) {
+                students.add(student);
+            }
+        }
+    }
+
+    // Told about stored seat changes, on the writing thread; must be quick.
+    public interface ChangeListener {
+        // The affected sittings: both the stored version before the change
+        // and the new one, so a seat moved to another room reaches both rooms.
+        void sittingsChanged(List<Student> sittings);
+
+        // The rows a committed write stored and removed, once it is applied
+        // in memory; for exact running counts.
+        default void rowsWritten(List<Student> upserts, List<Student> deletes) {
+        }
+    }
+
+    public void setChangeListener(ChangeListener listener) {
+        this.changeListener = listener;
+    }
+
+    // Old and new versions of the sittings that really change; rows stored
+    // with identical content are left out. Null when nobody listens.
+    private List<Student> changedSittings(List<Student> upserts) {
+        if (changeListener == null) {
+            return null;
+        }
+        List<Student> changed = new ArrayList<>();
+        for (Student student : upserts) {
+            NavigableMap<String, Student> sittings = fallbackMap.get(student.getRollNumber());
+            Student previous = sittings == null ? null : sittings.get(sittingKey(student));
+            if (previous != null && contentHash(previous) == contentHash(student)) {
                 continue;
             }
-            String examName = parts.length > 4 ? parts[4] : "N/A";
-            String examDate = parts.length > 5 ? parts[5] : "N/A";
-            String examTime = parts.length > 6 ? parts[6] : "N/A";
-            students.add(new Student(parts[0], parts[1], parts[2], parts[3], examName, examDate, examTime));
+            if (previous != null) {
+                changed.add(previous);
+            }
+            changed.add(student);
         }
-        return students;
+        return changed;
     }
 
+    private void notifyChanged(List<Student> changed) {
+        ChangeListener listener = changeListener;
+        if (listener == null || changed == null || changed.isEmpty()) {
+            return;
+        }
+        try {
+            listener.sittingsChanged(changed);
+        } catch (RuntimeException e) {
+            EventLog.error("storage", "Change listener failed: " + e.getMessage());
+        }
+    }
+
+    // Inserts or replaces one sitting; other sittings of the roll are kept.
     public boolean addStudent(Student student) {
         if (student == null || student.getRollNumber() == null || student.getRollNumber().isBlank()) {
             return false;
         }
+        if (isReadOnly()) {
+            return false;
+        }
+        ensureOpen();
+        List<Student> changed = changedSittings(List.of(student));
+        boolean ok;
+        WriteBehindQueue queue = writeBehind;
+        if (queue != null) {
+            ok = enqueue(queue, student, false);
+        } else if (!sqliteAvailable) {
+            changeFallback(() -> putSitting(fallbackMap, student));
+            ok = appendToFallbackFile(student);
+        } else {
+            ok = upsertSqlite(student);
+        }
+        bumpVersion(student.getRollNumber());
+        if (ok) {
+            afterUpsert(student);
+            written(List.of(student), List.of());
+            notifyChanged(changed);
+        }
+        return ok;
+    }
+
+    // Inserts or replaces many sittings in one batch, for roster uploads.
+    public boolean addStudents(List<Student> students) {
+        if (students.isEmpty()) {
+            return true;
+        }
+        if (isReadOnly()) {
+            return false;
+        }
+        ensureOpen();
+        List<Student> changed = changedSittings(students);
+        boolean ok = true;
+        WriteBehindQueue queue = writeBehind;
+        if (queue != null) {
+            for (Student student : students) {
+                ok &= enqueue(queue, student, false);
+            }
+        } else if (!sqliteAvailable) {
+            // Appending keeps a batch O(batch); rewriting would be O(roster).
+            ok = appendToFallbackFile(students);
+        } else {
+            ok = applyBatch(students, List.of());
+        }
+        for (Student student : students) {
+            bumpVersion(student.getRollNumber());
+        }
+        if (ok) {
+            afterUpserts(students);
+            written(students, List.of());
+            notifyChanged(changed);
+        }
+        return ok;
+    }
+
+    private void afterUpsert(Student student) {
+        fallbackWrites.incrementAndGet();
+        putSitting(fallbackMap, student);
+        rowHashes.put(rowKey(student), contentHash(student));
+        rollIndex.add(student.getRollNumber());
+        fuzzyIndex.add(student.getRollNumber());
+        invalidateLookupIndex();
+    }
+
+    private void afterUpserts(List<Student> students) {
+        List<String> rolls = new ArrayList<>(students.size());
+        fallbackWrites.incrementAndGet();
+        for (Student student : students) {
+            putSitting(fallbackMap, student);
+            rowHashes.put(rowKey(student), contentHash(student));
+            rolls.add(student.getRollNumber());
+        }
+        rollIndex.addAll(rolls);
+        fuzzyIndex.addAll(rolls);
+        invalidateLookupIndex();
+    }
+
+    private void afterDelete(Student student) {
+        fallbackWrites.incrementAndGet();
+        removeSitting(fallbackMap, student);
+        rowHashes.remove(rowKey(student));
+        if (!fallbackMap.containsKey(student.getRollNumber())) {
+            rollIndex.remove(student.getRollNumber());
+            fuzzyIndex.remove(student.getRollNumber());
+        }
+        invalidateLookupIndex();
+    }
+
+    // 64-bit FNV-1a over all fields; equal hashes mean an unchanged row.
+    static long contentHash(Student student) {
+        long hash = 0xcbf29ce484222325L;
+        String[] fields = {
+                student.getRollNumber(), student.getRoom(), student.getFloor(), student.getSeatNumber(),
+                student.getExamName(), student.getExamDate(), student.getExamTime()
+        };
+        for (String field : fields) {
+            String value = field == null ? "" : field;
+            for (int i = 0; i < value.length(); i++) {
+                hash ^= value.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            hash ^= 0x1f;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // Compares an uploaded roster with the stored rows by content hash, one
+    // row per sitting. With deleteMissing, stored sittings absent from the
+    // upload are deleted.
+    public RosterDiff planDiff(List<Student> incoming, boolean deleteMissing) {
+        return planDiff(incoming, deleteMissing, false);
+    }
+
+    // An upload usually covers some exam sessions, so deleteMissing only
+    // reaches sessions (exam date and time) that have rows in it; a restore
+    // replaces the whole roster and passes allSessions.
+    private RosterDiff planDiff(List<Student> incoming, boolean deleteMissing, boolean allSessions) {
+        ensureOpen();
+        RosterDiff diff = new RosterDiff();
+        Map<String, Student> byKey = new LinkedHashMap<>();
+        for (Student student : incoming) {
+            byKey.put(rowKey(student), student);
+        }
+        for (Map.Entry<String, Student> entry : byKey.entrySet()) {
+            Long stored = rowHashes.get(entry.getKey());
+            if (stored == null) {
+                diff.addInsert(entry.getValue());
+            } else if (stored != contentHash(entry.getValue())) {
+                diff.addUpdate(entry.getValue());
+            } else {
+                diff.addUnchanged();
+            }
+        }
+        if (deleteMissing) {
+            Set<String> sessions = new HashSet<>();
+            for (Student student : incoming) {
+                sessions.add(sessionKey(student));
+            }
+            for (NavigableMap<String, Student> sittings : fallbackMap.values()) {
+                for (Student student : sittings.values()) {
+                    if (!byKey.containsKey(rowKey(student))
+                            && (allSessions || sessions.contains(sessionKey(student)))) {
+                        diff.addDelete(student);
+                    }
+                }
+            }
+        }
+        return diff;
+    }
+
+    // Applies only the changed rows in one batch; versions are bumped only for
+    // the affected rolls, so every other cached page stays valid.
+    public boolean applyDiff(RosterDiff diff) {
+        if (isReadOnly()) {
+            return false;
+        }
+        ensureOpen();
+        if (diff.isEmpty()) {
+            return true;
+        }
+        List<Student> upserts = new ArrayList<>(diff.getInserts());
+        upserts.addAll(diff.getUpdates());
+        List<Student> changed = changedSittings(upserts);
+        if (changed != null) {
+            changed.addAll(diff.getDeletes());
+        }
+        boolean ok = true;
+        WriteBehindQueue queue = writeBehind;
+        if (queue != null) {
+            for (Student student : upserts) {
+                ok &= enqueue(queue, student, false);
+            }
+            for (Student student : diff.getDeletes()) {
+                ok &= enqueue(queue, student, true);
+            }
+        } else {
+            ok = applyBatch(upserts, diff.getDeletes());
+        }
+        for (Student student : upserts) {
+            bumpVersion(student.getRollNumber());
+        }
+        if (ok) {
+            afterUpserts(upserts);
+        }
+        for (Student student : diff.getDeletes()) {
+            bumpVersion(student.getRollNumber());
+            if (ok) {
+                afterDelete(student);
+            }
+        }
+        if (ok) {
+            written(upserts, diff.getDeletes());
+            notifyChanged(changed);
+        }
+        return ok;
+    }
+
+    private boolean enqueue(WriteBehindQueue queue, Student student, boolean delete) {
+        try {
+            WriteBehindQueue.Pending op = delete ? queue.submitDelete(student) : queue.submitUpsert(student);
+            return !writeBehindDurable || queue.awaitCommitted(op);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // Applies one coalesced batch: a single transaction on sqlite, a single
+    // file rewrite on the text fallback.
+    private boolean applyBatch(List<Student> upserts, List<Student> deletes) {
         if (!sqliteAvailable) {
-            fallbackMap.put(student.getRollNumber(), student);
-            return appendToFallbackFile(student);
+            changeFallback(() -> {
+                for (Student student : upserts) {
+                    putSitting(fallbackMap, student);
+                }
+                for (Student student : deletes) {
+                    removeSitting(fallbackMap, student);
+                }
+            });
+            return rewriteFallbackFile();
+        }
+        StringBuilder script = new StringBuilder("BEGIN;");
+        for (Student student : upserts) {
+            script.append(upsertSql(student));
         }
-        String sql = "INSERT OR REPLACE INTO students " +
+        for (Student student : deletes) {
+            script.append(deleteSittingSql(student));
+        }
+        script.append("COMMIT;");
+        return runSql(script.toString());
+    }
+
+    // Writer thread: a batch is journaled only after it has committed.
+    private boolean applyQueuedBatch(List<Student> upserts, List<Student> deletes) {
+        boolean ok = applyBatch(upserts, deletes);
+        if (ok) {
+            journal(upserts, deletes);
+        }
+        return ok;
+    }
+
+    private boolean upsertSqlite(Student student) {
+        return runSql(upsertSql(student));
+    }
+
+    private String upsertSql(Student student) {
+        return "INSERT OR REPLACE INTO students " +
                 "(roll, room, floor, seat, exam_name, exam_date, exam_time) VALUES (" +
                 "'" + escapeSql(student.getRollNumber()) + "'," +
                 "'" + escapeSql(student.getRoom()) + "'," +
@@ -158,61 +1116,115 @@ public class SeatingDatabase {
                 "'" + escapeSql(student.getExamDate()) + "'," +
                 "'" + escapeSql(student.getExamTime()) + "'" +
                 ");";
-        return runSql(sql);
     }
 
+    private String deleteSittingSql(Student student) {
+        return "DELETE FROM students WHERE roll = '" + escapeSql(student.getRollNumber()) + "'" +
+                " AND exam_date = '" + escapeSql(student.getExamDate()) + "'" +
+                " AND exam_time = '" + escapeSql(student.getExamTime()) + "';";
+    }
+
+    // Deletes every sitting of the roll.
     public boolean deleteStudent(String rollNumber) {
         if (rollNumber == null || rollNumber.isBlank()) {
             return false;
         }
+        if (isReadOnly()) {
+            return false;
+        }
+        ensureOpen();
         String key = rollNumber.trim();
-        if (!sqliteAvailable) {
-            Student removed = fallbackMap.remove(key);
-            return removed != null && rewriteFallbackFile();
+        List<Student> sittings = new ArrayList<>(getSittings(key).values());
+        boolean ok;
+        WriteBehindQueue queue = writeBehind;
+        if (queue != null) {
+            ok = !sittings.isEmpty();
+            for (Student student : sittings) {
+                ok &= enqueue(queue, student, true);
+            }
+        } else if (!sqliteAvailable) {
+            fallbackWrites.incrementAndGet();
+            NavigableMap<String, Student> removed = fallbackMap.remove(key);
+            invalidateLookupIndex();
+            ok = removed != null && rewriteFallbackFile();
+        } else {
+            String sql = "DELETE FROM students WHERE roll = '" + escapeSql(key) + "';";
+            ok = runSql(sql);
+        }
+        bumpVersion(key);
+        if (ok) {
+            for (Student student : sittings) {
+                afterDelete(student);
+            }
+            written(List.of(), sittings);
+            notifyChanged(sittings);
+        }
+        return ok;
+    }
+
+    // Deletes one sitting and keeps the roll's others.
+    public boolean deleteSitting(String rollNumber, String examDate, String examTime) {
+        if (isReadOnly()) {
+            return false;
+        }
+        Student student = getStudent(rollNumber, examDate, examTime);
+        if (student == null) {
+            return false;
         }
-        String sql = "DELETE FROM students WHERE roll = '" + escapeSql(key) + "';";
-        return runSql(sql);
+        boolean ok;
+        WriteBehindQueue queue = writeBehind;
+        if (queue != null) {
+            ok = enqueue(queue, student, true);
+        } else if (!sqliteAvailable) {
+            changeFallback(() -> removeSitting(fallbackMap, student));
+            ok = rewriteFallbackFile();
+        } else {
+            ok = runSql(deleteSittingSql(student));
+        }
+        bumpVersion(student.getRollNumber());
+        if (ok) {
+            afterDelete(student);
+            written(List.of(), List.of(student));
+            notifyChanged(List.of(student));
+        }
+        return ok;
     }
 
     private void loadFallbackData() {
         loadDataIfPresent(fallbackFilePath);
-        loadDataIfPresent(Path.of("data", "seating.txt"));
+        if (legacyFilePath != null) {
+            loadDataIfPresent(legacyFilePath);
+        }
     }
 
     private boolean appendToFallbackFile(Student student) {
+        return appendToFallbackFile(List.of(student));
+    }
+
+    private boolean appendToFallbackFile(List<Student> students) {
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(fallbackFilePath.toFile(), true))) {
-            writer.write(String.join(",",
-                    student.getRollNumber(),
-                    student.getRoom(),
-                    student.getFloor(),
-                    student.getSeatNumber(),
-                    student.getExamName(),
-                    student.getExamDate(),
-                    student.getExamTime()));
-            writer.newLine();
+            for (Student student : students) {
+                writer.write(toCsvRow(student));
+                writer.newLine();
+            }
             return true;
         } catch (IOException e) {
-            System.out.println("Error saving fallback data: " + e.getMessage());
+            EventLog.error("storage", "Error saving fallback data: " + e.getMessage());
             return false;
         }
     }
 
     private boolean rewriteFallbackFile() {
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(fallbackFilePath.toFile(), false))) {
-            for (Student student : fallbackMap.values()) {
-                writer.write(String.join(",",
-                        student.getRollNumber(),
-                        student.getRoom(),
-                        student.getFloor(),
-                        student.getSeatNumber(),
-                        student.getExamName(),
-                        student.getExamDate(),
-                        student.getExamTime()));
-                writer.newLine();
+            for (NavigableMap<String, Student> sittings : fallbackMap.values()) {
+                for (Student student : sittings.values()) {
+                    writer.write(toCsvRow(student));
+                    writer.newLine();
+                }
             }
             return true;
         } catch (IOException e) {
-            System.out.println("Error rewriting fallback data: " + e.getMessage());
+            EventLog.error("storage", "Error rewriting fallback data: " + e.getMessage());
             return false;
         }
     }
@@ -225,15 +1237,36 @@ public class SeatingDatabase {
         if (!sqliteAvailable) {
             return null;
         }
+        if (!storageBreaker.allowRequest()) {
+            return null;
+        }
         List<String> output = new ArrayList<>();
-        ProcessBuilder builder = new ProcessBuilder(
-                "sqlite3",
-                "-csv",
-                dbPath.toString(),
-                sql
-        );
+        // Batch scripts can exceed the kernel's per-argument limit (128 KiB on
+        // Linux); those go to sqlite3 on stdin instead. The limit is in bytes,
+        // and a char is at most 3 UTF-8 bytes, so short scripts skip encoding.
+        boolean viaStdin = sql.length() > SQL_ARGUMENT_LIMIT / 3
+                && sql.getBytes(StandardCharsets.UTF_8).length > SQL_ARGUMENT_LIMIT;
+        ProcessBuilder builder = viaStdin
+                ? new ProcessBuilder("sqlite3", "-csv", dbPath.toString())
+                : new ProcessBuilder("sqlite3", "-csv", dbPath.toString(), sql);
+        long start = System.nanoTime();
+        AtomicBoolean timedOut = new AtomicBoolean();
+        ScheduledFuture<?> watchdog = null;
         try {
             Process process = builder.start();
+            watchdog = SQL_WATCHDOG.schedule(() -> {
+                if (process.isAlive()) {
+                    timedOut.set(true);
+                    process.destroyForcibly();
+                }
+            }, sqlTimeoutMillis, TimeUnit.MILLISECONDS);
+            if (viaStdin) {
+                try (Writer stdin = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8)) {
+                    stdin.write(sql);
+                }
+            } else {
+                process.getOutputStream().close();
+            }
             try (BufferedReader reader = new BufferedReader(
                     new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
                 String line;
@@ -241,18 +1274,51 @@ public class SeatingDatabase {
                     output.add(line);
                 }
             }
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                System.out.println("Error executing SQL: " + sql);
+            boolean exited = process.waitFor(sqlTimeoutMillis, TimeUnit.MILLISECONDS);
+            if (!exited || timedOut.get()) {
+                process.destroyForcibly();
+                sqlTimeouts.increment();
+                storageBreaker.recordFailure();
+                EventLog.error("storage", "SQL timed out after " + sqlTimeoutMillis + " ms");
+                return null;
+            }
+            if (process.exitValue() != 0) {
+                sqlFailures.increment();
+                storageBreaker.recordFailure();
+                EventLog.error("storage", "Error executing SQL: " + sql);
                 return null;
             }
         } catch (IOException | InterruptedException e) {
-            System.out.println("Error executing SQL: " + e.getMessage());
+            sqlFailures.increment();
+            storageBreaker.recordFailure();
+            EventLog.error("storage", "Error executing SQL: " + e.getMessage());
             return null;
+        } finally {
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+            EventLog.addDbTime(System.nanoTime() - start);
         }
+        storageBreaker.recordSuccess();
         return output;
     }
 
+    public CircuitBreaker getStorageBreaker() {
+        return storageBreaker;
+    }
+
+    public long getSqlTimeoutMillis() {
+        return sqlTimeoutMillis;
+    }
+
+    public long getSqlTimeoutCount() {
+        return sqlTimeouts.sum();
+    }
+
+    public long getSqlFailureCount() {
+        return sqlFailures.sum();
+    }
+
     private boolean isSqliteAvailable() {
         ProcessBuilder builder = new ProcessBuilder("sqlite3", "-version");
         try {
@@ -271,7 +1337,24 @@ public class SeatingDatabase {
         return value.replace("'", "''");
     }
 
-    private String[] parseCsvRow(String row) {
+    // One roster row with every field quoted; the inverse of parseCsvRow.
+    static String toCsvRow(Student student) {
+        String[] fields = {
+                student.getRollNumber(), student.getRoom(), student.getFloor(), student.getSeatNumber(),
+                student.getExamName(), student.getExamDate(), student.getExamTime()
+        };
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            String value = fields[i] == null ? "" : fields[i];
+            sb.append('"').append(value.replace("\"", "\"\"")).append('"');
+        }
+        return sb.toString();
+    }
+
+    static String[] parseCsvRow(String row) {
         if (row == null) {
             return new String[0];
         }
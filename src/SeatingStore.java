@@ -0,0 +1,81 @@
+// SeatingStore.java
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+// What the server needs from seating storage. SeatingDatabase is one store;
+// ShardedSeatingStore routes each roll to one of several.
+public interface SeatingStore {
+    void open();
+
+    boolean isReady();
+
+    // Flushes queued writes; safe to call more than once.
+    void close();
+
+    // The underlying databases, for per-shard metrics; one for a plain store.
+    List<SeatingDatabase> getShards();
+
+    // The shard that owns a roll; this store itself when it is not sharded.
+    SeatingDatabase shardFor(String rollNumber);
+
+    Map<String, Long> getStartupPhases();
+
+    // Makes this a read replica: local storage is never opened, writes are
+    // refused, and reads fail as not ready until installSnapshot().
+    void setReplica();
+
+    void installSnapshot(long version, List<Student> students);
+
+    long getSnapshotVersion();
+
+    boolean isReadOnly();
+
+    String getDataVersion(String rollNumber);
+
+    String getCurrentSittingKey(String rollNumber);
+
+    // Grows with every write anywhere in the store.
+    long getGlobalDataVersion();
+
+    void rebuildLookupIndex();
+
+    int getLookupIndexSize();
+
+    long getLookupIndexBuildMillis();
+
+    int getPendingWriteCount();
+
+    List<String> completeRolls(String prefix, int limit);
+
+    List<String> suggestRolls(String roll, int limit);
+
+    Student currentSitting(NavigableMap<String, Student> sittings);
+
+    Student getStudent(String rollNumber);
+
+    Student getStudent(String rollNumber, String examDate, String examTime);
+
+    NavigableMap<String, Student> getSittings(String rollNumber);
+
+    List<Student> getAllStudents();
+
+    void setChangeListener(SeatingDatabase.ChangeListener listener);
+
+    boolean addStudent(Student student);
+
+    boolean addStudents(List<Student> students);
+
+    RosterDiff planDiff(List<Student> incoming, boolean deleteMissing);
+
+    boolean applyDiff(RosterDiff diff);
+
+    // Changes that take the roster back to the given time, from the change
+    // journal; null when the journal is off or does not reach back that far.
+    RosterDiff planRestore(long epochMillis) throws IOException;
+
+    boolean deleteStudent(String rollNumber);
+
+    boolean deleteSitting(String rollNumber, String examDate, String examTime);
+}
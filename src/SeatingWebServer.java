@@ -1,51 +1,895 @@
 import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpExchange;
 import java.io.*;
+import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
-import java.net.URLDecoder;
+import java.net.URL;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class SeatingWebServer {
-    private static SeatingDatabase db;
+    private static SeatingStore db;
+    private static RosterSnapshots snapshots;
+    private static ScheduledExecutorService snapshotExecutor;
+    private static boolean snapshotPrimary;
+    private static final AtomicBoolean publishPending = new AtomicBoolean();
+    // Static-site export (SEATING_EXPORT_DIR); null when disabled.
+    private static StaticSiteExporter siteExporter;
+    private static ScheduledExecutorService exportExecutor;
+    private static final AtomicBoolean exportPending = new AtomicBoolean();
+    private static final SessionArchive sessionArchive = new SessionArchive(Path.of("data", "archive"));
+    // Room layouts and their floor plans (SEATING_ROOMS_FILE).
+    private static RoomRegistry rooms;
+    private static final RoomSheetGenerator roomSheets =
+            new RoomSheetGenerator(Path.of("data", "sheets"), (room, floor) -> rooms.lookup(room, floor));
+    private static final AtomicLong requestIds = new AtomicLong();
+    // One lock per shard for routes that change the roster. A write takes
+    // the locks of the shards it touches in getShards() order, so writes
+    // spanning shards cannot deadlock, and one institution's import leaves
+    // the other institutions' admin writes alone; see withShardLocks.
+    private static final Map<String, ReentrantLock> shardLocks = new ConcurrentHashMap<>();
+    // Held while room sheets are generated and zipped.
+    private static final Object sheetLock = new Object();
+    private static RateLimiter rateLimiter;
+    // Request counters per matched route pattern, for /metrics.
+    private static final Map<String, RouteStats> routeStats = new ConcurrentHashMap<>();
+    // Differential uploads waiting for the admin to confirm the preview.
+    private static final Map<String, PendingDiff> pendingDiffs = new ConcurrentHashMap<>();
+    private static final long PENDING_DIFF_TTL_MS = 15 * 60 * 1000L;
+    private static final int DIFF_PREVIEW_ROWS = 50;
+    private static final CsvIngestPipeline csvPipeline = new CsvIngestPipeline(
+            AppConfig.intValue("SEATING_CSV_WORKERS", Runtime.getRuntime().availableProcessors()),
+            AppConfig.intValue("SEATING_CSV_CHUNK_LINES", 2000),
+            AppConfig.intValue("SEATING_CSV_BATCH_ROWS", 5000),
+            10_000);
+    // Per-line error reports of recent uploads, downloadable from the admin page.
+    private static final Map<String, UploadReport> uploadReports = new ConcurrentHashMap<>();
+    private static final int UPLOAD_ERRORS_SHOWN = 20;
+    private static final Map<String, Long> serverPhases = Collections.synchronizedMap(new LinkedHashMap<>());
+    // /ready stays 503 until warmUp() has run once.
+    private static volatile boolean warmedUp;
+    private static final AtomicBoolean warmUpStarted = new AtomicBoolean();
+    private static volatile long warmUpMillis;
+    private static volatile int warmUpRollsPrimed;
+    private static volatile int warmUpRequests;
+    private static volatile boolean warmUpBudgetExhausted;
+    private static int serverPort;
+    private static final String WARMUP_HEADER = "X-Seating-Warmup";
+    // Random per process: only this server's own warm-up requests know it,
+    // so neither a client nor a proxy on the same host can pass for one.
+    private static final String WARMUP_TOKEN = UUID.randomUUID().toString();
+    // Occupancy and search rollups per session and room, for /admin/stats.
+    private static final SeatStats seatStats = new SeatStats();
+    // Live seat-change stream for kiosk displays, fed by the database.
+    private static final SeatEventHub seatEvents = new SeatEventHub(
+            AppConfig.intValue("SEATING_EVENTS_MAX_SUBSCRIBERS", 1000),
+            AppConfig.intValue("SEATING_EVENTS_QUEUE", 64),
+            AppConfig.longValue("SEATING_EVENTS_FLUSH_MS", 250L),
+            AppConfig.longValue("SEATING_EVENTS_HEARTBEAT_MS", 15_000L));
+    private static FloorPlanImages floorPlans;
+    private static SeatOverlayCache seatOverlays;
+    // QR seat slips (SEATING_SLIPS); null when disabled.
+    private static SeatSlipCache seatSlips;
+    private static ScheduledExecutorService slipExecutor;
+    private static final AtomicBoolean slipsPending = new AtomicBoolean();
+    private static final String PUBLIC_URL = AppConfig.get("SEATING_PUBLIC_URL", "").replaceAll("/+$", "");
+    // Result page links for the live server's routes.
+    private static final ResultLinks LIVE_LINKS = new ResultLinks() {
+        @Override
+        public String home() {
+            return "/";
+        }
 
-    // Optional: per-room seat counts. Defaults to 48 if not listed.
-    private static final Map<String, Integer> ROOM_SEAT_COUNTS = new HashMap<>();
-    static {
-        ROOM_SEAT_COUNTS.put("room-101", 48);
-        ROOM_SEAT_COUNTS.put("room-102", 48);
-        ROOM_SEAT_COUNTS.put("room-201", 48);
-    }
+        @Override
+        public String sitting(Student sitting) {
+            return "/search?roll=" + URLEncoder.encode(sitting.getRollNumber(), StandardCharsets.UTF_8) +
+                    "&date=" + URLEncoder.encode(String.valueOf(sitting.getExamDate()), StandardCharsets.UTF_8) +
+                    "&time=" + URLEncoder.encode(String.valueOf(sitting.getExamTime()), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String floorPlan(FloorPlanImages.Plan plan, FloorPlanImages.Variant variant, String seat) {
+            return "/floorplans/" + plan.getKey() + "/" + variant.getWidth() + "?v=" + plan.getVersion() +
+                    (seat != null ? "&amp;seat=" + URLEncoder.encode(seat, StandardCharsets.UTF_8) : "");
+        }
+
+        @Override
+        public String slip(Student sitting) {
+            // The roll goes in the query, where form encoding round-trips; the
+            // path is decoded before routing, so a '+' or '/' there breaks it.
+            return seatSlips == null ? null : "/slips?roll=" + URLEncoder.encode(sitting.getRollNumber(), StandardCharsets.UTF_8) +
+                    "&amp;date=" + URLEncoder.encode(String.valueOf(sitting.getExamDate()), StandardCharsets.UTF_8) +
+                    "&amp;time=" + URLEncoder.encode(String.valueOf(sitting.getExamTime()), StandardCharsets.UTF_8);
+        }
+    };
 
     public static void main(String[] args) throws Exception {
-        db = new SeatingDatabase("data/seating.db");
-
-        HttpServer server = HttpServer.create(new InetSocketAddress(8080), 0);
-        server.createContext("/", SeatingWebServer::handleLandingPage);
-        server.createContext("/search", SeatingWebServer::handleSearch);
-        server.createContext("/admin/login", SeatingWebServer::handleAdminLogin);
-        server.createContext("/admin/logout", SeatingWebServer::handleAdminLogout);
-        server.createContext("/admin", SeatingWebServer::handleAdminPage);
-        server.createContext("/admin/add", SeatingWebServer::handleAdminAdd);
-        server.createContext("/admin/upload", SeatingWebServer::handleAdminUpload);
-        server.createContext("/admin/delete", SeatingWebServer::handleAdminDelete);
-        server.setExecutor(null);
-        System.out.println("Server running at http://localhost:8080/");
+        long bootStart = System.nanoTime();
+        // Fast-start binds the port first and opens storage in the background;
+        // /ready reports 503 until the data is loaded.
+        // "--export <dir>" writes the static site once and exits.
+        boolean exportOnly = args.length >= 2 && "--export".equals(args[0]);
+        boolean fastStart = AppConfig.flag("SEATING_FAST_START", false) && !exportOnly;
+        // SEATING_ROLE=primary publishes roster snapshots after every change;
+        // replica serves read-only from the newest published snapshot.
+        String role = AppConfig.get("SEATING_ROLE", "standalone").toLowerCase();
+        boolean replica = "replica".equals(role);
+        // SEATING_SHARDS="north=NC,NCE;south=SC" keeps each institution's rolls
+        // in a store of its own; see ShardedSeatingStore.
+        String shards = AppConfig.get("SEATING_SHARDS", "");
+        db = shards.isBlank()
+                ? new SeatingDatabase("data/seating.db", fastStart || replica)
+                : new ShardedSeatingStore(shards, "data/seating.db", fastStart || replica);
+        if (replica) {
+            db.setReplica();
+        }
+        db.setChangeListener(new SeatingDatabase.ChangeListener() {
+            @Override
+            public void sittingsChanged(List<Student> sittings) {
+                seatEvents.sittingsChanged(sittings);
+            }
+
+            @Override
+            public void rowsWritten(List<Student> upserts, List<Student> deletes) {
+                seatStats.rowsWritten(upserts, deletes);
+            }
+        });
+        // Queued write-behind mutations are flushed before the JVM exits.
+        Runtime.getRuntime().addShutdownHook(new Thread(db::close, "seating-shutdown"));
+        if ("primary".equals(role) || replica) {
+            snapshots = new RosterSnapshots(Path.of(AppConfig.get("SEATING_SNAPSHOT_DIR", "data/snapshots")),
+                    AppConfig.intValue("SEATING_SNAPSHOT_KEEP", 10));
+            snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "roster-snapshots");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshotPrimary = !replica;
+        }
+
+        // Floor plans are decoded once and served in several widths; a timer
+        // picks up replaced files.
+        System.setProperty("java.awt.headless", "true");
+        floorPlans = new FloorPlanImages(Path.of("static"),
+                parseWidths(AppConfig.get("SEATING_FLOORPLAN_WIDTHS", "320,640,1024")),
+                AppConfig.intValue("SEATING_FLOORPLAN_JPEG_QUALITY", 80) / 100f);
+        ScheduledExecutorService floorPlanRefresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "floorplan-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long floorPlanPollMs = AppConfig.longValue("SEATING_FLOORPLAN_POLL_MS", 30_000L);
+        if (!fastStart) {
+            long decodeStart = System.nanoTime();
+            floorPlans.refresh();
+            serverPhases.put("floorplans", (System.nanoTime() - decodeStart) / 1_000_000L);
+        }
+        // The room registry is indexed here and again whenever its file or
+        // the floor plans change, so a search never touches the filesystem.
+        rooms = new RoomRegistry(Path.of(AppConfig.get("SEATING_ROOMS_FILE", "data/rooms.txt")), floorPlans,
+                AppConfig.intValue("SEATING_DEFAULT_ROOM_SEATS", 48));
+        rooms.refresh();
+        floorPlanRefresher.scheduleWithFixedDelay(() -> {
+            floorPlans.refresh();
+            rooms.refresh();
+        }, fastStart ? 0 : floorPlanPollMs, floorPlanPollMs, TimeUnit.MILLISECONDS);
+        // Plans with the student's seat marked: rendered once, then served from
+        // an LRU cache; seats in sittings that start soon are rendered ahead.
+        seatOverlays = new SeatOverlayCache(AppConfig.longValue("SEATING_OVERLAY_CACHE_MB", 64L) * 1024 * 1024,
+                AppConfig.intValue("SEATING_FLOORPLAN_JPEG_QUALITY", 80) / 100f);
+        String exportDir = exportOnly ? args[1] : AppConfig.get("SEATING_EXPORT_DIR", "");
+        if (!exportDir.isBlank()) {
+            siteExporter = new StaticSiteExporter(Path.of(exportDir), EXPORT_RENDERER, seatOverlays,
+                    AppConfig.intValue("SEATING_EXPORT_WORKERS", Runtime.getRuntime().availableProcessors()));
+        }
+        if (exportOnly) {
+            StaticSiteExporter.Result result = siteExporter.export(db.getAllStudents(), db, renderVersion());
+            EventLog.info("export", "Exported static site to " + exportDir + ": " + result);
+            System.exit(0);
+        }
+        if (siteExporter != null) {
+            exportExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "site-export");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // Re-run now and then even without changes: which sitting a
+            // roll's page shows first moves as exams start and end.
+            long exportIntervalMs = AppConfig.longValue("SEATING_EXPORT_INTERVAL_MS", 900_000L);
+            if (exportIntervalMs > 0) {
+                exportExecutor.scheduleWithFixedDelay(SeatingWebServer::scheduleExport,
+                        exportIntervalMs, exportIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (AppConfig.flag("SEATING_SLIPS", true)) {
+            seatSlips = new SeatSlipCache(SeatingWebServer::slipPayload,
+                    AppConfig.intValue("SEATING_SLIP_WORKERS", Runtime.getRuntime().availableProcessors()));
+            slipExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "seat-slips");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        long prerenderMs = AppConfig.longValue("SEATING_OVERLAY_PRERENDER_MS", 300_000L);
+        if (prerenderMs > 0 && !replica) {
+            floorPlanRefresher.scheduleWithFixedDelay(SeatingWebServer::prerenderSeatOverlays,
+                    fastStart ? prerenderMs : 0, prerenderMs, TimeUnit.MILLISECONDS);
+        }
+
+        long bindStart = System.nanoTime();
+        // Without TCP_NODELAY a response written as headers then body waits
+        // out the client's delayed ACK (~40 ms) on keep-alive connections.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        int port = AppConfig.intValue("PORT", 8080);
+        serverPort = port;
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        // SEATING_RATE_LIMIT_PER_MINUTE caps searches and logins per client
+        // address; 0 (the default) leaves them unlimited.
+        rateLimiter = new RateLimiter(AppConfig.intValue("SEATING_RATE_LIMIT_PER_MINUTE", 0),
+                AppConfig.intValue("SEATING_RATE_LIMIT_BURST", 20),
+                AppConfig.flag("SEATING_TRUST_FORWARDED_FOR", false)
+                        ? AppConfig.intValue("SEATING_TRUSTED_PROXY_HOPS", 1) : 0,
+                request -> isWarmUpRequest(request.getExchange()));
+        Router.Middleware admin = SeatingWebServer::requireAdmin;
+        // Archive and restore read the whole roster and write it back.
+        Router.Middleware allShards = (request, next) -> withShardLocks(null, () -> {
+            next.handle(request);
+            return null;
+        });
+        Router.Middleware sheets = (request, next) -> {
+            synchronized (sheetLock) {
+                next.handle(request);
+            }
+        };
+        Router router = new Router()
+                .use(SeatingWebServer::instrument)
+                .use(Router.compression(AppConfig.intValue("SEATING_GZIP_MIN_BYTES", 1024)));
+        router.route("/", SeatingWebServer::handleLandingPage)
+                .route("/ready", SeatingWebServer::handleReady)
+                .route("/metrics", SeatingWebServer::handleMetrics)
+                .route("/search", SeatingWebServer::handleSearch, rateLimiter)
+                .route("/api/v1/rolls", SeatingWebServer::handleRollCompletions, rateLimiter)
+                .route("/events", SeatingWebServer::handleEvents)
+                .route("/floorplans/{plan}/{width}", SeatingWebServer::handleFloorPlan)
+                .route("/slips", SeatingWebServer::handleSlip)
+                .route("/slips/{roll}", SeatingWebServer::handleSlip)
+                .route("/admin/login", SeatingWebServer::handleAdminLogin, rateLimiter)
+                .route("/admin/logout", SeatingWebServer::handleAdminLogout)
+                .route("/admin", SeatingWebServer::handleAdminPage, admin)
+                .route("/admin/add", SeatingWebServer::handleAdminAdd, admin)
+                .route("/admin/upload", SeatingWebServer::handleAdminUpload, admin)
+                .route("/admin/upload/commit", SeatingWebServer::handleAdminUploadCommit, admin)
+                .route("/admin/upload/report", SeatingWebServer::handleAdminUploadReport, admin)
+                .route("/admin/delete", SeatingWebServer::handleAdminDelete, admin)
+                .route("/admin/sheets", SeatingWebServer::handleAdminSheets, admin, sheets)
+                .route("/admin/archive", SeatingWebServer::handleAdminArchive, admin, allShards)
+                .route("/admin/restore", SeatingWebServer::handleAdminRestore, admin, allShards)
+                .route("/admin/stats", SeatingWebServer::handleAdminStats, admin);
+        server.createContext("/", router);
+        // SEATING_HTTP_THREADS handlers run at once (default two per core), so
+        // a long upload does not hold up searches; up to SEATING_HTTP_QUEUE
+        // more connections wait, and past that the accepting thread handles
+        // the request itself, which slows accepting down.
+        int httpThreads = Math.max(1, AppConfig.intValue("SEATING_HTTP_THREADS",
+                Runtime.getRuntime().availableProcessors() * 2));
+        AtomicLong httpThreadIds = new AtomicLong();
+        ThreadPoolExecutor httpExecutor = new ThreadPoolExecutor(httpThreads, httpThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, AppConfig.intValue("SEATING_HTTP_QUEUE", 1000))),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "http-" + httpThreadIds.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        httpExecutor.allowCoreThreadTimeOut(true);
+        server.setExecutor(httpExecutor);
         server.start();
+        serverPhases.put("bind", (System.nanoTime() - bindStart) / 1_000_000L);
+        EventLog.info("server", "Server running at http://localhost:" + port + "/");
+
+        // SEATING_ARCHIVE_AFTER_DAYS moves sessions older than that many days to
+        // data/archive once a day; unset keeps everything in the hot store.
+        int archiveAfterDays = AppConfig.intValue("SEATING_ARCHIVE_AFTER_DAYS", -1);
+        if (archiveAfterDays >= 0 && !replica) {
+            ScheduledExecutorService archiver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "session-archiver");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // Same locks as /admin/archive: a row re-written by an upload after
+            // it was copied to the archive must not then be deleted.
+            archiver.scheduleWithFixedDelay(() -> withShardLocks(null,
+                            () -> archiveSessions(LocalDate.now().minusDays(archiveAfterDays))),
+                    0, 1, TimeUnit.DAYS);
+        }
+
+        if (replica) {
+            long pollMs = AppConfig.longValue("SEATING_SNAPSHOT_POLL_MS", 5000L);
+            snapshotExecutor.scheduleWithFixedDelay(SeatingWebServer::pollSnapshot, 0, pollMs, TimeUnit.MILLISECONDS);
+        } else if (fastStart) {
+            Thread loader = new Thread(() -> {
+                db.open();
+                seatStats.rebuild(db::getAllStudents);
+                warmUp();
+                reportStartup(bootStart);
+                onRosterChanged();
+            }, "seating-db-open");
+            loader.setDaemon(true);
+            loader.start();
+        } else {
+            seatStats.rebuild(db::getAllStudents);
+            warmUp();
+            reportStartup(bootStart);
+            onRosterChanged();
+        }
+    }
+
+    private static int archiveSessions(LocalDate cutoff) {
+        try {
+            int moved = sessionArchive.archiveBefore(db, cutoff);
+            if (moved > 0) {
+                onRosterChanged();
+            }
+            return moved;
+        } catch (IOException | RuntimeException e) {
+            EventLog.error("archive", "Error archiving sessions: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    private interface LockedWrite<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    // Runs write holding the locks of the shards that own rolls, or of every
+    // shard when rolls is null.
+    private static <T, E extends Exception> T withShardLocks(Collection<String> rolls, LockedWrite<T, E> write) throws E {
+        Set<SeatingDatabase> touched = null;
+        if (rolls != null) {
+            touched = new HashSet<>();
+            for (String roll : rolls) {
+                touched.add(db.shardFor(roll));
+            }
+        }
+        List<ReentrantLock> held = new ArrayList<>();
+        try {
+            for (SeatingDatabase shard : db.getShards()) {
+                if (touched == null || touched.contains(shard)) {
+                    ReentrantLock lock = shardLocks.computeIfAbsent(shard.getName(), k -> new ReentrantLock());
+                    lock.lock();
+                    held.add(lock);
+                }
+            }
+            return write.run();
+        } finally {
+            for (int i = held.size() - 1; i >= 0; i--) {
+                held.get(i).unlock();
+            }
+        }
+    }
+
+    // Called after any successful admin mutation.
+    private static void onRosterChanged() {
+        schedulePublish();
+        scheduleExport();
+        scheduleSlips();
+    }
+
+    // Re-encodes slips for whatever changed, so /search only links to codes
+    // that already exist. Like schedulePublish, bursts collapse into one run.
+    private static void scheduleSlips() {
+        if (seatSlips == null || !slipsPending.compareAndSet(false, true)) {
+            return;
+        }
+        slipExecutor.execute(() -> {
+            slipsPending.set(false);
+            if (!db.isReady()) {
+                return;
+            }
+            try {
+                long version = db.getGlobalDataVersion();
+                int encoded = seatSlips.pregenerate(db.getAllStudents(), version);
+                EventLog.info("slips", "Seat slips at data version " + version + ": " + encoded + " encoded, " +
+                        seatSlips.size() + " cached in " + seatSlips.getLastPregenerateMillis() + " ms");
+            } catch (RuntimeException e) {
+                EventLog.error("slips", "Error generating seat slips: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    // What a slip's QR code says: a link to the sitting's page when
+    // SEATING_PUBLIC_URL is set, otherwise the seat itself as plain text,
+    // which any phone scanner shows without network access.
+    private static String slipPayload(Student sitting) {
+        if (!PUBLIC_URL.isEmpty()) {
+            return PUBLIC_URL + LIVE_LINKS.sitting(sitting);
+        }
+        return "Roll: " + sitting.getRollNumber() +
+                "\nExam: " + nullToEmpty(sitting.getExamName()) +
+                "\nDate: " + nullToEmpty(sitting.getExamDate()) + " " + nullToEmpty(sitting.getExamTime()) +
+                "\nRoom: " + nullToEmpty(sitting.getRoom()) +
+                "\nFloor: " + nullToEmpty(sitting.getFloor()) +
+                "\nSeat: " + nullToEmpty(sitting.getSeatNumber());
+    }
+
+    // What result pages depend on besides the roster.
+    private static String renderVersion() {
+        return floorPlans.getVersion() + "." + rooms.getVersion();
+    }
+
+    // Like schedulePublish, but waits SEATING_EXPORT_DELAY_MS first so an
+    // upload followed by a few edits costs one export, not several.
+    private static void scheduleExport() {
+        if (siteExporter == null || !exportPending.compareAndSet(false, true)) {
+            return;
+        }
+        exportExecutor.schedule(() -> {
+            exportPending.set(false);
+            if (!db.isReady()) {
+                return;
+            }
+            try {
+                StaticSiteExporter.Result result = siteExporter.export(db.getAllStudents(), db, renderVersion());
+                EventLog.info("export", "Exported static site: " + result);
+            } catch (IOException | RuntimeException e) {
+                EventLog.error("export", "Error exporting static site: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, AppConfig.longValue("SEATING_EXPORT_DELAY_MS", 5000L), TimeUnit.MILLISECONDS);
+    }
+
+    // Bursts of edits collapse into one publish: only one task is queued at a time.
+    private static void schedulePublish() {
+        if (!snapshotPrimary || !publishPending.compareAndSet(false, true)) {
+            return;
+        }
+        snapshotExecutor.execute(() -> {
+            publishPending.set(false);
+            try {
+                long version = snapshots.publish(db.getAllStudents());
+                EventLog.info("snapshots", "Published roster snapshot v" + version);
+            } catch (IOException | RuntimeException e) {
+                EventLog.error("snapshots", "Error publishing roster snapshot: " + e.getMessage());
+            }
+        });
+    }
+
+    private static void pollSnapshot() {
+        try {
+            if (snapshots.readLatestVersion() <= db.getSnapshotVersion()) {
+                return;
+            }
+            RosterSnapshots.Snapshot snapshot = snapshots.readLatest();
+            if (snapshot != null && snapshot.getVersion() > db.getSnapshotVersion()) {
+                db.installSnapshot(snapshot.getVersion(), snapshot.getStudents());
+                seatStats.rebuild(snapshot::getStudents);
+                // A snapshot carries no per-room diff; displays refetch.
+                seatEvents.publishReload();
+                scheduleExport();
+                scheduleSlips();
+                // A replica warms up on its first snapshot.
+                warmUp();
+                EventLog.info("snapshots", "Installed roster snapshot v" + snapshot.getVersion() +
+                        " (" + snapshot.getStudents().size() + " students)");
+            }
+        } catch (IOException | RuntimeException e) {
+            EventLog.error("snapshots", "Error loading roster snapshot: " + e.getMessage());
+        }
+    }
+
+    // Runs once, after the data is loaded and before /ready reports 200, so
+    // the first students after a deploy do not pay for cold caches and an
+    // unwarmed JIT: floor plans decoded, the lookup index built, every roll
+    // with a sitting today or in the next SEATING_WARMUP_HORIZON_HOURS looked
+    // up and rendered, their seat overlays drawn, and then synthetic searches
+    // sent through the real HTTP stack. Steps stop at the SEATING_WARMUP_MS
+    // budget; readiness is reported either way.
+    private static void warmUp() {
+        if (!warmUpStarted.compareAndSet(false, true)) {
+            return;
+        }
+        long start = System.nanoTime();
+        long budgetMs = AppConfig.longValue("SEATING_WARMUP_MS", 15_000L);
+        long deadline = start + budgetMs * 1_000_000L;
+        try {
+            if (budgetMs <= 0) {
+                return;
+            }
+            if (floorPlans.getPlanCount() == 0) {
+                floorPlans.refresh();
+                rooms.refresh();
+            }
+            if (db.getLookupIndexSize() == 0) {
+                db.rebuildLookupIndex();
+            }
+            List<String> rolls = upcomingRolls(AppConfig.longValue("SEATING_WARMUP_HORIZON_HOURS", 24L));
+            int primed = 0;
+            for (String roll : rolls) {
+                if (System.nanoTime() - deadline > 0) {
+                    break;
+                }
+                NavigableMap<String, Student> sittings = db.getSittings(roll);
+                Student student = db.currentSitting(sittings);
+                if (student != null) {
+                    renderSeatingResult(student, sittings, LIVE_LINKS);
+                    primed++;
+                }
+            }
+            warmUpRollsPrimed = primed;
+            prerenderSeatOverlays(deadline);
+            warmUpRequests = sendWarmUpSearches(rolls, deadline);
+        } catch (RuntimeException e) {
+            EventLog.error("warmup", "Warm-up failed: " + e.getMessage());
+        } finally {
+            warmUpBudgetExhausted = budgetMs > 0 && System.nanoTime() - deadline > 0;
+            warmUpMillis = (System.nanoTime() - start) / 1_000_000L;
+            serverPhases.put("warmup", warmUpMillis);
+            warmedUp = true;
+            EventLog.info("warmup", "Warm-up done in " + warmUpMillis + " ms: " + warmUpRollsPrimed +
+                    " roll(s) primed, " + warmUpRequests + " synthetic search(es)" +
+                    (warmUpBudgetExhausted ? ", budget exhausted" : ""));
+        }
+    }
+
+    // Rolls with a sitting from today up to `hours` ahead, in start order.
+    private static List<String> upcomingRolls(long hours) {
+        LocalDateTime from = LocalDate.now().atStartOfDay();
+        LocalDateTime until = LocalDateTime.now().plusHours(hours);
+        Map<String, LocalDateTime> firstStart = new HashMap<>();
+        for (Student student : db.getAllStudents()) {
+            LocalDate date = SessionArchive.parseDate(student.getExamDate());
+            LocalTime time = SeatingDatabase.parseStartTime(student.getExamTime());
+            if (date == null || time == null) {
+                continue;
+            }
+            LocalDateTime startsAt = date.atTime(time);
+            if (!startsAt.isBefore(from) && !startsAt.isAfter(until)) {
+                firstStart.merge(student.getRollNumber().trim(), startsAt, (a, b) -> a.isBefore(b) ? a : b);
+            }
+        }
+        List<String> rolls = new ArrayList<>(firstStart.keySet());
+        rolls.sort(Comparator.comparing(firstStart::get));
+        return rolls;
+    }
+
+    // Up to SEATING_WARMUP_REQUESTS searches against this server over
+    // loopback: upcoming rolls, else any rolls, with every tenth one a miss
+    // so the suggestion path is compiled too. Returns the number sent.
+    private static int sendWarmUpSearches(List<String> upcoming, long deadline) {
+        int limit = AppConfig.intValue("SEATING_WARMUP_REQUESTS", 500);
+        List<String> rolls = upcoming;
+        if (rolls.isEmpty()) {
+            rolls = new ArrayList<>();
+            for (Student student : db.getAllStudents()) {
+                if (rolls.size() >= limit) {
+                    break;
+                }
+                rolls.add(student.getRollNumber());
+            }
+        }
+        int sent = 0;
+        for (int i = 0; i < limit && System.nanoTime() - deadline < 0; i++) {
+            String roll = rolls.isEmpty() || i % 10 == 9 ? "WARMUP-" + i : rolls.get(i % rolls.size());
+            try {
+                HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + serverPort +
+                        "/search?roll=" + URLEncoder.encode(roll, StandardCharsets.UTF_8)).openConnection();
+                connection.setRequestProperty(WARMUP_HEADER, WARMUP_TOKEN);
+                connection.setConnectTimeout(2000);
+                connection.setReadTimeout(5000);
+                try (InputStream in = connection.getInputStream()) {
+                    in.readAllBytes();
+                }
+                sent++;
+            } catch (IOException e) {
+                EventLog.error("warmup", "Synthetic search failed: " + e.getMessage());
+                break;
+            }
+        }
+        return sent;
+    }
+
+    private static boolean isWarmUpRequest(HttpExchange exchange) {
+        String token = exchange.getRequestHeaders().getFirst(WARMUP_HEADER);
+        return token != null && MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                WARMUP_TOKEN.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void reportStartup(long bootStart) {
+        serverPhases.put("total", (System.nanoTime() - bootStart) / 1_000_000L);
+        StringBuilder sb = new StringBuilder("Startup phases (ms):");
+        for (Map.Entry<String, Long> phase : startupPhases().entrySet()) {
+            sb.append(' ').append(phase.getKey()).append('=').append(phase.getValue());
+        }
+        EventLog.info("server", sb.toString());
+    }
+
+    private static Map<String, Long> startupPhases() {
+        Map<String, Long> phases = new LinkedHashMap<>(db.getStartupPhases());
+        phases.putAll(serverPhases);
+        return phases;
+    }
+
+    // Outermost middleware: request id, access log (route, status, latency,
+    // storage time and the searched roll, hashed by the log writer) and the
+    // per-route counters behind /metrics.
+    private static void instrument(Router.Request request, Router.Handler next) throws IOException {
+        HttpExchange exchange = request.getExchange();
+        long start = System.nanoTime();
+        long requestId = requestIds.incrementAndGet();
+        exchange.getResponseHeaders().set("X-Request-Id", Long.toString(requestId));
+        EventLog.takeDbTimeMicros();
+        boolean failed = false;
+        try {
+            next.handle(request);
+        } catch (IOException | RuntimeException e) {
+            failed = true;
+            EventLog.error("http", "Request " + requestId + " failed: " + e);
+            throw e;
+        } finally {
+            long micros = (System.nanoTime() - start) / 1000L;
+            int status = exchange.getResponseCode();
+            String route = request.getRoute().isEmpty() ? "unmatched" : request.getRoute();
+            RouteStats stats = routeStats.computeIfAbsent(route, k -> new RouteStats());
+            stats.requests.increment();
+            stats.micros.add(micros);
+            if (failed || status >= 500) {
+                stats.errors.increment();
+            }
+            // Synthetic warm-up traffic from this process is left out.
+            if (!isWarmUpRequest(exchange)) {
+                EventLog.access(requestId, exchange.getRequestMethod(), route, status, micros,
+                        EventLog.takeDbTimeMicros(), request.query("roll"));
+            }
+        }
+    }
+
+    private static void requireAdmin(Router.Request request, Router.Handler next) throws IOException {
+        if ("1".equals(request.cookie("admin"))) {
+            next.handle(request);
+        } else {
+            request.redirect("/admin/login");
+        }
+    }
+
+    // Plain-text counters in the Prometheus exposition format.
+    private static void handleMetrics(Router.Request request) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        appendMetric(sb, "seating_requests_total", requestIds.get());
+        appendMetric(sb, "seating_ready", db.isReady() && warmedUp ? 1 : 0);
+        appendMetric(sb, "seating_warmup_ms", warmUpMillis);
+        appendMetric(sb, "seating_warmup_rolls_primed", warmUpRollsPrimed);
+        appendMetric(sb, "seating_warmup_requests", warmUpRequests);
+        appendMetric(sb, "seating_warmup_budget_exhausted", warmUpBudgetExhausted ? 1 : 0);
+        appendMetric(sb, "seating_pending_writes", db.getPendingWriteCount());
+        appendMetric(sb, "seating_data_version", db.getGlobalDataVersion());
+        appendMetric(sb, "seating_lookup_index_rolls", db.getLookupIndexSize());
+        appendMetric(sb, "seating_lookup_index_build_ms", db.getLookupIndexBuildMillis());
+        // Per-store figures carry a shard label once there is more than one.
+        List<SeatingDatabase> shards = db.getShards();
+        for (SeatingDatabase shard : shards) {
+            String label = shards.size() > 1 ? "{shard=\"" + shard.getName() + "\"}" : "";
+            if (shards.size() > 1) {
+                appendMetric(sb, "seating_shard_pending_writes" + label, shard.getPendingWriteCount());
+                appendMetric(sb, "seating_shard_data_version" + label, shard.getGlobalDataVersion());
+                appendMetric(sb, "seating_shard_lookup_index_rolls" + label, shard.getLookupIndexSize());
+            }
+            CircuitBreaker breaker = shard.getStorageBreaker();
+            appendMetric(sb, "seating_storage_breaker_state" + label, breaker.getState().ordinal());
+            appendMetric(sb, "seating_storage_breaker_trips_total" + label, breaker.getTrips());
+            appendMetric(sb, "seating_storage_breaker_rejected_total" + label, breaker.getRejected());
+            appendMetric(sb, "seating_sql_timeout_ms" + label, shard.getSqlTimeoutMillis());
+            appendMetric(sb, "seating_sql_timeouts_total" + label, shard.getSqlTimeoutCount());
+            appendMetric(sb, "seating_sql_failures_total" + label, shard.getSqlFailureCount());
+            ChangeJournal journal = shard.getJournal();
+            if (journal != null) {
+                appendMetric(sb, "seating_journal_sequence" + label, journal.getLastSequence());
+                appendMetric(sb, "seating_journal_records_total" + label, journal.getRecordCount());
+                appendMetric(sb, "seating_journal_checkpoints_total" + label, journal.getCheckpointCount());
+            }
+        }
+        appendMetric(sb, "seating_floorplans", floorPlans.getPlanCount());
+        appendMetric(sb, "seating_floorplan_cache_bytes", floorPlans.getCachedBytes());
+        appendMetric(sb, "seating_rooms_configured", rooms.getConfiguredCount());
+        appendMetric(sb, "seating_rooms_unlisted", rooms.getUnlistedCount());
+        appendMetric(sb, "seating_overlay_cache_entries", seatOverlays.size());
+        appendMetric(sb, "seating_overlay_cache_bytes", seatOverlays.getBytes());
+        appendMetric(sb, "seating_overlay_cache_hits_total", seatOverlays.getHits());
+        appendMetric(sb, "seating_overlay_cache_misses_total", seatOverlays.getMisses());
+        appendMetric(sb, "seating_overlay_cache_evictions_total", seatOverlays.getEvictions());
+        StaticSiteExporter.Result export = siteExporter != null ? siteExporter.getLastResult() : null;
+        if (export != null) {
+            appendMetric(sb, "seating_export_rolls", export.getRolls());
+            appendMetric(sb, "seating_export_rolls_written", export.getRollsWritten());
+            appendMetric(sb, "seating_export_ms", export.getElapsedMillis());
+        }
+        if (seatSlips != null) {
+            appendMetric(sb, "seating_slip_codes", seatSlips.size());
+            appendMetric(sb, "seating_slip_data_version", seatSlips.getDataVersion());
+            appendMetric(sb, "seating_slip_pregenerate_ms", seatSlips.getLastPregenerateMillis());
+            appendMetric(sb, "seating_slip_encoded_total", seatSlips.getEncodedCount());
+            appendMetric(sb, "seating_slip_misses_total", seatSlips.getMissCount());
+        }
+        appendMetric(sb, "seating_event_subscribers", seatEvents.getSubscriberCount());
+        appendMetric(sb, "seating_events_published_total", seatEvents.getPublishedCount());
+        appendMetric(sb, "seating_event_evictions_total", seatEvents.getEvictionCount());
+        appendMetric(sb, "seating_rate_limited_total", rateLimiter.getRejectedCount());
+        appendMetric(sb, "seating_rate_limit_clients", rateLimiter.getClientCount());
+        appendMetric(sb, "seating_searches_total", seatStats.getSearchCount());
+        appendMetric(sb, "seating_search_misses_total", seatStats.getMissCount());
+        appendMetric(sb, "seating_search_revalidations_total", seatStats.getRevalidationCount());
+        for (Map.Entry<String, RouteStats> route : new TreeMap<>(routeStats).entrySet()) {
+            String label = "{route=\"" + route.getKey() + "\"}";
+            appendMetric(sb, "seating_route_requests_total" + label, route.getValue().requests.sum());
+            appendMetric(sb, "seating_route_errors_total" + label, route.getValue().errors.sum());
+            appendMetric(sb, "seating_route_latency_micros_total" + label, route.getValue().micros.sum());
+        }
+        appendMetric(sb, "seating_log_events_total", EventLog.getPublishedCount());
+        appendMetric(sb, "seating_log_dropped_total", EventLog.getDroppedCount());
+        appendMetric(sb, "seating_log_backlog", EventLog.getBacklog());
+        appendMetric(sb, "seating_log_capacity", EventLog.getCapacity());
+        request.send(200, "text/plain; version=0.0.4", sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void appendMetric(StringBuilder sb, String name, long value) {
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static int[] parseWidths(String value) {
+        List<Integer> widths = new ArrayList<>();
+        for (String part : value.split(",")) {
+            try {
+                widths.add(Integer.parseInt(part.trim()));
+            } catch (NumberFormatException e) {
+                // skip
+            }
+        }
+        return widths.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // GET /floorplans/<floor_room>/<width>?v=<version>. Versioned URLs are
+    // immutable, so browsers and proxies may cache them for a year.
+    private static void handleFloorPlan(Router.Request request) throws IOException {
+        HttpExchange exchange = request.getExchange();
+        FloorPlanImages.Plan plan = floorPlans.get(request.pathParam("plan"));
+        int width;
+        try {
+            width = plan != null ? Integer.parseInt(request.pathParam("width")) : 0;
+        } catch (NumberFormatException e) {
+            plan = null;
+            width = 0;
+        }
+        if (plan == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        FloorPlanImages.Variant variant = plan.forWidth(width);
+        String seat = request.query("seat");
+        byte[] overlay = seat.isEmpty() ? null : seatOverlays.get(plan, variant, seat);
+        String etag = "\"" + plan.getVersion() + "-" + variant.getWidth() +
+                (overlay != null ? "-" + Integer.toHexString(seat.hashCode()) : "") + "\"";
+        String version = request.query("v");
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Cache-Control", plan.getVersion().equals(version)
+                ? "public, max-age=31536000, immutable"
+                : "no-cache");
+        if (etagMatches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        byte[] bytes = overlay != null ? overlay : variant.getBytes();
+        exchange.getResponseHeaders().set("Content-Type", overlay != null ? "image/jpeg" : variant.getMime());
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    // GET /slips?roll=&date=&time= : the sitting's seat slip as SVG, from
+    // the cache filled by scheduleSlips().
+    private static void handleSlip(Router.Request request) throws IOException {
+        HttpExchange exchange = request.getExchange();
+        if (seatSlips == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        if (rejectIfNotReady(exchange)) {
+            return;
+        }
+        // /slips/<roll> is the older form, kept for links already handed out.
+        String roll = request.pathParam("roll").isEmpty() ? request.query("roll") : request.pathParam("roll");
+        String examDate = request.query("date");
+        String examTime = request.query("time");
+        Student sitting = examDate.isEmpty() && examTime.isEmpty()
+                ? db.currentSitting(db.getSittings(roll))
+                : db.getStudent(roll, examDate, examTime);
+        if (sitting == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        SeatSlipCache.Slip slip = seatSlips.get(sitting);
+        exchange.getResponseHeaders().set("ETag", slip.getEtag());
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        if (etagMatches(exchange.getRequestHeaders().getFirst("If-None-Match"), slip.getEtag())) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        request.send(200, "image/svg+xml", slip.getCode().toSvg().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Readiness probe: 200 once seating data is loaded, 503 before that.
+    private static void handleReady(Router.Request request) throws IOException {
+        boolean ready = db.isReady() && warmedUp;
+        StringBuilder json = new StringBuilder();
+        json.append("{\"ready\":").append(ready).append(",\"phases\":{");
+        boolean first = true;
+        for (Map.Entry<String, Long> phase : startupPhases().entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            json.append('"').append(phase.getKey()).append("\":").append(phase.getValue());
+            first = false;
+        }
+        json.append("}}");
+        request.send(ready ? 200 : 503, "application/json", json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // While fast-start is still loading, data pages answer 503 instead of
+    // tying up a request thread in the storage open.
+    private static boolean rejectIfNotReady(HttpExchange exchange) throws IOException {
+        if (db.isReady()) {
+            return false;
+        }
+        byte[] bytes = "Seating data is still loading. Please retry in a moment.".getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Retry-After", "2");
+        exchange.sendResponseHeaders(503, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+        return true;
     }
 
     // Landing page with modern UI
-    private static void handleLandingPage(HttpExchange exchange) throws IOException {
+    private static void handleLandingPage(Router.Request request) throws IOException {
+        HttpExchange exchange = request.getExchange();
         String html = "<!DOCTYPE html>" +
                 "<html lang='en'><head>" +
                 "<meta charset='UTF-8'>" +
@@ -94,107 +938,329 @@ public class SeatingWebServer {
                 "<form action='/search' method='get'>" +
                 "<div class='mb-3'>" +
                 "<label for='roll' class='form-label'>Roll Number</label>" +
-                "<input type='text' id='roll' name='roll' class='form-control' required>" +
+                "<input type='text' id='roll' name='roll' class='form-control' list='roll-options' autocomplete='off' required>" +
+                "<datalist id='roll-options'></datalist>" +
                 "</div>" +
                 "<div class='d-grid'>" +
                 "<button type='submit' class='btn btn-custom btn-lg'>Search</button>" +
                 "</div></form></div></div></section>" +
 
                 "<script src='https://cdn.jsdelivr.net/npm/bootstrap@5.3.0/dist/js/bootstrap.bundle.min.js'></script>" +
+                "<script>" +
+                "(function(){var input=document.getElementById('roll'),list=document.getElementById('roll-options'),timer;" +
+                "input.addEventListener('input',function(){clearTimeout(timer);var p=input.value.trim();" +
+                "if(p.length<2){list.innerHTML='';return;}" +
+                "timer=setTimeout(function(){fetch('/api/v1/rolls?prefix='+encodeURIComponent(p))" +
+                ".then(function(r){return r.ok?r.json():[];}).then(function(rolls){list.innerHTML='';" +
+                "rolls.forEach(function(roll){var o=document.createElement('option');o.value=roll;list.appendChild(o);});})" +
+                ".catch(function(){});},120);});})();" +
+                "</script>" +
                 "</body></html>";
 
-        sendResponse(exchange, html);
+        sendResponse(request, html);
+    }
+
+    // Server-Sent Events: GET /events?room=&date=&time= streams a "seats"
+    // event whenever seats change in a matching room or session. The
+    // exchange is handed to the hub and left open, so the request thread
+    // is free as soon as the headers are out.
+    private static void handleEvents(Router.Request request) throws IOException {
+        HttpExchange exchange = request.getExchange();
+        if (!"get".equalsIgnoreCase(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(405, -1);
+            return;
+        }
+        boolean subscribed = seatEvents.subscribe(exchange,
+                request.query("room"), request.query("date"), request.query("time"),
+                exchange.getRequestHeaders().getFirst("Last-Event-ID"));
+        if (!subscribed) {
+            byte[] bytes = "Too many live displays connected. Please retry later.".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Retry-After", "30");
+            exchange.sendResponseHeaders(503, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+    }
+
+    // Roll-number autocomplete: /api/v1/rolls?prefix=CS20&limit=8
+    private static void handleRollCompletions(Router.Request request) throws IOException {
+        HttpExchange exchange = request.getExchange();
+        if (rejectIfNotReady(exchange)) {
+            return;
+        }
+        String prefix = request.query("prefix");
+        int limit = 8;
+        try {
+            String limitParam = request.query("limit");
+            if (!limitParam.isEmpty()) {
+                limit = Math.max(1, Math.min(50, Integer.parseInt(limitParam)));
+            }
+        } catch (NumberFormatException e) {
+            // keep the default
+        }
+        StringBuilder json = new StringBuilder("[");
+        List<String> rolls = db.completeRolls(prefix, limit);
+        for (int i = 0; i < rolls.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(jsonString(rolls.get(i)));
+        }
+        json.append(']');
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        request.send(200, "application/json", json.toString().getBytes(StandardCharsets.UTF_8));
     }
 
     // Search result page with floor plan image + seating grid
-    private static void handleSearch(HttpExchange exchange) throws IOException {
-        String query = exchange.getRequestURI().getQuery();
-        String roll = (query != null && query.startsWith("roll=")) ? query.substring(5) : null;
+    private static void handleSearch(Router.Request request) throws IOException {
+        HttpExchange exchange = request.getExchange();
+        if (rejectIfNotReady(exchange)) {
+            return;
+        }
+        String roll = request.query("roll");
+        if (roll.isBlank()) {
+            roll = null;
+        }
+        // date and time pick one sitting; without them the current or next one is shown.
+        String examDate = request.query("date");
+        String examTime = request.query("time");
+        boolean explicitSitting = !examDate.isEmpty() || !examTime.isEmpty();
 
-        Student student = (roll != null) ? db.getStudent(roll) : null;
+        // Conditional GET: the ETag comes from the in-memory data version and
+        // what else the page is rendered from (floor plans, room layouts,
+        // whether slips are on), so a matching If-None-Match is answered
+        // without a lookup or a render. "*" only matches a roll known to
+        // have a sitting; a picked sitting is not checked before the lookup.
+        if (roll != null) {
+            String sitting = explicitSitting ? examDate + "|" + examTime : db.getCurrentSittingKey(roll);
+            String etag = "\"" + Integer.toHexString(roll.trim().hashCode()) + "-" + db.getDataVersion(roll) +
+                    "-" + Integer.toHexString(sitting.hashCode()) + "-" + renderVersion() +
+                    (seatSlips != null ? "-s" : "") + "\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            boolean exists = !explicitSitting && !sitting.isEmpty();
+            if (etagMatches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag, exists)) {
+                if (!isWarmUpRequest(exchange)) {
+                    seatStats.searchRevalidated();
+                }
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+        }
+
+        NavigableMap<String, Student> sittings = (roll != null) ? db.getSittings(roll) : Collections.emptyNavigableMap();
+        Student student = explicitSitting
+                ? db.getStudent(roll, examDate, examTime)
+                : db.currentSitting(sittings);
 
+        if (!isWarmUpRequest(exchange)) {
+            if (student != null) {
+                seatStats.searchHit(student);
+            } else {
+                seatStats.searchMiss(roll);
+            }
+        }
         String response;
         if (student != null) {
-            // Extract fields the same way your existing code does
-            String[] details = student.getDetails().split("\n");
-            String room = details.length > 1 ? details[1].split(": ")[1] : "";
-            String floor = details.length > 2 ? details[2].split(": ")[1] : "";
-            String seatLabel = details.length > 3 ? details[3].split(": ")[1] : "";
-
-            // Build floor plan (base64 inline)
-            String floorPlanHtml = buildFloorPlanImageHtml(room, floor);
-
-            // Build seating grid with the student's seat highlighted
-            String seatGridHtml = buildSeatGridHtml(room, seatLabel);
-
-            response = "<!DOCTYPE html>" +
-                    "<html lang='en'><head>" +
-                    "<meta charset='UTF-8'>" +
-                    "<meta name='viewport' content='width=device-width, initial-scale=1.0'>" +
-                    "<title>Seating Result</title>" +
-                    "<link href='https://cdn.jsdelivr.net/npm/bootstrap@5.3.0/dist/css/bootstrap.min.css' rel='stylesheet'>" +
-                    "<style>" +
-                    "body{background:#f6f8fb}" +
-                    ".floorplan img{max-width:100%;height:auto;border-radius:12px;border:1px solid #e3e6ea}" +
-                    ".seat-grid{display:grid;grid-template-columns:repeat(6,48px);gap:10px;justify-content:center}" +
-                    ".seat{width:48px;height:48px;border-radius:12px;display:flex;align-items:center;justify-content:center;" +
-                    "font-weight:600;color:#334155;background:#f1f5f9;border:1px solid #e2e8f0}" +
-                    ".seat.selected{background:#6c63ff;color:#fff;border-color:#5145cd;box-shadow:0 0 0 4px rgba(108,99,255,.15)}" +
-                    "</style>" +
-                    "</head><body class='bg-light'>" +
-                    "<div class='container mt-5'>" +
-                    "<div class='card shadow-lg p-4 rounded-4'>" +
-                    "<h2 class='text-success text-center mb-4'>Seating Details</h2>" +
-                    "<ul class='list-group mb-4'>" +
-                    "<li class='list-group-item'><b>Roll:</b> " + student.getRollNumber() + "</li>" +
-                    "<li class='list-group-item'><b>Room:</b> " + room + "</li>" +
-                    "<li class='list-group-item'><b>Floor:</b> " + floor + "</li>" +
-                    "<li class='list-group-item'><b>Seat:</b> " + seatLabel + "</li>" +
-                    "<li class='list-group-item'><b>Exam:</b> " + escape(student.getExamName()) + "</li>" +
-                    "<li class='list-group-item'><b>Date:</b> " + escape(student.getExamDate()) + "</li>" +
-                    "<li class='list-group-item'><b>Time:</b> " + escape(student.getExamTime()) + "</li>" +
-                    "</ul>" +
-
-                    "<div class='row g-4'>" +
-                    "<div class='col-lg-6'>" +
-                    "<div class='card p-3 floorplan'>" +
-                    "<h5 class='mb-3'> </h5>" +
-                    floorPlanHtml +
-                    "</div></div>" +
-
-                    "<div class='col-lg-6'>" +
-                    "<div class='card p-3'>" +
-                    "<h5 class='mb-3'>Seating arrangement</h5>" +
-                    seatGridHtml +
-                    "<div class='text-muted text-center mt-2' style='font-size:0.9rem;'>Your seat is highlighted</div>" +
-                    "</div></div>" +
-                    "</div>" +
-
-                    "<div class='text-center mt-4'>" +
-                    "<a href='/' class='btn btn-outline-primary'>Search Again</a>" +
-                    "</div></div></div></body></html>";
+            response = renderSeatingResult(student, sittings, LIVE_LINKS);
         } else {
-            response = "<!DOCTYPE html><html><head>" +
-                    "<title>No Record</title>" +
-                    "<link href='https://cdn.jsdelivr.net/npm/bootstrap@5.3.0/dist/css/bootstrap.min.css' rel='stylesheet'>" +
-                    "</head><body class='bg-light'>" +
-                    "<div class='container mt-5'>" +
-                    "<div class='card shadow-lg p-4 rounded-4 text-center'>" +
-                    "<h3 class='text-danger'>No record found for that roll number.</h3>" +
-                    "<a href='/' class='btn btn-outline-secondary mt-3'>Try Again</a>" +
-                    "</div></div></body></html>";
+            // Suggestions depend on other rolls, which the per-roll ETag does not track.
+            exchange.getResponseHeaders().remove("ETag");
+            response = renderNoRecord(roll != null ? db.suggestRolls(roll, 5) : new ArrayList<>(), LIVE_LINKS);
         }
 
-        sendResponse(exchange, response);
+        sendResponse(request, response);
     }
 
-    private static void handleAdminPage(HttpExchange exchange) throws IOException {
-        if (!isAdminAuthenticated(exchange)) {
-            exchange.getResponseHeaders().add("Location", "/admin/login");
-            exchange.sendResponseHeaders(302, -1);
+    // Result page for one sitting; shared by /search and the static export.
+    private static String renderSeatingResult(Student student, NavigableMap<String, Student> sittings, ResultLinks links) {
+        // Extract fields the same way your existing code does
+        String[] details = student.getDetails().split("\n");
+        String room = details.length > 1 ? details[1].split(": ")[1] : "";
+        String floor = details.length > 2 ? details[2].split(": ")[1] : "";
+        String seatLabel = details.length > 3 ? details[3].split(": ")[1] : "";
+
+        RoomRegistry.Room layout = rooms.lookup(room, floor);
+
+        // Floor plan in several widths, the seat marked when it is mapped
+        String floorPlanHtml = buildFloorPlanImageHtml(layout, seatLabel, links);
+
+        // Build seating grid with the student's seat highlighted
+        String seatGridHtml = buildSeatGridHtml(layout, seatLabel);
+
+        return "<!DOCTYPE html>" +
+                "<html lang='en'><head>" +
+                "<meta charset='UTF-8'>" +
+                "<meta name='viewport' content='width=device-width, initial-scale=1.0'>" +
+                "<title>Seating Result</title>" +
+                "<link href='https://cdn.jsdelivr.net/npm/bootstrap@5.3.0/dist/css/bootstrap.min.css' rel='stylesheet'>" +
+                "<style>" +
+                "body{background:#f6f8fb}" +
+                ".floorplan img{max-width:100%;height:auto;border-radius:12px;border:1px solid #e3e6ea}" +
+                ".seat-grid{display:grid;grid-template-columns:repeat(6,48px);gap:10px;justify-content:center}" +
+                ".seat{width:48px;height:48px;border-radius:12px;display:flex;align-items:center;justify-content:center;" +
+                "font-weight:600;color:#334155;background:#f1f5f9;border:1px solid #e2e8f0}" +
+                ".seat.selected{background:#6c63ff;color:#fff;border-color:#5145cd;box-shadow:0 0 0 4px rgba(108,99,255,.15)}" +
+                "</style>" +
+                "</head><body class='bg-light'>" +
+                "<div class='container mt-5'>" +
+                "<div class='card shadow-lg p-4 rounded-4'>" +
+                "<h2 class='text-success text-center mb-4'>Seating Details</h2>" +
+                "<ul class='list-group mb-4'>" +
+                "<li class='list-group-item'><b>Roll:</b> " + student.getRollNumber() + "</li>" +
+                "<li class='list-group-item'><b>Room:</b> " + room + "</li>" +
+                "<li class='list-group-item'><b>Floor:</b> " + floor + "</li>" +
+                "<li class='list-group-item'><b>Seat:</b> " + seatLabel + "</li>" +
+                "<li class='list-group-item'><b>Exam:</b> " + escape(student.getExamName()) + "</li>" +
+                "<li class='list-group-item'><b>Date:</b> " + escape(student.getExamDate()) + "</li>" +
+                "<li class='list-group-item'><b>Time:</b> " + escape(student.getExamTime()) + "</li>" +
+                "</ul>" +
+                buildSittingList(sittings, student, links) +
+                buildSlipHtml(student, links) +
+
+                "<div class='row g-4'>" +
+                "<div class='col-lg-6'>" +
+                "<div class='card p-3 floorplan'>" +
+                "<h5 class='mb-3'> </h5>" +
+                floorPlanHtml +
+                "</div></div>" +
+
+                "<div class='col-lg-6'>" +
+                "<div class='card p-3'>" +
+                "<h5 class='mb-3'>Seating arrangement</h5>" +
+                seatGridHtml +
+                "<div class='text-muted text-center mt-2' style='font-size:0.9rem;'>Your seat is highlighted</div>" +
+                "</div></div>" +
+                "</div>" +
+
+                "<div class='text-center mt-4'>" +
+                "<a href='" + links.home() + "' class='btn btn-outline-primary'>Search Again</a>" +
+                "</div></div></div></body></html>";
+    }
+
+    private static String buildSlipHtml(Student student, ResultLinks links) {
+        String slip = links.slip(student);
+        if (slip == null) {
+            return "";
+        }
+        return "<div class='card p-3 mb-4 text-center'>" +
+                "<h5 class='mb-3'>Seat slip</h5>" +
+                "<img src='" + slip + "' alt='QR code for your seat' width='180' height='180' class='mx-auto d-block'>" +
+                "<div class='text-muted mt-2' style='font-size:0.9rem;'>Show this code to the invigilator</div>" +
+                "</div>";
+    }
+
+    private static String renderNoRecord(List<String> suggestions, ResultLinks links) {
+        return "<!DOCTYPE html><html><head>" +
+                "<title>No Record</title>" +
+                "<link href='https://cdn.jsdelivr.net/npm/bootstrap@5.3.0/dist/css/bootstrap.min.css' rel='stylesheet'>" +
+                "</head><body class='bg-light'>" +
+                "<div class='container mt-5'>" +
+                "<div class='card shadow-lg p-4 rounded-4 text-center'>" +
+                "<h3 class='text-danger'>No record found for that roll number.</h3>" +
+                buildSuggestionList(suggestions) +
+                "<a href='" + links.home() + "' class='btn btn-outline-secondary mt-3'>Try Again</a>" +
+                "</div></div></body></html>";
+    }
+
+    private static final StaticSiteExporter.PageRenderer EXPORT_RENDERER = new StaticSiteExporter.PageRenderer() {
+        @Override
+        public String renderSitting(Student sitting, NavigableMap<String, Student> sittings, ResultLinks links) {
+            return renderSeatingResult(sitting, sittings, links);
+        }
+
+        @Override
+        public String renderSearchPage() {
+            return renderStaticSearchPage();
+        }
+
+        @Override
+        public String renderNotFound(ResultLinks links) {
+            return renderNoRecord(new ArrayList<>(), links);
+        }
+    };
+
+    // Search page of the static export: hashes the roll in the browser the
+    // way StaticSiteExporter.rollHash does and opens that page. Where fetch
+    // works (http, not file://) a missing roll is reported in place.
+    private static String renderStaticSearchPage() {
+        return "<!DOCTYPE html>" +
+                "<html lang='en'><head>" +
+                "<meta charset='UTF-8'>" +
+                "<meta name='viewport' content='width=device-width, initial-scale=1.0'>" +
+                "<title>Exam Seating Finder</title>" +
+                "<link href='https://cdn.jsdelivr.net/npm/bootstrap@5.3.0/dist/css/bootstrap.min.css' rel='stylesheet'>" +
+                "<style>" +
+                "body {background: linear-gradient(135deg, #f5f7fa, #e4ecf7); font-family: 'Segoe UI', sans-serif;}" +
+                ".btn-custom {background-color: #6c63ff; color: #fff; padding: 12px 25px; font-size: 1.1rem; border-radius: 30px;}" +
+                ".btn-custom:hover {background-color: #5145cd; color: #fff;}" +
+                "</style></head><body>" +
+                "<section class='py-5'>" +
+                "<div class='container'>" +
+                "<div class='card shadow-lg p-4 rounded-4'>" +
+                "<h2 class='text-center text-primary mb-4'>Exam Hall Seating Finder</h2>" +
+                "<form id='search'>" +
+                "<div class='mb-3'>" +
+                "<label for='roll' class='form-label'>Roll Number</label>" +
+                "<input type='text' id='roll' name='roll' class='form-control' autocomplete='off' required>" +
+                "</div>" +
+                "<div id='not-found' class='alert alert-danger d-none'>No record found for that roll number.</div>" +
+                "<div class='d-grid'>" +
+                "<button type='submit' class='btn btn-custom btn-lg'>Search</button>" +
+                "</div></form></div></div></section>" +
+                "<script>" +
+                "document.getElementById('search').addEventListener('submit',async function(e){e.preventDefault();" +
+                "var roll=document.getElementById('roll').value.trim(),notFound=document.getElementById('not-found');" +
+                "if(!roll)return;notFound.classList.add('d-none');" +
+                "var digest=await crypto.subtle.digest('SHA-256',new TextEncoder().encode(roll));" +
+                "var hash=Array.from(new Uint8Array(digest)).map(function(b){return b.toString(16).padStart(2,'0');}).join('').slice(0,32);" +
+                "var page='r/'+hash.slice(0,2)+'/'+hash+'/index.html';" +
+                "try{var r=await fetch(page,{method:'HEAD'});if(r.status===404){notFound.classList.remove('d-none');return;}}catch(err){}" +
+                "location.href=page;});" +
+                "</script>" +
+                "</body></html>";
+    }
+
+    private static String buildSuggestionList(List<String> suggestions) {
+        if (suggestions.isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder("<p class='mt-3 mb-2'>Did you mean:</p><div class='d-flex flex-wrap justify-content-center gap-2'>");
+        for (String suggestion : suggestions) {
+            sb.append("<a class='btn btn-sm btn-outline-primary' href='/search?roll=")
+              .append(escape(URLEncoder.encode(suggestion, StandardCharsets.UTF_8))).append("'>")
+              .append(escape(suggestion)).append("</a>");
+        }
+        sb.append("</div>");
+        return sb.toString();
+    }
+
+    // Links to the roll's other sittings; empty when there is only one.
+    private static String buildSittingList(NavigableMap<String, Student> sittings, Student selected, ResultLinks links) {
+        if (sittings.size() < 2) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder("<h5 class='mb-2'>All sittings</h5><div class='list-group mb-4'>");
+        for (Student sitting : sittings.values()) {
+            boolean active = sitting == selected;
+            String href = links.sitting(sitting);
+            sb.append("<a class='list-group-item list-group-item-action").append(active ? " active" : "")
+              .append("' href='").append(escape(href)).append("'>")
+              .append(escape(formatExamSession(sitting))).append(" &middot; ")
+              .append(escape(sitting.getRoom())).append(", seat ").append(escape(sitting.getSeatNumber()))
+              .append("</a>");
+        }
+        sb.append("</div>");
+        return sb.toString();
+    }
+
+    private static void handleAdminPage(Router.Request request) throws IOException {
+        HttpExchange exchange = request.getExchange();
+        if (rejectIfNotReady(exchange)) {
             return;
         }
-        String status = getQueryParam(exchange.getRequestURI().getQuery(), "status");
+        String status = request.query("status");
         String addMessage = "";
         String uploadMessage = "";
         if ("success".equals(status)) {
@@ -202,10 +1268,19 @@ public class SeatingWebServer {
         } else if ("error".equals(status)) {
             addMessage = "<div class='alert alert-danger'>Unable to save entry. Please check the fields.</div>";
         } else if ("upload_success".equals(status)) {
-            String count = getQueryParam(exchange.getRequestURI().getQuery(), "count");
-            String failed = getQueryParam(exchange.getRequestURI().getQuery(), "failed");
+            String count = request.query("count");
+            String failed = request.query("failed");
+            String report = request.query("report");
             uploadMessage = "<div class='alert alert-success'>Uploaded " + escape(count) +
-                    " record(s). Skipped " + escape(failed) + " row(s).</div>";
+                    " record(s). Skipped " + escape(failed) + " row(s)." +
+                    buildUploadErrorSummary(report) + "</div>";
+        } else if ("diff_success".equals(status)) {
+            uploadMessage = "<div class='alert alert-success'>Applied changes: " +
+                    escape(request.query("inserted")) + " inserted, " +
+                    escape(request.query("updated")) + " updated, " +
+                    escape(request.query("deleted")) + " deleted.</div>";
+        } else if ("diff_expired".equals(status)) {
+            uploadMessage = "<div class='alert alert-warning'>That upload preview has expired. Please upload the file again.</div>";
         } else if ("upload_error".equals(status)) {
             uploadMessage = "<div class='alert alert-danger'>Unable to process the CSV upload. Please verify the file.</div>";
         } else if ("delete_success".equals(status)) {
@@ -308,6 +1383,10 @@ public class SeatingWebServer {
                 "<div class='nav-link'>Exam Schedule</div>" +
                 "<div class='nav-link'>Reports</div>" +
                 "<div class='nav-title'>Quick Links</div>" +
+                "<a class='nav-link' href='/admin/sheets'>Room Sheets</a>" +
+                "<a class='nav-link' href='/admin/archive'>Archive</a>" +
+                "<a class='nav-link' href='/admin/restore'>Restore</a>" +
+                "<a class='nav-link' href='/admin/stats'>Live Stats</a>" +
                 "<a class='nav-link' href='/admin/logout'>Return to Search</a>" +
                 "</aside>" +
                 "<main class='main'>" +
@@ -380,6 +1459,16 @@ public class SeatingWebServer {
                 "<button type='submit' class='btn btn-primary-soft'>Upload CSV</button>" +
                 "</div>" +
                 "</div>" +
+                "<div class='d-flex flex-wrap gap-4 mt-3'>" +
+                "<div class='form-check'>" +
+                "<input class='form-check-input' type='checkbox' id='diffMode' name='diffMode' value='on'>" +
+                "<label class='form-check-label' for='diffMode'>Preview and apply only changed rows</label>" +
+                "</div>" +
+                "<div class='form-check'>" +
+                "<input class='form-check-input' type='checkbox' id='deleteMissing' name='deleteMissing' value='on'>" +
+                "<label class='form-check-label' for='deleteMissing'>Delete rows missing from the file, in the exam sessions it covers (preview mode)</label>" +
+                "</div>" +
+                "</div>" +
                 "<div class='upload-hint mt-3'>Expected columns: roll, room, floor, seat, examName, examDate, examTime. " +
                 "Headers are optional.</div>" +
                 "</form>" +
@@ -432,20 +1521,18 @@ public class SeatingWebServer {
                 "</main></div>" +
                 "</body></html>";
 
-        sendResponse(exchange, html);
+        sendResponse(request, html);
     }
 
-    private static void handleAdminLogin(HttpExchange exchange) throws IOException {
+    private static void handleAdminLogin(Router.Request request) throws IOException {
+        HttpExchange exchange = request.getExchange();
         String message = "";
         if ("post".equalsIgnoreCase(exchange.getRequestMethod())) {
-            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
-            Map<String, String> data = parseFormBody(body);
-            String username = data.getOrDefault("username", "").trim();
-            String password = data.getOrDefault("password", "").trim();
+            String username = request.form("username").trim();
+            String password = request.form("password").trim();
             if (isValidAdminCredentials(username, password)) {
                 exchange.getResponseHeaders().add("Set-Cookie", "admin=1; Path=/; HttpOnly");
-                exchange.getResponseHeaders().add("Location", "/admin");
-                exchange.sendResponseHeaders(302, -1);
+                request.redirect("/admin");
                 return;
             }
             message = "<div class='alert alert-danger'>Invalid credentials. Please try again.</div>";
@@ -494,159 +1581,761 @@ public class SeatingWebServer {
                 "</form>" +
                 "<div class='login-foot'>Don't have an account? <a href='/'>Signup Now</a></div>" +
                 "</div></div></body></html>";
-        sendResponse(exchange, html);
+        sendResponse(request, html);
     }
 
-    private static void handleAdminLogout(HttpExchange exchange) throws IOException {
+    private static void handleAdminLogout(Router.Request request) throws IOException {
+        HttpExchange exchange = request.getExchange();
         exchange.getResponseHeaders().add("Set-Cookie", "admin=; Path=/; Max-Age=0; HttpOnly");
-        exchange.getResponseHeaders().add("Location", "/");
-        exchange.sendResponseHeaders(302, -1);
+        request.redirect("/");
     }
 
-    private static void handleAdminAdd(HttpExchange exchange) throws IOException {
-        if (!isAdminAuthenticated(exchange)) {
-            exchange.getResponseHeaders().add("Location", "/admin/login");
-            exchange.sendResponseHeaders(302, -1);
+    private static void handleAdminAdd(Router.Request request) throws IOException {
+        HttpExchange exchange = request.getExchange();
+        if (rejectIfNotReady(exchange)) {
             return;
         }
         if (!"post".equalsIgnoreCase(exchange.getRequestMethod())) {
-            exchange.getResponseHeaders().add("Location", "/admin?status=error");
-            exchange.sendResponseHeaders(302, -1);
+            request.redirect("/admin?status=error");
             return;
         }
-        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
-        Map<String, String> data = parseFormBody(body);
-
-        String roll = data.getOrDefault("roll", "").trim();
-        String room = data.getOrDefault("room", "").trim();
-        String floor = data.getOrDefault("floor", "").trim();
-        String seat = data.getOrDefault("seat", "").trim();
-        String examName = data.getOrDefault("examName", "").trim();
-        String examDate = data.getOrDefault("examDate", "").trim();
-        String examTime = data.getOrDefault("examTime", "").trim();
+        String roll = request.form("roll").trim();
+        String room = request.form("room").trim();
+        String floor = request.form("floor").trim();
+        String seat = request.form("seat").trim();
+        String examName = request.form("examName").trim();
+        String examDate = request.form("examDate").trim();
+        String examTime = request.form("examTime").trim();
 
         boolean ok = !(roll.isEmpty() || room.isEmpty() || floor.isEmpty() || seat.isEmpty()
                 || examName.isEmpty() || examDate.isEmpty() || examTime.isEmpty());
         if (ok) {
             Student student = new Student(roll, room, floor, seat, examName, examDate, examTime);
-            ok = db.addStudent(student);
+            ok = withShardLocks(List.of(roll), () -> db.addStudent(student));
+        }
+        if (ok) {
+            onRosterChanged();
         }
         String redirect = ok ? "/admin?status=success" : "/admin?status=error";
-        exchange.getResponseHeaders().add("Location", redirect);
-        exchange.sendResponseHeaders(302, -1);
+        request.redirect(redirect);
     }
 
-    private static void handleAdminUpload(HttpExchange exchange) throws IOException {
-        if (!isAdminAuthenticated(exchange)) {
-            exchange.getResponseHeaders().add("Location", "/admin/login");
-            exchange.sendResponseHeaders(302, -1);
+    private static void handleAdminUpload(Router.Request request) throws IOException {
+        HttpExchange exchange = request.getExchange();
+        if (rejectIfNotReady(exchange)) {
             return;
         }
         if (!"post".equalsIgnoreCase(exchange.getRequestMethod())) {
-            exchange.getResponseHeaders().add("Location", "/admin?status=upload_error");
-            exchange.sendResponseHeaders(302, -1);
+            request.redirect("/admin?status=upload_error");
             return;
         }
         String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
         if (contentType == null || !contentType.contains("multipart/form-data")) {
-            exchange.getResponseHeaders().add("Location", "/admin?status=upload_error");
-            exchange.sendResponseHeaders(302, -1);
+            request.redirect("/admin?status=upload_error");
             return;
         }
         String boundary = extractBoundary(contentType);
         if (boundary == null) {
-            exchange.getResponseHeaders().add("Location", "/admin?status=upload_error");
-            exchange.sendResponseHeaders(302, -1);
+            request.redirect("/admin?status=upload_error");
             return;
         }
-        byte[] bodyBytes = exchange.getRequestBody().readAllBytes();
+        byte[] bodyBytes = request.body();
         String csvContent = extractMultipartFile(bodyBytes, boundary, "csvFile");
         if (csvContent == null || csvContent.isBlank()) {
-            exchange.getResponseHeaders().add("Location", "/admin?status=upload_error");
-            exchange.sendResponseHeaders(302, -1);
+            request.redirect("/admin?status=upload_error");
+            return;
+        }
+        if (extractMultipartFile(bodyBytes, boundary, "diffMode") != null) {
+            boolean deleteMissing = extractMultipartFile(bodyBytes, boundary, "deleteMissing") != null;
+            ParsedCsv parsed = parseCsvStudents(csvContent);
+            if (parsed == null) {
+                request.redirect("/admin?status=upload_error");
+                return;
+            }
+            RosterDiff diff = db.planDiff(parsed.students, deleteMissing);
+            sendResponse(request, buildDiffPreviewPage(storePendingDiff(diff), diff, parsed.skipped, parsed.reportToken));
             return;
         }
         CsvUploadResult result = ingestCsv(csvContent);
-        String redirect = "/admin?status=upload_success&count=" + result.added + "&failed=" + result.skipped;
-        exchange.getResponseHeaders().add("Location", redirect);
-        exchange.sendResponseHeaders(302, -1);
+        if (result == null) {
+            request.redirect("/admin?status=upload_error");
+            return;
+        }
+        if (result.added > 0) {
+            onRosterChanged();
+        }
+        String redirect = "/admin?status=upload_success&count=" + result.added + "&failed=" + result.skipped +
+                (result.reportToken != null ? "&report=" + result.reportToken : "");
+        request.redirect(redirect);
     }
 
-    private static void handleAdminDelete(HttpExchange exchange) throws IOException {
-        if (!isAdminAuthenticated(exchange)) {
-            exchange.getResponseHeaders().add("Location", "/admin/login");
-            exchange.sendResponseHeaders(302, -1);
+    // Applies a differential upload the admin has previewed.
+    private static void handleAdminUploadCommit(Router.Request request) throws IOException {
+        HttpExchange exchange = request.getExchange();
+        if (rejectIfNotReady(exchange)) {
             return;
         }
         if (!"post".equalsIgnoreCase(exchange.getRequestMethod())) {
-            exchange.getResponseHeaders().add("Location", "/admin?status=delete_error");
-            exchange.sendResponseHeaders(302, -1);
+            request.redirect("/admin?status=upload_error");
             return;
         }
-        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
-        Map<String, String> data = parseFormBody(body);
-        String roll = data.getOrDefault("roll", "").trim();
-        boolean ok = db.deleteStudent(roll);
-        String redirect = ok ? "/admin?status=delete_success" : "/admin?status=delete_error";
-        exchange.getResponseHeaders().add("Location", redirect);
-        exchange.sendResponseHeaders(302, -1);
+        String token = request.form("token");
+        PendingDiff pendingDiff = pendingDiffs.remove(token);
+        if (pendingDiff == null || pendingDiff.isExpired()) {
+            request.redirect("/admin?status=diff_expired");
+            return;
+        }
+        RosterDiff diff = pendingDiff.diff;
+        List<String> rolls = new ArrayList<>();
+        for (List<Student> rows : List.of(diff.getInserts(), diff.getUpdates(), diff.getDeletes())) {
+            rows.forEach(student -> rolls.add(student.getRollNumber()));
+        }
+        boolean ok = withShardLocks(rolls, () -> db.applyDiff(diff));
+        if (ok && !diff.isEmpty()) {
+            onRosterChanged();
+        }
+        String redirect = ok
+                ? "/admin?status=diff_success&inserted=" + diff.getInserts().size() +
+                  "&updated=" + diff.getUpdates().size() + "&deleted=" + diff.getDeletes().size()
+                : "/admin?status=upload_error";
+        request.redirect(redirect);
+    }
+
+    private static String storePendingDiff(RosterDiff diff) {
+        pendingDiffs.values().removeIf(PendingDiff::isExpired);
+        String token = UUID.randomUUID().toString();
+        pendingDiffs.put(token, new PendingDiff(diff));
+        return token;
     }
 
-    private static void sendResponse(HttpExchange exchange, String response) throws IOException {
-        exchange.sendResponseHeaders(200, response.getBytes().length);
+    // Serves an upload's rejected rows as CSV: line number and reason.
+    private static void handleAdminUploadReport(Router.Request request) throws IOException {
+        HttpExchange exchange = request.getExchange();
+        UploadReport report = findUploadReport(request.query("id"));
+        if (report == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        StringBuilder csv = new StringBuilder("line,error\n");
+        for (CsvIngestPipeline.LineError error : report.errors) {
+            csv.append(error.getLine()).append(",\"").append(error.getMessage().replace("\"", "\"\"")).append("\"\n");
+        }
+        if (report.errorCount > report.errors.size()) {
+            csv.append(",\"").append(report.errorCount - report.errors.size()).append(" more row(s) not listed\"\n");
+        }
+        byte[] bytes = csv.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/csv; charset=utf-8");
+        exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"upload-errors.csv\"");
+        exchange.sendResponseHeaders(200, bytes.length);
         try (OutputStream os = exchange.getResponseBody()) {
-            os.write(response.getBytes());
+            os.write(bytes);
+        }
+    }
+
+    private static String storeUploadReport(CsvIngestPipeline.Result result) {
+        uploadReports.values().removeIf(UploadReport::isExpired);
+        if (result.getErrorCount() == 0) {
+            return null;
+        }
+        String token = UUID.randomUUID().toString();
+        uploadReports.put(token, new UploadReport(result.getErrors(), result.getErrorCount()));
+        return token;
+    }
+
+    private static UploadReport findUploadReport(String token) {
+        if (token == null) {
+            return null;
+        }
+        UploadReport report = uploadReports.get(token);
+        return report == null || report.isExpired() ? null : report;
+    }
+
+    // The first rejected rows by line number, with a link to the full report.
+    private static String buildUploadErrorSummary(String token) {
+        UploadReport report = findUploadReport(token);
+        if (report == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder("<ul class='small mt-2 mb-2'>");
+        int shown = Math.min(UPLOAD_ERRORS_SHOWN, report.errors.size());
+        for (int i = 0; i < shown; i++) {
+            CsvIngestPipeline.LineError error = report.errors.get(i);
+            sb.append("<li>Line ").append(error.getLine()).append(": ").append(escape(error.getMessage())).append("</li>");
+        }
+        sb.append("</ul>");
+        if (report.errorCount > shown) {
+            sb.append("<span class='small'>").append(report.errorCount - shown).append(" more. </span>");
+        }
+        sb.append("<a class='small' href='/admin/upload/report?id=").append(escape(token))
+          .append("'>Download the error report</a>");
+        return sb.toString();
+    }
+
+    private static String buildDiffPreviewPage(String token, RosterDiff diff, int skipped, String reportToken) {
+        StringBuilder changes = new StringBuilder();
+        int shown = 0;
+        for (Student student : diff.getInserts()) {
+            if (shown++ >= DIFF_PREVIEW_ROWS) break;
+            appendDiffRow(changes, "Insert", student.getRollNumber(), student);
+        }
+        for (Student student : diff.getUpdates()) {
+            if (shown++ >= DIFF_PREVIEW_ROWS) break;
+            appendDiffRow(changes, "Update", student.getRollNumber(), student);
+        }
+        for (Student student : diff.getDeletes()) {
+            if (shown++ >= DIFF_PREVIEW_ROWS) break;
+            appendDiffRow(changes, "Delete", student.getRollNumber(), student);
+        }
+        // Deletes are the risky part, so every session they touch is listed.
+        Map<String, Integer> deletesBySession = new TreeMap<>();
+        for (Student student : diff.getDeletes()) {
+            deletesBySession.merge((safeValue(student.getExamDate()) + " " + safeValue(student.getExamTime())).trim(),
+                    1, Integer::sum);
+        }
+        StringBuilder sessions = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : deletesBySession.entrySet()) {
+            sessions.append("<li>").append(escape(entry.getKey())).append(": ").append(entry.getValue()).append("</li>");
+        }
+        String more = diff.getChangeCount() > DIFF_PREVIEW_ROWS
+                ? "<p class='text-muted'>Showing the first " + DIFF_PREVIEW_ROWS + " of " + diff.getChangeCount() + " changes.</p>"
+                : "";
+        return "<!DOCTYPE html>" +
+                "<html lang='en'><head>" +
+                "<meta charset='UTF-8'>" +
+                "<meta name='viewport' content='width=device-width, initial-scale=1.0'>" +
+                "<title>Upload Preview - Exam Seating</title>" +
+                "<link href='https://cdn.jsdelivr.net/npm/bootstrap@5.3.0/dist/css/bootstrap.min.css' rel='stylesheet'>" +
+                "</head><body class='bg-light'>" +
+                "<div class='container mt-5'>" +
+                "<div class='card shadow-lg p-4 rounded-4'>" +
+                "<h2 class='mb-3'>Upload Preview</h2>" +
+                "<ul class='list-group mb-3'>" +
+                "<li class='list-group-item'><b>Inserts:</b> " + diff.getInserts().size() + "</li>" +
+                "<li class='list-group-item'><b>Updates:</b> " + diff.getUpdates().size() + "</li>" +
+                "<li class='list-group-item'><b>Deletes:</b> " + diff.getDeletes().size() +
+                (sessions.length() > 0 ? "<ul class='mb-0 small'>" + sessions + "</ul>" : "") + "</li>" +
+                "<li class='list-group-item'><b>Unchanged:</b> " + diff.getUnchanged() + "</li>" +
+                "<li class='list-group-item'><b>Skipped rows:</b> " + skipped + "</li>" +
+                "</ul>" +
+                (reportToken != null
+                        ? "<div class='alert alert-warning'>" + buildUploadErrorSummary(reportToken) + "</div>"
+                        : "") +
+                (changes.length() > 0
+                        ? "<div class='table-responsive'><table class='table table-sm'><thead><tr>" +
+                          "<th>Change</th><th>Roll</th><th>Room</th><th>Seat</th><th>Exam</th></tr></thead>" +
+                          "<tbody>" + changes + "</tbody></table></div>" + more
+                        : "<p class='text-muted'>No changes to apply.</p>") +
+                "<form action='/admin/upload/commit' method='post' class='d-flex gap-2'>" +
+                "<input type='hidden' name='token' value='" + escape(token) + "'>" +
+                "<button type='submit' class='btn btn-primary'" + (diff.isEmpty() ? " disabled" : "") + ">Apply changes</button>" +
+                "<a class='btn btn-outline-secondary' href='/admin'>Cancel</a>" +
+                "</form>" +
+                "</div></div></body></html>";
+    }
+
+    private static void appendDiffRow(StringBuilder sb, String change, String roll, Student student) {
+        sb.append("<tr><td>").append(change).append("</td>")
+          .append("<td>").append(escape(roll)).append("</td>")
+          .append("<td>").append(student != null ? escape(student.getRoom()) : "").append("</td>")
+          .append("<td>").append(student != null ? escape(student.getSeatNumber()) : "").append("</td>")
+          .append("<td>").append(student != null ? escape(formatExamSession(student)) : "").append("</td></tr>");
+    }
+
+    private static void handleAdminDelete(Router.Request request) throws IOException {
+        HttpExchange exchange = request.getExchange();
+        if (rejectIfNotReady(exchange)) {
+            return;
+        }
+        if (!"post".equalsIgnoreCase(exchange.getRequestMethod())) {
+            request.redirect("/admin?status=delete_error");
+            return;
+        }
+        String roll = request.form("roll").trim();
+        // With examDate/examTime only that sitting goes; without, every sitting of the roll.
+        boolean ok = withShardLocks(List.of(roll), () -> request.hasForm("examDate") && request.hasForm("examTime")
+                ? db.deleteSitting(roll, request.form("examDate"), request.form("examTime"))
+                : db.deleteStudent(roll));
+        if (ok) {
+            onRosterChanged();
+        }
+        String redirect = ok ? "/admin?status=delete_success" : "/admin?status=delete_error";
+        request.redirect(redirect);
+    }
+
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        return etagMatches(ifNoneMatch, etag, true);
+    }
+
+    // "*" matches any current representation, so only when one exists.
+    private static boolean etagMatches(String ifNoneMatch, String etag, boolean exists) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (("*".equals(tag) && exists) || etag.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Door sheets and seat maps for every room, written under data/sheets.
+    // ?session=<key> limits the run to one session; ?format=zip downloads them.
+    private static void handleAdminSheets(Router.Request request) throws IOException {
+        HttpExchange exchange = request.getExchange();
+        if (rejectIfNotReady(exchange)) {
+            return;
+        }
+        String session = request.query("session");
+        RoomSheetGenerator.Result result;
+        try {
+            result = roomSheets.generate(db.getAllStudents(), session);
+        } catch (IOException e) {
+            EventLog.error("sheets", "Error generating room sheets: " + e.getMessage());
+            sendResponse(request, "<div class='alert alert-danger'>Unable to generate room sheets.</div>");
+            return;
+        }
+        if ("zip".equals(request.query("format"))) {
+            exchange.getResponseHeaders().set("Content-Type", "application/zip");
+            exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"room-sheets.zip\"");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream os = exchange.getResponseBody()) {
+                roomSheets.writeZip(result, os);
+            }
+            return;
+        }
+        StringBuilder rows = new StringBuilder();
+        for (RoomSheetGenerator.RoomSheet sheet : result.getSheets()) {
+            rows.append("<tr><td>").append(escape(sheet.getSession())).append("</td>")
+                .append("<td>").append(escape(sheet.getRoom())).append("</td>")
+                .append("<td>").append(sheet.getStudentCount()).append("</td>")
+                .append("<td>").append(sheet.isRegenerated() ? "Regenerated" : "Unchanged").append("</td></tr>");
+        }
+        String zipLink = "/admin/sheets?format=zip" +
+                (session.isEmpty() ? "" : "&session=" + URLEncoder.encode(session, StandardCharsets.UTF_8));
+        String html = "<!DOCTYPE html>" +
+                "<html lang='en'><head>" +
+                "<meta charset='UTF-8'>" +
+                "<meta name='viewport' content='width=device-width, initial-scale=1.0'>" +
+                "<title>Room Sheets - Exam Seating</title>" +
+                "<link href='https://cdn.jsdelivr.net/npm/bootstrap@5.3.0/dist/css/bootstrap.min.css' rel='stylesheet'>" +
+                "</head><body class='bg-light'>" +
+                "<div class='container mt-5'>" +
+                "<div class='card shadow-lg p-4 rounded-4'>" +
+                "<h2 class='mb-1'>Room Sheets</h2>" +
+                "<p class='text-muted'>" + result.getSheets().size() + " room sheet(s), " +
+                result.getRegeneratedCount() + " regenerated in " + result.getElapsedMillis() + " ms. " +
+                "Files are written to data/sheets.</p>" +
+                "<div class='mb-3'><a class='btn btn-primary' href='" + escape(zipLink) + "'>Download ZIP</a> " +
+                "<a class='btn btn-outline-secondary' href='/admin'>Back to Admin</a></div>" +
+                "<div class='table-responsive'><table class='table align-middle'>" +
+                "<thead><tr><th>Session</th><th>Room</th><th>Students</th><th>Status</th></tr></thead>" +
+                "<tbody>" + rows + "</tbody></table></div>" +
+                "</div></div></body></html>";
+        sendResponse(request, html);
+    }
+
+    // Archive of completed sessions: move past dates out of the hot store and
+    // look up archived sittings by roll.
+    private static void handleAdminArchive(Router.Request request) throws IOException {
+        HttpExchange exchange = request.getExchange();
+        if (rejectIfNotReady(exchange)) {
+            return;
+        }
+        if ("post".equalsIgnoreCase(exchange.getRequestMethod())) {
+            LocalDate cutoff = SessionArchive.parseDate(request.form("before"));
+            int moved = cutoff != null ? archiveSessions(cutoff) : -1;
+            request.redirect("/admin/archive?archived=" + moved);
+            return;
+        }
+        String archived = request.query("archived");
+        String roll = request.query("roll").trim();
+        String message = "";
+        if (archived.startsWith("-")) {
+            message = "<div class='alert alert-danger'>Unable to archive sessions. Please check the date.</div>";
+        } else if (!archived.isEmpty()) {
+            message = "<div class='alert alert-success'>Archived " + escape(archived) + " row(s).</div>";
+        }
+        StringBuilder results = new StringBuilder();
+        if (!roll.isEmpty()) {
+            List<Student> matches = sessionArchive.find(roll);
+            if (matches.isEmpty()) {
+                results.append("<p class='text-muted'>No archived sittings for ").append(escape(roll)).append(".</p>");
+            } else {
+                results.append("<ul class='list-group mb-3'>");
+                for (Student student : matches) {
+                    results.append("<li class='list-group-item'>").append(escape(formatExamSession(student)))
+                           .append(" &middot; ").append(escape(student.getRoom()))
+                           .append(" &middot; ").append(escape(student.getSeatNumber())).append("</li>");
+                }
+                results.append("</ul>");
+            }
+        }
+        StringBuilder files = new StringBuilder();
+        for (Path file : sessionArchive.listArchives()) {
+            files.append("<span class='badge bg-light text-dark border me-1 mb-1'>")
+                 .append(escape(file.getFileName().toString())).append("</span>");
+        }
+        String html = "<!DOCTYPE html>" +
+                "<html lang='en'><head>" +
+                "<meta charset='UTF-8'>" +
+                "<meta name='viewport' content='width=device-width, initial-scale=1.0'>" +
+                "<title>Archive - Exam Seating</title>" +
+                "<link href='https://cdn.jsdelivr.net/npm/bootstrap@5.3.0/dist/css/bootstrap.min.css' rel='stylesheet'>" +
+                "</head><body class='bg-light'>" +
+                "<div class='container mt-5'>" +
+                "<div class='card shadow-lg p-4 rounded-4'>" +
+                "<h2 class='mb-1'>Session Archive</h2>" +
+                "<p class='text-muted'>Completed sessions are stored compressed in data/archive and kept out of searches.</p>" +
+                message +
+                "<form action='/admin/archive' method='post' class='row g-2 align-items-end mb-4'>" +
+                "<div class='col-md-6'><label class='form-label' for='before'>Archive sessions dated before</label>" +
+                "<input class='form-control' type='date' id='before' name='before' value='" + LocalDate.now() + "' required></div>" +
+                "<div class='col-md-3 d-grid'><button type='submit' class='btn btn-primary'>Archive</button></div>" +
+                "</form>" +
+                "<form action='/admin/archive' method='get' class='row g-2 align-items-end mb-3'>" +
+                "<div class='col-md-6'><label class='form-label' for='roll'>Look up archived roll</label>" +
+                "<input class='form-control' id='roll' name='roll' value='" + escape(roll) + "'></div>" +
+                "<div class='col-md-3 d-grid'><button type='submit' class='btn btn-outline-primary'>Search archive</button></div>" +
+                "</form>" +
+                results +
+                "<h5 class='mt-3'>Archive files</h5>" +
+                (files.length() > 0 ? "<div>" + files + "</div>" : "<p class='text-muted'>No archived sessions yet.</p>") +
+                "<a class='btn btn-outline-secondary mt-4' href='/admin'>Back to Admin</a>" +
+                "</div></div></body></html>";
+        sendResponse(request, html);
+    }
+
+    // Live occupancy and search load per session and room, from SeatStats'
+    // counters only. Sessions before today are hidden unless ?all=1.
+    private static void handleAdminStats(Router.Request request) throws IOException {
+        boolean all = "1".equals(request.query("all"));
+        LocalDate today = LocalDate.now();
+        StringBuilder sessions = new StringBuilder();
+        String currentSession = null;
+        for (SeatStats.Bucket bucket : seatStats.getBuckets()) {
+            LocalDate date = SessionArchive.parseDate(bucket.getExamDate());
+            if (!all && date != null && date.isBefore(today)) {
+                continue;
+            }
+            String session = bucket.getExamDate() + " " + bucket.getExamTime();
+            if (!session.equals(currentSession)) {
+                if (currentSession != null) {
+                    sessions.append("</tbody></table>");
+                }
+                currentSession = session;
+                sessions.append("<h5 class='mt-4'>").append(escape(session)).append("</h5>")
+                        .append("<table class='table table-sm align-middle'><thead><tr>")
+                        .append("<th>Room</th><th>Exam</th><th style='width:35%'>Occupancy</th>")
+                        .append("<th class='text-end'>Searches</th><th>Last hour</th></tr></thead><tbody>");
+            }
+            int capacity = rooms.lookup(bucket.getRoom(), bucket.getFloor()).getCapacity();
+            long seated = bucket.getSeated();
+            int percent = (int) Math.min(100, seated * 100 / Math.max(1, capacity));
+            String bar = seated > capacity ? "bg-danger" : percent >= 90 ? "bg-warning" : "bg-success";
+            sessions.append("<tr><td>").append(escape(bucket.getRoom()))
+                    .append("<div class='text-muted small'>").append(escape(bucket.getFloor())).append("</div></td>")
+                    .append("<td>").append(escape(bucket.getExamName())).append("</td>")
+                    .append("<td><div class='progress' style='height:18px'><div class='progress-bar ").append(bar)
+                    .append("' style='width:").append(percent).append("%'></div></div>")
+                    .append("<div class='small text-muted'>").append(seated).append(" / ").append(capacity)
+                    .append(" seats</div></td>")
+                    .append("<td class='text-end'>").append(bucket.getSearches()).append("</td>")
+                    .append("<td>").append(sparkline(bucket.getSearchSeries(), 120, 24)).append("</td></tr>");
         }
+        if (currentSession != null) {
+            sessions.append("</tbody></table>");
+        } else {
+            sessions.append("<p class='text-muted'>No upcoming sessions.</p>");
+        }
+        StringBuilder missed = new StringBuilder();
+        for (Map.Entry<String, Long> entry : seatStats.topMissedRolls(10)) {
+            missed.append("<li class='list-group-item d-flex justify-content-between'><span>")
+                  .append(escape(entry.getKey())).append("</span><span class='badge bg-secondary'>")
+                  .append(entry.getValue()).append("</span></li>");
+        }
+        String html = "<!DOCTYPE html>" +
+                "<html lang='en'><head>" +
+                "<meta charset='UTF-8'>" +
+                "<meta name='viewport' content='width=device-width, initial-scale=1.0'>" +
+                "<meta http-equiv='refresh' content='10'>" +
+                "<title>Live Stats - Exam Seating</title>" +
+                "<link href='https://cdn.jsdelivr.net/npm/bootstrap@5.3.0/dist/css/bootstrap.min.css' rel='stylesheet'>" +
+                "</head><body class='bg-light'>" +
+                "<div class='container mt-5 mb-5'>" +
+                "<div class='card shadow-lg p-4 rounded-4'>" +
+                "<h2 class='mb-1'>Live Stats</h2>" +
+                "<p class='text-muted'>Refreshes every 10 seconds. Searches answered from the browser cache (304) count in the total only.</p>" +
+                "<div class='row g-3 mb-2'>" +
+                "<div class='col-md-3'><div class='border rounded-3 p-3 bg-white'><div class='text-muted small'>Searches</div>" +
+                "<div class='fs-4 fw-semibold'>" + seatStats.getSearchCount() + "</div></div></div>" +
+                "<div class='col-md-3'><div class='border rounded-3 p-3 bg-white'><div class='text-muted small'>Not found</div>" +
+                "<div class='fs-4 fw-semibold'>" + seatStats.getMissCount() + "</div></div></div>" +
+                "<div class='col-md-6'><div class='border rounded-3 p-3 bg-white'><div class='text-muted small'>Searches per minute, last hour</div>" +
+                sparkline(seatStats.getSearchSeries(), 360, 40) + "</div></div>" +
+                "</div>" +
+                "<div class='row'>" +
+                "<div class='col-lg-8'>" + sessions + "</div>" +
+                "<div class='col-lg-4'><h5 class='mt-4'>Top not-found rolls</h5>" +
+                (missed.length() > 0 ? "<ul class='list-group'>" + missed + "</ul>" : "<p class='text-muted'>None yet.</p>") +
+                "</div></div>" +
+                "<div class='mt-4'>" +
+                (all ? "<a href='/admin/stats'>Hide past sessions</a>" : "<a href='/admin/stats?all=1'>Show past sessions</a>") +
+                "</div>" +
+                "<a class='btn btn-outline-secondary mt-4' href='/admin'>Back to Admin</a>" +
+                "</div></div></body></html>";
+        sendResponse(request, html);
+    }
+
+    // Inline SVG line over a per-minute series, scaled to its own peak.
+    private static String sparkline(long[] series, int width, int height) {
+        long peak = 0;
+        for (long value : series) {
+            peak = Math.max(peak, value);
+        }
+        long scale = Math.max(1, peak);
+        StringBuilder points = new StringBuilder();
+        for (int i = 0; i < series.length; i++) {
+            if (i > 0) {
+                points.append(' ');
+            }
+            points.append(i * (width - 2) / Math.max(1, series.length - 1) + 1).append(',')
+                  .append(height - 1 - series[i] * (height - 2) / scale);
+        }
+        return "<svg width='" + width + "' height='" + height + "' viewBox='0 0 " + width + " " + height + "'>" +
+                "<polyline fill='none' stroke='#6c63ff' stroke-width='1.5' points='" + points + "'/>" +
+                "<title>peak " + peak + "/min</title></svg>";
     }
 
-    // Helper: build <img> tag with embedded base64 data, or a warning if not found
-    private static String buildFloorPlanImageHtml(String room, String floor) {
+    // Point-in-time restore from the change journal. A POST previews the
+    // changes; posting again with apply=1 writes them through applyDiff, so
+    // searches keep being served throughout and the restore is journaled too.
+    private static void handleAdminRestore(Router.Request request) throws IOException {
+        HttpExchange exchange = request.getExchange();
+        if (rejectIfNotReady(exchange)) {
+            return;
+        }
+        String message = "";
+        String at = request.isMethod("POST") ? request.form("at").trim() : request.query("at").trim();
+        if (request.isMethod("POST")) {
+            LocalDateTime when = parseRestoreTime(at);
+            RosterDiff diff = null;
+            try {
+                diff = when == null ? null : db.planRestore(when.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+            } catch (IOException | RuntimeException e) {
+                EventLog.error("journal", "Restore planning failed: " + e.getMessage());
+            }
+            if (diff == null) {
+                message = "<div class='alert alert-danger'>Cannot restore to that time. Check that it is within the journal's range.</div>";
+            } else if ("1".equals(request.form("apply"))) {
+                if (db.applyDiff(diff)) {
+                    EventLog.info("journal", "Restored roster to " + when + ": " + diff.getChangeCount() + " change(s).");
+                    if (!diff.isEmpty()) {
+                        onRosterChanged();
+                    }
+                    request.redirect("/admin/restore?restored=" + diff.getChangeCount());
+                } else {
+                    request.redirect("/admin/restore?restored=-1");
+                }
+                return;
+            } else {
+                message = "<div class='alert alert-info'>Restoring to " + escape(when.toString().replace('T', ' ')) + " adds " +
+                        diff.getInserts().size() + ", updates " + diff.getUpdates().size() + " and deletes " +
+                        diff.getDeletes().size() + " sitting(s); " + diff.getUnchanged() + " stay as they are.</div>" +
+                        (diff.isEmpty() ? "" :
+                        "<form action='/admin/restore' method='post' class='mb-4'>" +
+                        "<input type='hidden' name='at' value='" + escape(at) + "'>" +
+                        "<input type='hidden' name='apply' value='1'>" +
+                        "<button type='submit' class='btn btn-danger'>Apply restore</button>" +
+                        "</form>");
+            }
+        } else {
+            String restored = request.query("restored");
+            if (restored.startsWith("-")) {
+                message = "<div class='alert alert-danger'>Unable to apply the restore.</div>";
+            } else if (!restored.isEmpty()) {
+                message = "<div class='alert alert-success'>Restored: " + escape(restored) + " sitting(s) changed.</div>";
+            }
+        }
+        // A sharded restore needs every shard, so it reaches back only as
+        // far as the shard with the newest oldest checkpoint.
+        long oldest = 0;
+        StringBuilder journals = new StringBuilder();
+        for (SeatingDatabase shard : db.getShards()) {
+            ChangeJournal journal = shard.getJournal();
+            if (journal == null) {
+                oldest = -1;
+                continue;
+            }
+            long shardOldest = journal.getOldestRestorableMillis();
+            oldest = oldest < 0 || shardOldest < 0 ? -1 : Math.max(oldest, shardOldest);
+            journals.append("<li class='list-group-item'>").append(escape(journal.getDirectory().toString()))
+                    .append(" &middot; ").append(journal.getLastSequence()).append(" record(s)</li>");
+        }
+        String range = oldest > 0
+                ? "<p class='text-muted'>Restorable from " + escape(LocalDateTime.ofInstant(Instant.ofEpochMilli(oldest),
+                        ZoneId.systemDefault()).withNano(0).toString().replace('T', ' ')) + " to now.</p>"
+                : "<p class='text-muted'>The change journal is off (SEATING_JOURNAL=false).</p>";
+        String html = "<!DOCTYPE html>" +
+                "<html lang='en'><head>" +
+                "<meta charset='UTF-8'>" +
+                "<meta name='viewport' content='width=device-width, initial-scale=1.0'>" +
+                "<title>Restore - Exam Seating</title>" +
+                "<link href='https://cdn.jsdelivr.net/npm/bootstrap@5.3.0/dist/css/bootstrap.min.css' rel='stylesheet'>" +
+                "</head><body class='bg-light'>" +
+                "<div class='container mt-5'>" +
+                "<div class='card shadow-lg p-4 rounded-4'>" +
+                "<h2 class='mb-1'>Point-in-time Restore</h2>" +
+                range +
+                message +
+                "<form action='/admin/restore' method='post' class='row g-2 align-items-end mb-4'>" +
+                "<div class='col-md-6'><label class='form-label' for='at'>Restore the roster as it was at</label>" +
+                "<input class='form-control' type='datetime-local' step='1' id='at' name='at' value='" +
+                escape(at.isEmpty() ? LocalDateTime.now().withNano(0).toString() : at) + "' required></div>" +
+                "<div class='col-md-3 d-grid'><button type='submit' class='btn btn-primary'>Preview</button></div>" +
+                "</form>" +
+                "<h5 class='mt-3'>Journals</h5>" +
+                (journals.length() > 0 ? "<ul class='list-group mb-3'>" + journals + "</ul>" : "<p class='text-muted'>None.</p>") +
+                "<a class='btn btn-outline-secondary mt-4' href='/admin'>Back to Admin</a>" +
+                "</div></div></body></html>";
+        sendResponse(request, html);
+    }
+
+    // "2026-10-19T14:30" or with seconds, as a datetime-local input sends it.
+    private static LocalDateTime parseRestoreTime(String value) {
+        try {
+            return LocalDateTime.parse(value.replace(' ', 'T'));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static void sendResponse(Router.Request request, String response) throws IOException {
+        request.send(200, "text/html; charset=UTF-8", response.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Helper: build a responsive <img> over the cached floor plan widths, with
+    // the seat marked when the plan has a seat map, or a warning if not found
+    private static String buildFloorPlanImageHtml(RoomRegistry.Room layout, String seatLabel, ResultLinks links) {
         try {
-            String floorSlug = toFloorSlug(floor);      // e.g., "First Floor" -> "first"
-            String roomSlug = toRoomSlug(room);         // e.g., "Room-101" -> "room101"
-
-            // Support both .png and .jpg
-            Path path = findFloorPlanPath(floorSlug, roomSlug);
-            if (path != null && Files.exists(path)) {
-                byte[] bytes = Files.readAllBytes(path);
-                String base64 = Base64.getEncoder().encodeToString(bytes);
-                String mime = getImageMimeFromFileName(path.getFileName().toString());
-                return "<img src='data:" + mime + ";base64," + base64 + "' alt='Floor plan for " +
-                        escape(room) + " (" + escape(floor) + ")'>";
+            String room = layout.getName();
+            String floor = layout.getFloor();
+            FloorPlanImages.Plan plan = layout.getPlan();
+            if (plan != null) {
+                String seat = overlaySeat(plan, seatLabel);
+                StringBuilder srcset = new StringBuilder();
+                for (FloorPlanImages.Variant variant : plan.getVariants().values()) {
+                    if (srcset.length() > 0) {
+                        srcset.append(", ");
+                    }
+                    srcset.append(links.floorPlan(plan, variant, seat)).append(' ').append(variant.getWidth()).append('w');
+                }
+                FloorPlanImages.Variant widest = plan.getVariants().lastEntry().getValue();
+                FloorPlanImages.Variant fallback = plan.forWidth(640);
+                // The plan sits in a half-width column from the lg breakpoint up.
+                return "<img src='" + links.floorPlan(plan, fallback, seat) + "' srcset='" + srcset + "'" +
+                        " sizes='(min-width: 992px) 50vw, 100vw'" +
+                        " width='" + widest.getWidth() + "' height='" + widest.getHeight() + "'" +
+                        " loading='lazy' decoding='async' alt='Floor plan for " +
+                        escape(room) + " (" + escape(floor) + ")'>" +
+                        (seat != null
+                                ? "<div class='text-muted text-center mt-2' style='font-size:0.9rem;'>Your seat is marked on the plan</div>"
+                                : "");
             } else {
-                String expected = "floorplan_" + floorSlug + "_" + roomSlug + ".png or .jpg";
                 return "<div class='alert alert-warning mb-0'>No floor plan found. Expected: static/" +
-                        expected + "</div>";
+                        escape(layout.getAsset()) + "</div>";
             }
         } catch (Exception ex) {
             return "<div class='alert alert-danger mb-0'>Failed to load floor plan.</div>";
         }
     }
 
-    private static Path findFloorPlanPath(String floorSlug, String roomSlug) {
-        Path png = Paths.get("static", "floorplan_" + floorSlug + "_" + roomSlug + ".png");
-        if (Files.exists(png)) return png;
-        Path jpg = Paths.get("static", "floorplan_" + floorSlug + "_" + roomSlug + ".jpg");
-        if (Files.exists(jpg)) return jpg;
-        return null;
+    // Canonical seat name on the plan's seat map: the label itself ("S03"),
+    // else its number in grid form ("S3"); null when the seat is unmapped.
+    private static String overlaySeat(FloorPlanImages.Plan plan, String seatLabel) {
+        if (seatLabel == null || seatLabel.isBlank()) {
+            return null;
+        }
+        if (plan.seatPosition(seatLabel) != null) {
+            return seatLabel.trim().toUpperCase();
+        }
+        int index = extractSeatIndex(seatLabel);
+        return index > 0 && plan.seatPosition("S" + index) != null ? "S" + index : null;
     }
 
-    private static String getImageMimeFromFileName(String fileName) {
-        String f = fileName.toLowerCase();
-        if (f.endsWith(".png")) return "image/png";
-        if (f.endsWith(".jpg") || f.endsWith(".jpeg")) return "image/jpeg";
-        if (f.endsWith(".svg")) return "image/svg+xml";
-        return "application/octet-stream";
+    // Renders the seat overlays for sittings starting within
+    // SEATING_OVERLAY_PRERENDER_MINUTES, busiest rooms first, at every width,
+    // until the overlay cache is three-quarters full.
+    private static void prerenderSeatOverlays() {
+        prerenderSeatOverlays(Long.MAX_VALUE);
+    }
+
+    // As above, stopping once System.nanoTime() passes deadline.
+    private static void prerenderSeatOverlays(long deadline) {
+        if (!db.isReady()) {
+            return;
+        }
+        long start = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime horizon = now.plusMinutes(AppConfig.longValue("SEATING_OVERLAY_PRERENDER_MINUTES", 120L));
+        Map<FloorPlanImages.Plan, Set<String>> seatsByPlan = new HashMap<>();
+        for (Student student : db.getAllStudents()) {
+            LocalDate date = SessionArchive.parseDate(student.getExamDate());
+            LocalTime time = SeatingDatabase.parseStartTime(student.getExamTime());
+            if (date == null || time == null) {
+                continue;
+            }
+            LocalDateTime startsAt = date.atTime(time);
+            if (startsAt.isBefore(now) || startsAt.isAfter(horizon)) {
+                continue;
+            }
+            FloorPlanImages.Plan plan = rooms.lookup(student.getRoom(), student.getFloor()).getPlan();
+            String seat = plan != null ? overlaySeat(plan, student.getSeatNumber()) : null;
+            if (seat != null) {
+                seatsByPlan.computeIfAbsent(plan, p -> new LinkedHashSet<>()).add(seat);
+            }
+        }
+        List<Map.Entry<FloorPlanImages.Plan, Set<String>>> busiest = new ArrayList<>(seatsByPlan.entrySet());
+        busiest.sort((a, b) -> Integer.compare(b.getValue().size(), a.getValue().size()));
+        long budget = AppConfig.longValue("SEATING_OVERLAY_CACHE_MB", 64L) * 1024 * 1024 * 3 / 4;
+        int rendered = 0;
+        try {
+            for (Map.Entry<FloorPlanImages.Plan, Set<String>> entry : busiest) {
+                for (String seat : entry.getValue()) {
+                    for (FloorPlanImages.Variant variant : entry.getKey().getVariants().values()) {
+                        if (seatOverlays.getBytes() >= budget
+                                || (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0)) {
+                            return;
+                        }
+                        if (seatOverlays.prerender(entry.getKey(), variant, seat)) {
+                            rendered++;
+                        }
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            EventLog.error("overlays", "Pre-render failed: " + e.getMessage());
+        } finally {
+            if (rendered > 0) {
+                EventLog.info("overlays", "Pre-rendered " + rendered + " seat overlay(s) for " + busiest.size() +
+                        " room(s) in " + (System.nanoTime() - start) / 1_000_000L + " ms");
+            }
+        }
     }
 
     // Seating grid helpers
-    private static String buildSeatGridHtml(String room, String seatLabel) {
+    private static String buildSeatGridHtml(RoomRegistry.Room layout, String seatLabel) {
         int seatIndex = extractSeatIndex(seatLabel); // 1-based
-        int totalSeats = seatCountForRoom(room);
+        int totalSeats = layout.getCapacity();
         if (seatIndex > totalSeats) totalSeats = seatIndex; // ensure seat is visible
 
         StringBuilder sb = new StringBuilder();
-        sb.append("<div class='seat-grid'>");
+        sb.append("<div class='seat-grid' style='grid-template-columns:repeat(")
+          .append(layout.getColumns()).append(",48px)'>");
         for (int i = 1; i <= totalSeats; i++) {
             boolean selected = (i == seatIndex);
             sb.append("<div class='seat")
@@ -670,29 +2359,24 @@ public class SeatingWebServer {
         }
     }
 
-    private static int seatCountForRoom(String room) {
-        if (room == null) return 48;
-        String key = room.trim().toLowerCase().replace(' ', '-'); // e.g., "Room-101" -> "room-101"
-        Integer count = ROOM_SEAT_COUNTS.get(key);
-        return count != null ? count : 48;
-    }
-
-    // Slug helpers (for floor-plan file names)
-    private static String toFloorSlug(String floor) {
-        if (floor == null) return "unknown";
-        String f = floor.toLowerCase();
-        if (f.contains("first")) return "first";
-        if (f.contains("second")) return "second";
-        if (f.contains("third")) return "third";
-        if (f.contains("ground")) return "ground";
-        // fallback: first token letters/numbers only
-        String token = f.split("\\s+")[0];
-        return token.replaceAll("[^a-z0-9]", "");
+    private static String jsonString(String s) {
+        if (s == null) return "null";
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
     }
 
-    private static String toRoomSlug(String room) {
-        if (room == null) return "unknown";
-        return room.toLowerCase().replaceAll("[^a-z0-9]", ""); // "Room-101" -> "room101"
+    private static String nullToEmpty(String s) {
+        return s == null ? "" : s;
     }
 
     private static String escape(String s) {
@@ -701,56 +2385,10 @@ public class SeatingWebServer {
                 .replace("\"", "&quot;").replace("'", "&#39;");
     }
 
-    private static Map<String, String> parseFormBody(String body) {
-        Map<String, String> data = new HashMap<>();
-        if (body == null || body.isBlank()) {
-            return data;
-        }
-        String[] pairs = body.split("&");
-        for (String pair : pairs) {
-            String[] kv = pair.split("=", 2);
-            if (kv.length == 2) {
-                String key = URLDecoder.decode(kv[0], StandardCharsets.UTF_8);
-                String value = URLDecoder.decode(kv[1], StandardCharsets.UTF_8);
-                data.put(key, value);
-            }
-        }
-        return data;
-    }
-
     private static boolean isValidAdminCredentials(String username, String password) {
         return "admin".equalsIgnoreCase(username) && "admin123".equals(password);
     }
 
-    private static boolean isAdminAuthenticated(HttpExchange exchange) {
-        String cookieHeader = exchange.getRequestHeaders().getFirst("Cookie");
-        if (cookieHeader == null) {
-            return false;
-        }
-        String[] cookies = cookieHeader.split(";");
-        for (String cookie : cookies) {
-            String[] kv = cookie.trim().split("=", 2);
-            if (kv.length == 2 && "admin".equals(kv[0]) && "1".equals(kv[1])) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private static String getQueryParam(String query, String key) {
-        if (query == null || key == null) {
-            return "";
-        }
-        String[] pairs = query.split("&");
-        for (String pair : pairs) {
-            String[] kv = pair.split("=", 2);
-            if (kv.length == 2 && key.equals(kv[0])) {
-                return URLDecoder.decode(kv[1], StandardCharsets.UTF_8);
-            }
-        }
-        return "";
-    }
-
     private static String extractBoundary(String contentType) {
         String[] parts = contentType.split(";");
         for (String part : parts) {
@@ -788,51 +2426,96 @@ public class SeatingWebServer {
         return null;
     }
 
+    // Null when the upload was interrupted.
     private static CsvUploadResult ingestCsv(String csvContent) {
-        String[] lines = csvContent.split("\\r?\\n");
-        int added = 0;
-        int skipped = 0;
-        for (String line : lines) {
-            if (line == null || line.isBlank()) {
-                continue;
-            }
-            String trimmed = line.trim();
-            if (trimmed.toLowerCase().startsWith("roll")) {
-                continue;
-            }
-            String[] parts = trimmed.split(",", -1);
-            if (parts.length < 4) {
-                skipped++;
-                continue;
-            }
-            String roll = parts[0].trim();
-            String room = parts[1].trim();
-            String floor = parts[2].trim();
-            String seat = parts[3].trim();
-            String examName = parts.length > 4 ? parts[4].trim() : "N/A";
-            String examDate = parts.length > 5 ? parts[5].trim() : "N/A";
-            String examTime = parts.length > 6 ? parts[6].trim() : "N/A";
-            if (roll.isEmpty() || room.isEmpty() || floor.isEmpty() || seat.isEmpty()) {
-                skipped++;
-                continue;
-            }
-            Student student = new Student(roll, room, floor, seat, examName, examDate, examTime);
-            if (db.addStudent(student)) {
-                added++;
-            } else {
-                skipped++;
-            }
+        long start = System.nanoTime();
+        CsvIngestPipeline.Result result;
+        try {
+            // Each batch locks only its own shards, so a long import lets
+            // other institutions' writes in between batches.
+            result = csvPipeline.ingest(csvContent, rows -> {
+                List<String> rolls = new ArrayList<>(rows.size());
+                rows.forEach(student -> rolls.add(student.getRollNumber()));
+                return withShardLocks(rolls, () -> db.addStudents(rows));
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        EventLog.info("upload", "Ingested " + result.getSaved() + " of " + result.getRows() + " row(s) in " +
+                (System.nanoTime() - start) / 1_000_000 + " ms; " + result.getErrorCount() + " rejected");
+        return new CsvUploadResult(result.getSaved(), result.getErrorCount(), storeUploadReport(result));
+    }
+
+    // Parses and validates without storing, for the diff preview; null when
+    // interrupted.
+    private static ParsedCsv parseCsvStudents(String csvContent) {
+        List<Student> students = new ArrayList<>();
+        CsvIngestPipeline.Result result;
+        try {
+            result = csvPipeline.ingest(csvContent, rows -> students.addAll(rows));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return new ParsedCsv(students, result.getErrorCount(), storeUploadReport(result));
+    }
+
+    private static class ParsedCsv {
+        private final List<Student> students;
+        private final int skipped;
+        private final String reportToken;
+
+        private ParsedCsv(List<Student> students, int skipped, String reportToken) {
+            this.students = students;
+            this.skipped = skipped;
+            this.reportToken = reportToken;
+        }
+    }
+
+    private static class RouteStats {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder micros = new LongAdder();
+    }
+
+    private static class UploadReport {
+        private final List<CsvIngestPipeline.LineError> errors;
+        private final int errorCount;
+        private final long createdAt = System.currentTimeMillis();
+
+        private UploadReport(List<CsvIngestPipeline.LineError> errors, int errorCount) {
+            this.errors = errors;
+            this.errorCount = errorCount;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() - createdAt > PENDING_DIFF_TTL_MS;
+        }
+    }
+
+    private static class PendingDiff {
+        private final RosterDiff diff;
+        private final long createdAt = System.currentTimeMillis();
+
+        private PendingDiff(RosterDiff diff) {
+            this.diff = diff;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() - createdAt > PENDING_DIFF_TTL_MS;
         }
-        return new CsvUploadResult(added, skipped);
     }
 
     private static class CsvUploadResult {
         private final int added;
         private final int skipped;
+        private final String reportToken;
 
-        private CsvUploadResult(int added, int skipped) {
+        private CsvUploadResult(int added, int skipped, String reportToken) {
             this.added = added;
             this.skipped = skipped;
+            this.reportToken = reportToken;
         }
     }
 
@@ -921,6 +2604,8 @@ public class SeatingWebServer {
             sb.append("<td>");
             sb.append("<form action='/admin/delete' method='post' onsubmit=\"return confirm('Delete this student?');\">");
             sb.append("<input type='hidden' name='roll' value='").append(escape(student.getRollNumber())).append("'>");
+            sb.append("<input type='hidden' name='examDate' value='").append(escape(student.getExamDate())).append("'>");
+            sb.append("<input type='hidden' name='examTime' value='").append(escape(student.getExamTime())).append("'>");
             sb.append("<button type='submit' class='btn-ghost'>Delete</button>");
             sb.append("</form>");
             sb.append("</td>");
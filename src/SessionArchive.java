@@ -0,0 +1,146 @@
+// SessionArchive.java
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Cold storage for completed exam sessions. Rows whose exam date is before
+// the cutoff move out of the hot store into one gzip-compressed CSV per exam
+// date (data/archive/session-YYYY-MM-DD.csv.gz), so the hot store only holds
+// current and upcoming sessions. Archived rows are read back on demand.
+public class SessionArchive {
+    private final Path directory;
+
+    public SessionArchive(Path directory) {
+        this.directory = directory;
+    }
+
+    // Archives every row dated before cutoff and removes it from the hot store.
+    // Rows without a parseable date stay hot. Returns the number of rows moved.
+    public synchronized int archiveBefore(SeatingStore db, LocalDate cutoff) throws IOException {
+        Map<String, List<Student>> byDate = new TreeMap<>();
+        for (Student student : db.getAllStudents()) {
+            LocalDate date = parseDate(student.getExamDate());
+            if (date != null && date.isBefore(cutoff)) {
+                byDate.computeIfAbsent(date.toString(), d -> new ArrayList<>()).add(student);
+            }
+        }
+        if (byDate.isEmpty()) {
+            return 0;
+        }
+        // Write the archive files first so a failure never loses rows.
+        RosterDiff removal = new RosterDiff();
+        int moved = 0;
+        for (Map.Entry<String, List<Student>> entry : byDate.entrySet()) {
+            writeSession(entry.getKey(), entry.getValue());
+            for (Student student : entry.getValue()) {
+                removal.addDelete(student);
+                moved++;
+            }
+        }
+        if (!db.applyDiff(removal)) {
+            throw new IOException("Archived " + moved + " row(s) but could not remove them from the hot store");
+        }
+        EventLog.info("archive", "Archived " + moved + " row(s) from " + byDate.size() + " exam date(s) before " + cutoff);
+        return moved;
+    }
+
+    // On-demand lookup across all archived sessions, newest first.
+    public List<Student> find(String roll) throws IOException {
+        List<Student> matches = new ArrayList<>();
+        if (roll == null || roll.isBlank()) {
+            return matches;
+        }
+        String key = roll.trim();
+        for (Path file : listArchives()) {
+            for (Student student : readSession(file)) {
+                if (student.getRollNumber().equalsIgnoreCase(key)) {
+                    matches.add(student);
+                }
+            }
+        }
+        return matches;
+    }
+
+    public List<Path> listArchives() throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "session-*.csv.gz")) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort(Comparator.comparing((Path p) -> p.getFileName().toString()).reversed());
+        return files;
+    }
+
+    private void writeSession(String date, List<Student> students) throws IOException {
+        Files.createDirectories(directory);
+        Path target = directory.resolve("session-" + date + ".csv.gz");
+        // Merge with rows archived earlier for the same date; the newer copy of
+        // a sitting wins.
+        Map<String, Student> merged = new LinkedHashMap<>();
+        if (Files.exists(target)) {
+            for (Student student : readSession(target)) {
+                merged.put(SeatingDatabase.rowKey(student), student);
+            }
+        }
+        for (Student student : students) {
+            merged.put(SeatingDatabase.rowKey(student), student);
+        }
+        Path temp = Files.createTempFile(directory, ".session-", ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(temp)), StandardCharsets.UTF_8))) {
+            for (Student student : merged.values()) {
+                writer.write(SeatingDatabase.toCsvRow(student));
+                writer.write('\n');
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private List<Student> readSession(Path file) throws IOException {
+        List<Student> students = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = SeatingDatabase.parseCsvRow(line);
+                if (parts.length >= 7) {
+                    students.add(new Student(parts[0], parts[1], parts[2], parts[3], parts[4], parts[5], parts[6]));
+                }
+            }
+        }
+        return students;
+    }
+
+    static LocalDate parseDate(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(value.trim());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
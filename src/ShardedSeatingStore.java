@@ -0,0 +1,418 @@
+// ShardedSeatingStore.java
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeSet;
+
+// One SeatingDatabase per institution, chosen by roll prefix. SEATING_SHARDS
+// lists them as "north=NC,NCE;south=SC": a roll goes to the shard with the
+// longest matching prefix (case-insensitive), and rolls that match none stay
+// in the default store (data/seating.db and data/seatingData.txt). Each shard
+// keeps its own files under data/shards/<name>/, its own writer and lookup
+// indexes, so one institution's upload only invalidates its own caches.
+public class ShardedSeatingStore implements SeatingStore {
+    private final SeatingDatabase defaultShard;
+    private final List<SeatingDatabase> shards = new ArrayList<>();
+    // Upper-cased prefix -> shard, longest prefix first.
+    private final Map<String, SeatingDatabase> prefixes = new LinkedHashMap<>();
+    private final Map<String, Long> routingPhases = new LinkedHashMap<>();
+
+    public ShardedSeatingStore(String spec, String dbFilePath, boolean deferOpen) {
+        Map<String, SeatingDatabase> byPrefix = new LinkedHashMap<>();
+        for (String entry : spec.split(";")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int eq = entry.indexOf('=');
+            String name = eq < 0 ? "" : entry.substring(0, eq).trim();
+            if (!name.matches("[A-Za-z0-9_-]+") || "default".equals(name)) {
+                throw new IllegalArgumentException("SEATING_SHARDS: bad shard name in \"" + entry.trim() + "\"");
+            }
+            Path dir = Path.of("data", "shards", name);
+            try {
+                Files.createDirectories(dir);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not create " + dir, e);
+            }
+            SeatingDatabase shard = new SeatingDatabase(name, dir.resolve("seating.db"),
+                    dir.resolve("seatingData.txt"), null, true);
+            shards.add(shard);
+            for (String prefix : entry.substring(eq + 1).split(",")) {
+                String key = prefix.trim().toUpperCase(Locale.ROOT);
+                if (key.isEmpty()) {
+                    continue;
+                }
+                if (byPrefix.putIfAbsent(key, shard) != null) {
+                    throw new IllegalArgumentException("SEATING_SHARDS: prefix " + key + " is listed twice");
+                }
+            }
+        }
+        defaultShard = new SeatingDatabase(dbFilePath, true);
+        shards.add(defaultShard);
+        byPrefix.entrySet().stream()
+                .sorted((a, b) -> b.getKey().length() - a.getKey().length())
+                .forEach(e -> prefixes.put(e.getKey(), e.getValue()));
+        if (!deferOpen) {
+            open();
+        }
+    }
+
+    // The shard that owns a roll.
+    @Override
+    public SeatingDatabase shardFor(String rollNumber) {
+        if (rollNumber == null) {
+            return defaultShard;
+        }
+        String roll = rollNumber.trim().toUpperCase(Locale.ROOT);
+        for (Map.Entry<String, SeatingDatabase> entry : prefixes.entrySet()) {
+            if (roll.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return defaultShard;
+    }
+
+    @Override
+    public List<SeatingDatabase> getShards() {
+        return Collections.unmodifiableList(shards);
+    }
+
+    // Opens every shard, then moves rows stored in the wrong shard to their
+    // owner: this is how an existing single-store roster is split up the
+    // first time, and how rows follow a prefix that moved between shards.
+    @Override
+    public synchronized void open() {
+        if (isReady() || isReadOnly()) {
+            return;
+        }
+        for (SeatingDatabase shard : shards) {
+            shard.open();
+        }
+        long start = System.nanoTime();
+        int moved = 0;
+        for (SeatingDatabase source : shards) {
+            if (source.isReadOnly()) {
+                continue;
+            }
+            Map<SeatingDatabase, RosterDiff> outgoing = new LinkedHashMap<>();
+            for (Student student : source.getAllStudents()) {
+                SeatingDatabase owner = shardFor(student.getRollNumber());
+                if (owner != source) {
+                    outgoing.computeIfAbsent(owner, k -> new RosterDiff()).addInsert(student);
+                }
+            }
+            for (Map.Entry<SeatingDatabase, RosterDiff> entry : outgoing.entrySet()) {
+                List<Student> rows = entry.getValue().getInserts();
+                RosterDiff removal = new RosterDiff();
+                rows.forEach(removal::addDelete);
+                // Copy before deleting, so a failure leaves a duplicate
+                // rather than a lost row; the next start retries the move.
+                if (entry.getKey().applyDiff(entry.getValue()) && source.applyDiff(removal)) {
+                    moved += rows.size();
+                } else {
+                    EventLog.error("storage", "Could not move " + rows.size() + " rows from shard "
+                            + source.getName() + " to " + entry.getKey().getName() + ".");
+                }
+            }
+        }
+        if (moved > 0) {
+            EventLog.info("storage", "Moved " + moved + " rows to the shard that owns their roll prefix.");
+        }
+        synchronized (routingPhases) {
+            routingPhases.put("rebalance", (System.nanoTime() - start) / 1_000_000L);
+        }
+    }
+
+    @Override
+    public boolean isReady() {
+        for (SeatingDatabase shard : shards) {
+            if (!shard.isReady()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        for (SeatingDatabase shard : shards) {
+            shard.close();
+        }
+    }
+
+    // Each shard's phases as "<shard>.<phase>", then the rebalance.
+    @Override
+    public Map<String, Long> getStartupPhases() {
+        Map<String, Long> phases = new LinkedHashMap<>();
+        for (SeatingDatabase shard : shards) {
+            shard.getStartupPhases().forEach((phase, millis) -> phases.put(shard.getName() + "." + phase, millis));
+        }
+        synchronized (routingPhases) {
+            phases.putAll(routingPhases);
+        }
+        return phases;
+    }
+
+    @Override
+    public void setReplica() {
+        for (SeatingDatabase shard : shards) {
+            shard.setReplica();
+        }
+    }
+
+    @Override
+    public void installSnapshot(long version, List<Student> students) {
+        Map<SeatingDatabase, List<Student>> split = split(students);
+        for (SeatingDatabase shard : shards) {
+            shard.installSnapshot(version, split.getOrDefault(shard, List.of()));
+        }
+    }
+
+    @Override
+    public long getSnapshotVersion() {
+        return defaultShard.getSnapshotVersion();
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return defaultShard.isReadOnly();
+    }
+
+    @Override
+    public String getDataVersion(String rollNumber) {
+        return shardFor(rollNumber).getDataVersion(rollNumber);
+    }
+
+    @Override
+    public String getCurrentSittingKey(String rollNumber) {
+        return shardFor(rollNumber).getCurrentSittingKey(rollNumber);
+    }
+
+    // Sum of the shards' counters, so it still grows with every write.
+    @Override
+    public long getGlobalDataVersion() {
+        long sum = 0;
+        for (SeatingDatabase shard : shards) {
+            sum += shard.getGlobalDataVersion();
+        }
+        return sum;
+    }
+
+    @Override
+    public void rebuildLookupIndex() {
+        for (SeatingDatabase shard : shards) {
+            shard.rebuildLookupIndex();
+        }
+    }
+
+    @Override
+    public int getLookupIndexSize() {
+        int sum = 0;
+        for (SeatingDatabase shard : shards) {
+            sum += shard.getLookupIndexSize();
+        }
+        return sum;
+    }
+
+    @Override
+    public long getLookupIndexBuildMillis() {
+        long max = 0;
+        for (SeatingDatabase shard : shards) {
+            max = Math.max(max, shard.getLookupIndexBuildMillis());
+        }
+        return max;
+    }
+
+    @Override
+    public int getPendingWriteCount() {
+        int sum = 0;
+        for (SeatingDatabase shard : shards) {
+            sum += shard.getPendingWriteCount();
+        }
+        return sum;
+    }
+
+    // A prefix can span shards ("N" matches north and the default store), so
+    // every shard is asked and the sorted results merged.
+    @Override
+    public List<String> completeRolls(String prefix, int limit) {
+        TreeSet<String> merged = new TreeSet<>();
+        for (SeatingDatabase shard : shards) {
+            merged.addAll(shard.completeRolls(prefix, limit));
+        }
+        List<String> result = new ArrayList<>(limit);
+        for (String roll : merged) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(roll);
+        }
+        return result;
+    }
+
+    // The owning shard first; a typo in the prefix can land in another one.
+    @Override
+    public List<String> suggestRolls(String roll, int limit) {
+        SeatingDatabase owner = shardFor(roll);
+        List<String> result = new ArrayList<>(owner.suggestRolls(roll, limit));
+        for (SeatingDatabase shard : shards) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (shard != owner) {
+                for (String suggestion : shard.suggestRolls(roll, limit - result.size())) {
+                    if (!result.contains(suggestion)) {
+                        result.add(suggestion);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Student currentSitting(NavigableMap<String, Student> sittings) {
+        return defaultShard.currentSitting(sittings);
+    }
+
+    @Override
+    public Student getStudent(String rollNumber) {
+        return shardFor(rollNumber).getStudent(rollNumber);
+    }
+
+    @Override
+    public Student getStudent(String rollNumber, String examDate, String examTime) {
+        return shardFor(rollNumber).getStudent(rollNumber, examDate, examTime);
+    }
+
+    @Override
+    public NavigableMap<String, Student> getSittings(String rollNumber) {
+        return shardFor(rollNumber).getSittings(rollNumber);
+    }
+
+    @Override
+    public List<Student> getAllStudents() {
+        List<Student> all = new ArrayList<>();
+        for (SeatingDatabase shard : shards) {
+            all.addAll(shard.getAllStudents());
+        }
+        return all;
+    }
+
+    @Override
+    public void setChangeListener(SeatingDatabase.ChangeListener listener) {
+        for (SeatingDatabase shard : shards) {
+            shard.setChangeListener(listener);
+        }
+    }
+
+    @Override
+    public boolean addStudent(Student student) {
+        return shardFor(student.getRollNumber()).addStudent(student);
+    }
+
+    @Override
+    public boolean addStudents(List<Student> students) {
+        List<String> committed = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        for (Map.Entry<SeatingDatabase, List<Student>> entry : split(students).entrySet()) {
+            (entry.getKey().addStudents(entry.getValue()) ? committed : failed).add(entry.getKey().getName());
+        }
+        return reportPartial("upload", committed, failed);
+    }
+
+    // Each shard commits on its own and nothing is rolled back, so when one
+    // fails the others keep the rows they took; the log names both sides.
+    private static boolean reportPartial(String what, List<String> committed, List<String> failed) {
+        if (failed.isEmpty()) {
+            return true;
+        }
+        EventLog.error("storage", "Sharded " + what + " failed on shard(s) " + String.join(", ", failed) +
+                (committed.isEmpty() ? "" : "; committed on shard(s) " + String.join(", ", committed)) + ".");
+        return false;
+    }
+
+    // Plans only the shards the upload has rows for: with deleteMissing, an
+    // institution's roster replaces that institution's rows and leaves the
+    // other shards alone.
+    @Override
+    public RosterDiff planDiff(List<Student> incoming, boolean deleteMissing) {
+        RosterDiff merged = new RosterDiff();
+        for (Map.Entry<SeatingDatabase, List<Student>> entry : split(incoming).entrySet()) {
+            merge(entry.getKey().planDiff(entry.getValue(), deleteMissing), merged);
+        }
+        return merged;
+    }
+
+    private static void merge(RosterDiff diff, RosterDiff into) {
+        diff.getInserts().forEach(into::addInsert);
+        diff.getUpdates().forEach(into::addUpdate);
+        diff.getDeletes().forEach(into::addDelete);
+        for (int i = 0; i < diff.getUnchanged(); i++) {
+            into.addUnchanged();
+        }
+    }
+
+    // Every shard goes back to the same moment; null if any cannot.
+    @Override
+    public RosterDiff planRestore(long epochMillis) throws IOException {
+        RosterDiff merged = new RosterDiff();
+        for (SeatingDatabase shard : shards) {
+            RosterDiff diff = shard.planRestore(epochMillis);
+            if (diff == null) {
+                return null;
+            }
+            merge(diff, merged);
+        }
+        return merged;
+    }
+
+    @Override
+    public boolean applyDiff(RosterDiff diff) {
+        Map<SeatingDatabase, RosterDiff> split = new LinkedHashMap<>();
+        for (Student student : diff.getInserts()) {
+            split.computeIfAbsent(shardFor(student.getRollNumber()), k -> new RosterDiff()).addInsert(student);
+        }
+        for (Student student : diff.getUpdates()) {
+            split.computeIfAbsent(shardFor(student.getRollNumber()), k -> new RosterDiff()).addUpdate(student);
+        }
+        for (Student student : diff.getDeletes()) {
+            split.computeIfAbsent(shardFor(student.getRollNumber()), k -> new RosterDiff()).addDelete(student);
+        }
+        if (split.isEmpty()) {
+            return !isReadOnly();
+        }
+        List<String> committed = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        for (Map.Entry<SeatingDatabase, RosterDiff> entry : split.entrySet()) {
+            (entry.getKey().applyDiff(entry.getValue()) ? committed : failed).add(entry.getKey().getName());
+        }
+        return reportPartial("change", committed, failed);
+    }
+
+    @Override
+    public boolean deleteStudent(String rollNumber) {
+        return shardFor(rollNumber).deleteStudent(rollNumber);
+    }
+
+    @Override
+    public boolean deleteSitting(String rollNumber, String examDate, String examTime) {
+        return shardFor(rollNumber).deleteSitting(rollNumber, examDate, examTime);
+    }
+
+    private Map<SeatingDatabase, List<Student>> split(List<Student> students) {
+        Map<SeatingDatabase, List<Student>> split = new LinkedHashMap<>();
+        for (Student student : students) {
+            split.computeIfAbsent(shardFor(student.getRollNumber()), k -> new ArrayList<>()).add(student);
+        }
+        return split;
+    }
+}
@@ -0,0 +1,412 @@
+// StaticSiteExporter.java
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Renders every roll's result pages into a directory that any static host,
+// CDN or offline kiosk can serve with no backend:
+//   index.html                      search page; hashes the roll in the browser
+//   r/<h0h1>/<hash>/index.html      the roll's current or next sitting
+//   r/<h0h1>/<hash>/<sitting>.html  each sitting, when there are several
+//   assets/floorplans/<plan>/<version>/<width>[-<seat>].<ext>
+// <hash> is the first 32 hex digits of SHA-256 over the trimmed roll. It
+// only keeps roll numbers out of directory names: anyone with the site can
+// hash candidate rolls, as the search page itself does. Rolls are rendered
+// in parallel in slices. A roll whose data version, shown sitting and
+// render version (floor plans, room registry) are unchanged since the last
+// run in this process is not rendered again; a roll whose pages hash the
+// same as in manifest.tsv is not rewritten; rolls that disappeared are
+// deleted. Re-running after a change only touches what changed. Files are
+// replaced atomically, so a sync to a CDN never picks up half a page.
+public class StaticSiteExporter {
+    public interface PageRenderer {
+        String renderSitting(Student sitting, NavigableMap<String, Student> sittings, ResultLinks links);
+
+        String renderSearchPage();
+
+        String renderNotFound(ResultLinks links);
+    }
+
+    private static final String MANIFEST = "manifest.tsv";
+    private static final int SLICE_ROLLS = 500;
+
+    private final Path outputDir;
+    private final PageRenderer renderer;
+    private final SeatOverlayCache overlays;
+    private final ExecutorService workers;
+    private final int parallelism;
+    // roll hash -> fingerprint of the pages last written for it
+    private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+    // roll hash -> what the pages were last rendered from; in memory only,
+    // since data versions do not outlive the process
+    private final Map<String, String> renderStamps = new ConcurrentHashMap<>();
+    private boolean manifestLoaded;
+    private volatile Result lastResult;
+
+    public StaticSiteExporter(Path outputDir, PageRenderer renderer, SeatOverlayCache overlays, int parallelism) {
+        this.outputDir = outputDir;
+        this.renderer = renderer;
+        this.overlays = overlays;
+        this.parallelism = Math.max(1, parallelism);
+        AtomicInteger threads = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(this.parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "site-export-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public Path getOutputDir() {
+        return outputDir;
+    }
+
+    // Last finished export, or null before the first.
+    public Result getLastResult() {
+        return lastResult;
+    }
+
+    // renderVersion changes whenever pages would render differently for the
+    // same data, e.g. after a floor plan or room layout change.
+    public synchronized Result export(List<Student> students, SeatingStore db, String renderVersion)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Files.createDirectories(outputDir);
+        loadManifest();
+        Map<String, NavigableMap<String, Student>> byRoll = new HashMap<>();
+        for (Student student : students) {
+            String roll = student.getRollNumber() == null ? "" : student.getRollNumber().trim();
+            if (!roll.isEmpty()) {
+                byRoll.computeIfAbsent(roll, r -> new TreeMap<>()).put(SeatingDatabase.sittingKey(student), student);
+            }
+        }
+        List<String> rolls = new ArrayList<>(byRoll.keySet());
+        Set<Asset> assets = ConcurrentHashMap.newKeySet();
+        AtomicInteger written = new AtomicInteger();
+        List<Callable<Set<String>>> slices = new ArrayList<>();
+        for (int from = 0; from < rolls.size(); from += SLICE_ROLLS) {
+            List<String> slice = rolls.subList(from, Math.min(rolls.size(), from + SLICE_ROLLS));
+            slices.add(() -> exportSlice(slice, byRoll, db, renderVersion, assets, written));
+        }
+        Set<String> current = new HashSet<>();
+        for (Set<String> hashes : runAll(slices)) {
+            current.addAll(hashes);
+        }
+        int removed = removeStaleRolls(current);
+
+        PageLinks rootLinks = new PageLinks("", assets);
+        writeIfChanged(outputDir.resolve("index.html"), renderer.renderSearchPage());
+        writeIfChanged(outputDir.resolve("404.html"), renderer.renderNotFound(rootLinks));
+        int assetsWritten = writeAssets(assets);
+        saveManifest();
+        Result result = new Result(rolls.size(), written.get(), removed, assetsWritten,
+                (System.nanoTime() - start) / 1_000_000L);
+        lastResult = result;
+        return result;
+    }
+
+    private Set<String> exportSlice(List<String> rolls, Map<String, NavigableMap<String, Student>> byRoll,
+                                    SeatingStore db, String renderVersion, Set<Asset> assets,
+                                    AtomicInteger written) throws IOException {
+        Set<String> hashes = new HashSet<>();
+        for (String roll : rolls) {
+            String hash = rollHash(roll);
+            hashes.add(hash);
+            NavigableMap<String, Student> sittings = byRoll.get(roll);
+            Path dir = rollDir(hash);
+            Student current = db.currentSitting(sittings);
+            String stamp = renderVersion + '\u001f' + db.getDataVersion(roll) + '\u001f' +
+                    (current == null ? "" : SeatingDatabase.sittingKey(current));
+            if (stamp.equals(renderStamps.get(hash)) && Files.exists(dir.resolve("index.html"))) {
+                continue;
+            }
+            Map<String, String> pages = new LinkedHashMap<>();
+            PageLinks links = new PageLinks("../../../", assets);
+            pages.put("index.html", renderer.renderSitting(current, sittings, links));
+            if (sittings.size() > 1) {
+                for (Student sitting : sittings.values()) {
+                    pages.put(sittingPage(sitting), renderer.renderSitting(sitting, sittings, links));
+                }
+            }
+            String fingerprint = fingerprint(pages);
+            if (fingerprint.equals(fingerprints.get(hash)) && Files.exists(dir.resolve("index.html"))) {
+                renderStamps.put(hash, stamp);
+                continue;
+            }
+            Files.createDirectories(dir);
+            for (Map.Entry<String, String> page : pages.entrySet()) {
+                writeAtomically(dir.resolve(page.getKey()), page.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+            // Pages of sittings that no longer exist.
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path file : files) {
+                    if (!pages.containsKey(file.getFileName().toString())) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+            fingerprints.put(hash, fingerprint);
+            renderStamps.put(hash, stamp);
+            written.incrementAndGet();
+        }
+        return hashes;
+    }
+
+    private int removeStaleRolls(Set<String> current) throws IOException {
+        Set<String> stale = new HashSet<>(fingerprints.keySet());
+        stale.removeAll(current);
+        for (String hash : stale) {
+            Path dir = rollDir(hash);
+            if (Files.isDirectory(dir)) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                    for (Path file : files) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+                Files.deleteIfExists(dir);
+            }
+            fingerprints.remove(hash);
+            renderStamps.remove(hash);
+        }
+        return stale.size();
+    }
+
+    // Floor plan files are named by plan version, so one that exists is current.
+    private int writeAssets(Set<Asset> assets) throws IOException, InterruptedException {
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (Asset asset : assets) {
+            tasks.add(() -> {
+                Path file = outputDir.resolve(asset.path);
+                if (Files.exists(file)) {
+                    return false;
+                }
+                byte[] bytes = asset.seat == null
+                        ? asset.variant.getBytes()
+                        : overlays.renderUncached(asset.plan, asset.variant, asset.seat);
+                if (bytes == null) {
+                    return false;
+                }
+                Files.createDirectories(file.getParent());
+                writeAtomically(file, bytes);
+                return true;
+            });
+        }
+        int written = 0;
+        for (Boolean wrote : runAll(tasks)) {
+            written += wrote ? 1 : 0;
+        }
+        return written;
+    }
+
+    private <T> List<T> runAll(List<Callable<T>> tasks) throws IOException, InterruptedException {
+        List<T> results = new ArrayList<>(tasks.size());
+        for (Future<T> future : workers.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("export failed: " + cause, cause);
+            }
+        }
+        return results;
+    }
+
+    private void loadManifest() throws IOException {
+        if (manifestLoaded) {
+            return;
+        }
+        manifestLoaded = true;
+        Path manifest = outputDir.resolve(MANIFEST);
+        if (!Files.exists(manifest)) {
+            return;
+        }
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            int tab = line.indexOf('\t');
+            if (tab > 0) {
+                fingerprints.put(line.substring(0, tab), line.substring(tab + 1));
+            }
+        }
+    }
+
+    private void saveManifest() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> entry : new TreeMap<>(fingerprints).entrySet()) {
+            sb.append(entry.getKey()).append('\t').append(entry.getValue()).append('\n');
+        }
+        writeAtomically(outputDir.resolve(MANIFEST), sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeIfChanged(Path file, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        if (Files.exists(file) && Arrays.equals(Files.readAllBytes(file), bytes)) {
+            return;
+        }
+        writeAtomically(file, bytes);
+    }
+
+    private static void writeAtomically(Path file, byte[] bytes) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, bytes);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path rollDir(String hash) {
+        return outputDir.resolve("r").resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    // Must match the hashing in the search page's script.
+    public static String rollHash(String roll) {
+        return HexFormat.of().formatHex(sha256(roll.trim())).substring(0, 32);
+    }
+
+    private static String sittingPage(Student sitting) {
+        String slug = (sitting.getExamDate() + "-" + sitting.getExamTime()).toLowerCase()
+                .replaceAll("[^a-z0-9]+", "-").replaceAll("^-|-$", "");
+        return (slug.isEmpty() ? "sitting" : slug) + ".html";
+    }
+
+    private static String fingerprint(Map<String, String> pages) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> page : pages.entrySet()) {
+            sb.append(page.getKey()).append('\0').append(page.getValue()).append('\0');
+        }
+        return HexFormat.of().formatHex(sha256(sb.toString())).substring(0, 32);
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Links relative to a page `prefix` below the export root; every floor
+    // plan a page uses is recorded so the asset gets written.
+    private static final class PageLinks implements ResultLinks {
+        private final String prefix;
+        private final Set<Asset> assets;
+
+        private PageLinks(String prefix, Set<Asset> assets) {
+            this.prefix = prefix;
+            this.assets = assets;
+        }
+
+        @Override
+        public String home() {
+            return prefix + "index.html";
+        }
+
+        @Override
+        public String sitting(Student sitting) {
+            return sittingPage(sitting);
+        }
+
+        @Override
+        public String floorPlan(FloorPlanImages.Plan plan, FloorPlanImages.Variant variant, String seat) {
+            String ext = seat != null || variant.getMime().contains("jpeg") ? "jpg" : "png";
+            String path = "assets/floorplans/" + plan.getKey() + "/" + plan.getVersion() + "/" + variant.getWidth() +
+                    (seat != null ? "-" + seat.replaceAll("[^A-Za-z0-9]", "_") : "") + "." + ext;
+            assets.add(new Asset(path, plan, variant, seat));
+            return prefix + path;
+        }
+
+        // Slips are served by the live server only.
+        @Override
+        public String slip(Student sitting) {
+            return null;
+        }
+    }
+
+    private static final class Asset {
+        private final String path;
+        private final FloorPlanImages.Plan plan;
+        private final FloorPlanImages.Variant variant;
+        private final String seat;
+
+        private Asset(String path, FloorPlanImages.Plan plan, FloorPlanImages.Variant variant, String seat) {
+            this.path = path;
+            this.plan = plan;
+            this.variant = variant;
+            this.seat = seat;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Asset && path.equals(((Asset) other).path);
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode();
+        }
+    }
+
+    public static class Result {
+        private final int rolls;
+        private final int rollsWritten;
+        private final int rollsRemoved;
+        private final int assetsWritten;
+        private final long elapsedMillis;
+
+        private Result(int rolls, int rollsWritten, int rollsRemoved, int assetsWritten, long elapsedMillis) {
+            this.rolls = rolls;
+            this.rollsWritten = rollsWritten;
+            this.rollsRemoved = rollsRemoved;
+            this.assetsWritten = assetsWritten;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public int getRolls() {
+            return rolls;
+        }
+
+        // Rolls whose pages were (re)written; the rest were unchanged.
+        public int getRollsWritten() {
+            return rollsWritten;
+        }
+
+        public int getRollsRemoved() {
+            return rollsRemoved;
+        }
+
+        public int getAssetsWritten() {
+            return assetsWritten;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return rolls + " roll(s), " + rollsWritten + " written, " + rollsRemoved + " removed, " +
+                    assetsWritten + " asset(s) in " + elapsedMillis + " ms";
+        }
+    }
+}
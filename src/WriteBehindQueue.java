@@ -0,0 +1,321 @@
+// WriteBehindQueue.java
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Bounded write-behind buffer for admin mutations. Pending writes are
+// coalesced per row key, i.e. per sitting (the last write wins), and a single writer thread hands
+// them to the store in batches, so one transaction or one file rewrite
+// covers many edits.
+//
+// A failed batch is either reported to the writers waiting on it, or, with
+// retryFailed (async mode, whose callers were already told the write was
+// accepted), put back in the queue and retried with backoff. A write queued
+// for the same row in the meantime is newer and wins over the retried one.
+public class WriteBehindQueue {
+    private static final long MIN_BACKOFF_MS = 100;
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    public interface BatchWriter {
+        boolean apply(List<Student> upserts, List<Student> deletes);
+    }
+
+    // Pending operation for one sitting; a delete carries the sitting it removes.
+    public static final class Pending {
+        private final Student student;
+        private final boolean delete;
+        // Guarded by the queue lock: 0 while queued, 1 once committed, -1 once
+        // failed. A write replaced by a newer one for the row settles with it.
+        private int outcome;
+        private Pending replacedBy;
+
+        private Pending(Student student, boolean delete) {
+            this.student = student;
+            this.delete = delete;
+        }
+
+        public boolean isDelete() {
+            return delete;
+        }
+
+        public Student getStudent() {
+            return student;
+        }
+    }
+
+    private final BatchWriter writer;
+    private final int capacity;
+    private final int maxBatch;
+    private final long flushWindowMs;
+    private final boolean retryFailed;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition applied = lock.newCondition();
+    private final LinkedHashMap<String, Pending> pending = new LinkedHashMap<>();
+    private final Map<String, Pending> inFlight = new LinkedHashMap<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private boolean closing;
+    private boolean flushRequested;
+    private long batchesApplied;
+    private long failedBatches;
+    private int consecutiveFailures;
+    private long retryAtMillis;
+
+    public WriteBehindQueue(BatchWriter writer, int capacity, int maxBatch, long flushWindowMs, boolean retryFailed) {
+        this.writer = writer;
+        this.capacity = Math.max(1, capacity);
+        this.maxBatch = Math.max(1, maxBatch);
+        this.flushWindowMs = Math.max(0, flushWindowMs);
+        this.retryFailed = retryFailed;
+        this.thread = new Thread(this::runWriter, "seating-write-behind");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public Pending submitUpsert(Student student) throws InterruptedException {
+        return submit(SeatingDatabase.rowKey(student), new Pending(student, false));
+    }
+
+    public Pending submitDelete(Student student) throws InterruptedException {
+        return submit(SeatingDatabase.rowKey(student), new Pending(student, true));
+    }
+
+    private Pending submit(String key, Pending op) throws InterruptedException {
+        lock.lock();
+        try {
+            // A write to a row that is already queued only replaces the entry,
+            // so it never needs a free slot.
+            while (pending.size() >= capacity && !pending.containsKey(key)) {
+                notFull.await();
+            }
+            Pending replaced = pending.put(key, op);
+            if (replaced != null) {
+                replaced.replacedBy = op;
+            }
+            notEmpty.signal();
+            return op;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Read-your-writes: the newest queued or in-flight write for each sitting
+    // of the roll. Scans the buffer, which is bounded and usually near empty.
+    public List<Pending> lookupRoll(String roll) {
+        lock.lock();
+        try {
+            if (pending.isEmpty() && inFlight.isEmpty()) {
+                return List.of();
+            }
+            Map<String, Pending> latest = new LinkedHashMap<>();
+            for (Map.Entry<String, Pending> entry : inFlight.entrySet()) {
+                if (entry.getValue().getStudent().getRollNumber().equals(roll)) {
+                    latest.put(entry.getKey(), entry.getValue());
+                }
+            }
+            for (Map.Entry<String, Pending> entry : pending.entrySet()) {
+                if (entry.getValue().getStudent().getRollNumber().equals(roll)) {
+                    latest.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return new ArrayList<>(latest.values());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Pending> snapshotPending() {
+        lock.lock();
+        try {
+            Map<String, Pending> copy = new LinkedHashMap<>(inFlight);
+            copy.putAll(pending);
+            return copy;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Blocks until the write, or the newer write that replaced it, is settled;
+    // true when it was committed.
+    public boolean awaitCommitted(Pending op) throws InterruptedException {
+        lock.lock();
+        try {
+            Pending current = op;
+            while (true) {
+                while (current.replacedBy != null) {
+                    current = current.replacedBy;
+                }
+                if (current.outcome != 0) {
+                    return current.outcome > 0;
+                }
+                applied.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void flush() throws InterruptedException {
+        lock.lock();
+        try {
+            flushRequested = true;
+            notEmpty.signal();
+            while (!pending.isEmpty() || !inFlight.isEmpty()) {
+                applied.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Flushes what is queued. Writes that still fail are not retried again:
+    // they are logged and dropped, so shutdown cannot hang on a dead store.
+    public void close() {
+        lock.lock();
+        try {
+            closing = true;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        running = false;
+        thread.interrupt();
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return pending.size() + inFlight.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getBatchesApplied() {
+        lock.lock();
+        try {
+            return batchesApplied;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getFailedBatches() {
+        lock.lock();
+        try {
+            return failedBatches;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runWriter() {
+        while (running) {
+            List<Student> upserts = new ArrayList<>();
+            List<Student> deletes = new ArrayList<>();
+            lock.lock();
+            try {
+                while (pending.isEmpty()) {
+                    notEmpty.await();
+                }
+                // Back off after a failed batch, unless shutting down.
+                long wait = retryAtMillis - System.currentTimeMillis();
+                while (wait > 0 && !closing) {
+                    notEmpty.await(wait, TimeUnit.MILLISECONDS);
+                    wait = retryAtMillis - System.currentTimeMillis();
+                }
+                // Group commit: give concurrent writers a short window to join
+                // this batch. Every submit signals, so wait out the window.
+                long nanos = TimeUnit.MILLISECONDS.toNanos(flushWindowMs);
+                while (nanos > 0 && pending.size() < maxBatch && !flushRequested && !closing) {
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+                flushRequested = false;
+                Iterator<Map.Entry<String, Pending>> it = pending.entrySet().iterator();
+                while (it.hasNext() && inFlight.size() < maxBatch) {
+                    Map.Entry<String, Pending> entry = it.next();
+                    inFlight.put(entry.getKey(), entry.getValue());
+                    if (entry.getValue().isDelete()) {
+                        deletes.add(entry.getValue().getStudent());
+                    } else {
+                        upserts.add(entry.getValue().getStudent());
+                    }
+                    it.remove();
+                }
+                notFull.signalAll();
+            } catch (InterruptedException e) {
+                if (!running) {
+                    return;
+                }
+                continue;
+            } finally {
+                lock.unlock();
+            }
+
+            boolean ok;
+            try {
+                ok = writer.apply(upserts, deletes);
+            } catch (RuntimeException e) {
+                ok = false;
+            }
+            lock.lock();
+            try {
+                if (ok) {
+                    batchesApplied++;
+                    consecutiveFailures = 0;
+                    retryAtMillis = 0;
+                    settle(1);
+                } else {
+                    failedBatches++;
+                    consecutiveFailures++;
+                    boolean retry = retryFailed && !closing;
+                    EventLog.error("write-behind", "Batch failed: " + upserts.size() + " upsert(s), " +
+                            deletes.size() + " delete(s)" + (retry ? "; retrying" : "; dropped"));
+                    if (retry) {
+                        requeueInFlight();
+                        long backoff = MIN_BACKOFF_MS << Math.min(consecutiveFailures - 1, 10);
+                        retryAtMillis = System.currentTimeMillis() + Math.min(backoff, MAX_BACKOFF_MS);
+                    } else {
+                        settle(-1);
+                    }
+                }
+                applied.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void settle(int outcome) {
+        for (Pending op : inFlight.values()) {
+            op.outcome = outcome;
+        }
+        inFlight.clear();
+    }
+
+    // Puts a failed batch back at the end of the queue; a row queued again
+    // since the batch was taken keeps its newer write.
+    private void requeueInFlight() {
+        for (Map.Entry<String, Pending> entry : inFlight.entrySet()) {
+            Pending newer = pending.get(entry.getKey());
+            if (newer == null) {
+                pending.put(entry.getKey(), entry.getValue());
+            } else {
+                entry.getValue().replacedBy = newer;
+            }
+        }
+        inFlight.clear();
+    }
+}